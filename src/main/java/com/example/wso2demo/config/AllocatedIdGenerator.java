@@ -0,0 +1,27 @@
+package com.example.wso2demo.config;
+
+import com.example.wso2demo.service.IdAllocator;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+
+import java.lang.reflect.Member;
+
+/**
+ * Keeps an id that was already assigned (the caller picked it to choose a shard) and otherwise
+ * takes the next one from the entity's IdAllocator sequence.
+ */
+public class AllocatedIdGenerator implements IdentifierGenerator {
+    
+    private final String sequence;
+    
+    public AllocatedIdGenerator(AllocatedId config, Member member, CustomIdGeneratorCreationContext context) {
+        this.sequence = config.value();
+    }
+    
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object entity) {
+        Object assigned = session.getEntityPersister(null, entity).getIdentifier(entity, session);
+        return assigned != null ? assigned : IdAllocator.getInstance().next(sequence);
+    }
+}
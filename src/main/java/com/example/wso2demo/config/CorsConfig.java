@@ -30,6 +30,7 @@ public class CorsConfig {
                 "Accept",
                 "Authorization",
                 "X-Requested-With",
+                "Idempotency-Key",
                 "Access-Control-Request-Method",
                 "Access-Control-Request-Headers"
         ));
@@ -47,7 +48,9 @@ public class CorsConfig {
         // Expose headers
         config.setExposedHeaders(Arrays.asList(
                 "Authorization",
-                "Content-Type"
+                "Content-Type",
+                "Retry-After",
+                "Idempotent-Replayed"
         ));
         
         // Max age for preflight requests
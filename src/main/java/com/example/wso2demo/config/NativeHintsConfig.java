@@ -0,0 +1,57 @@
+package com.example.wso2demo.config;
+
+import com.example.wso2demo.model.ApiResponse;
+import com.example.wso2demo.model.ArchivedOrder;
+import com.example.wso2demo.model.AvailabilityRequest;
+import com.example.wso2demo.model.ChangeEvent;
+import com.example.wso2demo.model.DeltaPage;
+import com.example.wso2demo.model.ImportRowError;
+import com.example.wso2demo.model.ImportSummary;
+import com.example.wso2demo.model.MultiGetResult;
+import com.example.wso2demo.model.Order;
+import com.example.wso2demo.model.OrderItem;
+import com.example.wso2demo.model.OrderSummary;
+import com.example.wso2demo.model.Product;
+import com.example.wso2demo.model.ProductSummary;
+import com.example.wso2demo.model.QueryRequest;
+import com.example.wso2demo.model.StockAlert;
+import com.example.wso2demo.model.Suggestion;
+import com.example.wso2demo.model.User;
+import com.example.wso2demo.model.UserAvailability;
+import com.example.wso2demo.model.UserSummary;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.DoubleSummaryStatistics;
+
+/**
+ * Reflection hints for the native image build. Controllers return ApiResponse&lt;T&gt;, so AOT
+ * cannot see the payload types Jackson binds through the generic, and QueryService reads the
+ * entities' Lombok getters reflectively.
+ */
+@Configuration
+@RegisterReflectionForBinding({
+        ApiResponse.class,
+        Product.class,
+        User.class,
+        Order.class,
+        OrderItem.class,
+        ProductSummary.class,
+        UserSummary.class,
+        OrderSummary.class,
+        MultiGetResult.class,
+        DeltaPage.class,
+        ChangeEvent.class,
+        QueryRequest.class,
+        Suggestion.class,
+        StockAlert.class,
+        UserAvailability.class,
+        AvailabilityRequest.class,
+        ImportRowError.class,
+        ImportSummary.class,
+        ArchivedOrder.class,
+        // Order and item statistics are returned as the JDK type, serialized through its getters
+        DoubleSummaryStatistics.class
+})
+public class NativeHintsConfig {
+}
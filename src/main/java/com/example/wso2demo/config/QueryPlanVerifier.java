@@ -0,0 +1,143 @@
+package com.example.wso2demo.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs EXPLAIN for SQL equivalent to each indexed repository lookup once all beans (and the Flyway
+ * migrations) are in place, and warns if one of them would scan a whole table holding at least
+ * min-rows rows, e.g. because an index is missing on a database adopted from ddl-auto. The SQL is
+ * hand-written, so this only watches the live database; RepositoryQueryPlanTest checks the
+ * queries the repositories really send. Understands MySQL and the embedded H2 database.
+ */
+@Component
+@Lazy(false)
+public class QueryPlanVerifier implements SmartInitializingSingleton {
+    
+    private static final Logger log = LoggerFactory.getLogger(QueryPlanVerifier.class);
+    
+    private static final String SINCE = "'2000-01-01 00:00:00'";
+    private static final String UNTIL = "'2000-01-02 00:00:00'";
+    
+    // Substring searches (findByNameContainingIgnoreCase, findByFullNameContainingIgnoreCase) always scan and are not listed
+    private static final List<Check> CHECKS = List.of(
+            new Check("ProductRepository.findByCategory", "products", "SELECT * FROM products WHERE category = 'x'"),
+            new Check("ProductRepository.findByBrand", "products", "SELECT * FROM products WHERE brand = 'x'"),
+            new Check("ProductRepository.findByCategoryAndBrand", "products",
+                    "SELECT * FROM products WHERE category = 'x' AND brand = 'x'"),
+            new Check("ProductRepository.findByCategoryAndPriceRange", "products",
+                    "SELECT * FROM products WHERE price >= 1 AND price <= 2 AND category = 'x'"),
+            new Check("ProductRepository.findByPriceBetween", "products", "SELECT * FROM products WHERE price BETWEEN 1 AND 2"),
+            new Check("ProductRepository.findByStockLessThan", "products", "SELECT * FROM products WHERE stock < 1"),
+            new Check("ProductRepository.findBySkuIn", "products", "SELECT * FROM products WHERE sku IN ('x', 'y')"),
+            new Check("ProductRepository.findChangesAfter", "products", "SELECT * FROM products WHERE (updated_at > " + SINCE
+                    + " OR (updated_at = " + SINCE + " AND id > 0)) AND updated_at < " + UNTIL + " ORDER BY updated_at, id"),
+            new Check("UserRepository.findByUsernameIn", "users", "SELECT * FROM users WHERE username IN ('x', 'y')"),
+            new Check("UserRepository.findByEmail", "users", "SELECT * FROM users WHERE email = 'x'"),
+            new Check("UserRepository.findByStatus", "users", "SELECT * FROM users WHERE status = 'x'"),
+            new Check("UserRepository.findByCountry", "users", "SELECT * FROM users WHERE country = 'x'"),
+            new Check("UserRepository.findByCity", "users", "SELECT * FROM users WHERE city = 'x'"),
+            new Check("UserRepository.findChangesAfter", "users", "SELECT * FROM users WHERE (updated_at > " + SINCE
+                    + " OR (updated_at = " + SINCE + " AND id > 0)) AND updated_at < " + UNTIL + " ORDER BY updated_at, id"),
+            new Check("OrderRepository.findByOrderNumberIn", "orders", "SELECT * FROM orders WHERE order_number IN ('x', 'y')"),
+            new Check("OrderRepository.findByUserIdIn", "orders", "SELECT * FROM orders WHERE user_id IN (1, 2)"),
+            new Check("OrderRepository.findByUserIdAndStatus", "orders", "SELECT * FROM orders WHERE user_id = 1 AND status = 'x'"),
+            new Check("OrderRepository.findByStatus", "orders", "SELECT * FROM orders WHERE status = 'x'"),
+            new Check("OrderRepository.findByPaymentMethod", "orders", "SELECT * FROM orders WHERE payment_method = 'x'"),
+            new Check("OrderRepository.lockDeletableIds", "orders",
+                    "SELECT id FROM orders WHERE status IN ('x', 'y') AND order_date < " + SINCE),
+            new Check("ArchivedOrderRepository.findByUserId", "orders_archive", "SELECT * FROM orders_archive WHERE user_id = 1"),
+            new Check("ArchivedOrderRepository.findByStatus", "orders_archive", "SELECT * FROM orders_archive WHERE status = 'x'"),
+            new Check("OrderRepository.findChangesAfter", "orders", "SELECT * FROM orders WHERE (updated_at > " + SINCE
+                    + " OR (updated_at = " + SINCE + " AND id > 0)) AND updated_at < " + UNTIL + " ORDER BY updated_at, id"),
+            new Check("OrderItemRepository.findByOrderIdIn", "order_items", "SELECT * FROM order_items WHERE order_id IN (1, 2)"),
+            new Check("OrderItemRepository.findByProductId", "order_items", "SELECT * FROM order_items WHERE product_id = 1"),
+            new Check("OutboxEventRepository.findBySequenceGreaterThan", "outbox_events",
+                    "SELECT * FROM outbox_events WHERE sequence > 0 ORDER BY sequence LIMIT 100"),
+            new Check("OutboxEventRepository.findByAggregateTypeAndSequenceGreaterThan", "outbox_events",
+                    "SELECT * FROM outbox_events WHERE aggregate_type = 'x' AND sequence > 0 ORDER BY sequence LIMIT 100"),
+            new Check("OutboxEventRepository.deletePublishedBefore", "outbox_events",
+                    "SELECT id FROM outbox_events WHERE sequence IS NOT NULL AND created_at < " + SINCE),
+            new Check("IdempotencyRecordRepository.deleteExpired", "idempotency_records",
+                    "SELECT idempotency_key FROM idempotency_records WHERE expires_at < " + SINCE)
+    );
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Value("${app.query-plan-check.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${app.query-plan-check.min-rows:10000}")
+    private long minRows;
+    
+    // Off by default: the optimizer may rightly choose a scan on real data, which must not stop startup
+    @Value("${app.query-plan-check.fail-on-full-scan:false}")
+    private boolean failOnFullScan;
+    
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        if (!"MySQL".equals(database) && !"H2".equals(database)) {
+            log.warn("Query plan check skipped, EXPLAIN output of {} is not understood", database);
+            return;
+        }
+        
+        List<String> fullScans = new ArrayList<>();
+        for (Check check : CHECKS) {
+            long scannedRows = "MySQL".equals(database) ? scannedRowsMySql(check) : scannedRowsH2(check);
+            if (scannedRows >= 0 && scannedRows >= minRows) {
+                fullScans.add(check.finder() + " scans " + check.table() + " (~" + scannedRows + " rows)");
+            }
+        }
+        
+        if (fullScans.isEmpty()) {
+            log.info("Query plan check passed for {} repository queries", CHECKS.size());
+            return;
+        }
+        String message = "Repository queries without a usable index: " + String.join("; ", fullScans);
+        if (failOnFullScan) {
+            throw new IllegalStateException(message);
+        }
+        log.warn(message);
+    }
+    
+    // Estimated rows of a type=ALL access on the checked table, -1 when an index is used
+    private long scannedRowsMySql(Check check) {
+        for (Map<String, Object> row : jdbcTemplate.queryForList("EXPLAIN " + check.sql())) {
+            if (check.table().equals(row.get("table")) && "ALL".equals(row.get("type"))) {
+                Object rows = row.get("rows");
+                return rows instanceof Number number ? number.longValue() : 0;
+            }
+        }
+        return -1;
+    }
+    
+    // H2 plans name the access path in a comment, e.g. /* PUBLIC.ORDERS.tableScan */
+    private long scannedRowsH2(Check check) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + check.sql(), String.class);
+        if (plan == null || !plan.contains(".tableScan")) {
+            return -1;
+        }
+        Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + check.table(), Long.class);
+        return rows != null ? rows : 0;
+    }
+    
+    private record Check(String finder, String table, String sql) {
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.wso2demo.config;
+
+import com.example.wso2demo.model.ApiResponse;
+import com.example.wso2demo.service.AdmissionControlService;
+import com.example.wso2demo.service.AdmissionControlService.Admission;
+import com.example.wso2demo.service.BulkheadService;
+import com.example.wso2demo.service.BulkheadService.EndpointClass;
+import com.example.wso2demo.service.RateLimiterService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RateLimitFilter extends OncePerRequestFilter {
+    
+    private static final String API_PREFIX = "/api/v1/";
+    
+    // POST endpoints that only read, with the keys or selection in the body
+    private static final List<String> READ_ONLY_POST_SUFFIXES = List.of("/ids", "/skus", "/usernames", "/numbers", "/query", "/availability");
+    
+    @Autowired
+    private RateLimiterService rateLimiterService;
+    
+    @Autowired
+    private AdmissionControlService admissionControlService;
+    
+    @Autowired
+    private BulkheadService bulkheadService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("api.requests.in_flight", admissionControlService, AdmissionControlService::getInFlight)
+                .description("Requests currently admitted past admission control")
+                .register(meterRegistry);
+        Gauge.builder("api.rate_limit.tracked_keys", rateLimiterService, RateLimiterService::getTrackedKeys)
+                .description("Client/endpoint-group buckets held by the rate limiter")
+                .register(meterRegistry);
+    }
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return !path.startsWith(API_PREFIX)
+                || path.equals(API_PREFIX + "health")
+                || path.equals(API_PREFIX + "info")
+                || "OPTIONS".equals(request.getMethod());
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String clientId = resolveClientId(request);
+        boolean write = isWrite(request);
+        
+        long waitNanos = rateLimiterService.tryAcquire(clientId, endpointGroup(request), write);
+        if (waitNanos > 0) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, "rate_limited", retryAfterSeconds(waitNanos),
+                    "Rate limit exceeded for client: " + clientId);
+            return;
+        }
+        
+        // Imports stream for as long as the upload lasts and are capped by their own semaphore
+        // (app.import.max-concurrent); an admission or bulk slot held that long would starve short requests
+        if (isImport(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        
+        Admission admission = admissionControlService.tryEnter(clientId);
+        if (admission == Admission.CLIENT_LIMITED) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, "client_concurrency", 1,
+                    "Too many concurrent requests for client: " + clientId);
+            return;
+        }
+        if (admission == Admission.OVERLOADED) {
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "overloaded", 1,
+                    "Server is at capacity, please retry");
+            return;
+        }
+        
+        EndpointClass endpointClass = bulkheadService.classify(request.getRequestURI(), write);
+        if (!bulkheadService.tryEnter(endpointClass)) {
+            admissionControlService.exit(clientId);
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "bulkhead_" + endpointClass.name().toLowerCase(Locale.ROOT), 1,
+                    "Server is at capacity for this kind of request, please retry");
+            return;
+        }
+        
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            bulkheadService.exit(endpointClass, System.nanoTime() - start);
+            admissionControlService.exit(clientId);
+        }
+    }
+    
+    private boolean isWrite(HttpServletRequest request) {
+        String method = request.getMethod();
+        if ("POST".equals(method)) {
+            return READ_ONLY_POST_SUFFIXES.stream().noneMatch(request.getRequestURI()::endsWith);
+        }
+        return !"GET".equals(method) && !"HEAD".equals(method);
+    }
+    
+    private boolean isImport(HttpServletRequest request) {
+        return "POST".equals(request.getMethod()) && request.getRequestURI().endsWith("/import");
+    }
+    
+    private String resolveClientId(HttpServletRequest request) {
+        String clientId = request.getHeader("X-Client-ID");
+        return clientId != null && !clientId.isBlank() ? clientId : request.getRemoteAddr();
+    }
+    
+    // "/api/v1/products/42" -> "products"
+    private String endpointGroup(HttpServletRequest request) {
+        String rest = request.getRequestURI().substring(API_PREFIX.length());
+        int slash = rest.indexOf('/');
+        return slash < 0 ? rest : rest.substring(0, slash);
+    }
+    
+    private long retryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+    
+    private void reject(HttpServletResponse response, HttpStatus status, String reason, long retryAfter, String message)
+            throws IOException {
+        meterRegistry.counter("api.requests.rejected", "reason", reason).increment();
+        response.setStatus(status.value());
+        response.setHeader("Retry-After", String.valueOf(retryAfter));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), ApiResponse.error(message));
+    }
+}
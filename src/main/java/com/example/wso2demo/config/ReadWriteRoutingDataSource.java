@@ -0,0 +1,134 @@
+package com.example.wso2demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to a healthy replica and everything else to the primary.
+ * Must sit behind a LazyConnectionDataSourceProxy so the lookup happens after the
+ * transaction's read-only flag is known.
+ * <p>
+ * Read-your-writes: once an HTTP request has written, its later read-only transactions use the
+ * primary too. The mark is a request attribute, so it ends with the request. Threads outside a
+ * request (schedulers, workers) are only kept on the primary until the writing transaction
+ * completes, so they never stay stuck to it.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+    
+    public static final String PRIMARY = "primary";
+    
+    private static final String STICKY_ATTRIBUTE = ReadWriteRoutingDataSource.class.getName() + ".STICKY_PRIMARY";
+    
+    // Outside a request: set while a write transaction is open, cleared by its completion
+    private static final ThreadLocal<Boolean> STICKY_PRIMARY = new ThreadLocal<>();
+    
+    private final Map<String, HikariDataSource> replicas;
+    
+    private final Map<String, Boolean> replicaHealth = new ConcurrentHashMap<>();
+    
+    private final List<String> replicaKeys;
+    
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    
+    public ReadWriteRoutingDataSource(DataSource primary, Map<String, HikariDataSource> replicas) {
+        this.replicas = replicas;
+        this.replicaKeys = new ArrayList<>(replicas.keySet());
+        replicaKeys.forEach(key -> replicaHealth.put(key, true));
+        
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                markSticky();
+            }
+            return PRIMARY;
+        }
+        if (isSticky()) {
+            return PRIMARY;
+        }
+        return nextHealthyReplica();
+    }
+    
+    private static void markSticky() {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            request.setAttribute(STICKY_ATTRIBUTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+            return;
+        }
+        if (STICKY_PRIMARY.get() == null && TransactionSynchronizationManager.isSynchronizationActive()) {
+            STICKY_PRIMARY.set(Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    STICKY_PRIMARY.remove();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Whether reads on the calling thread go to the primary right now: inside a write transaction,
+     * or once the request (or, outside one, the open transaction) has written.
+     */
+    public static boolean readsFromPrimary() {
+        return isSticky() || (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+    }
+    
+    private static boolean isSticky() {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null && request.getAttribute(STICKY_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) != null) {
+            return true;
+        }
+        return STICKY_PRIMARY.get() != null;
+    }
+    
+    public Map<String, HikariDataSource> getReplicas() {
+        return replicas;
+    }
+    
+    public void setReplicaHealthy(String key, boolean healthy) {
+        replicaHealth.put(key, healthy);
+    }
+    
+    public boolean isReplicaHealthy(String key) {
+        return replicaHealth.getOrDefault(key, false);
+    }
+    
+    // Round-robin over healthy replicas, falling back to the primary when all are lagging or down
+    private String nextHealthyReplica() {
+        int size = replicaKeys.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            String key = replicaKeys.get((start + i) % size);
+            if (replicaHealth.getOrDefault(key, false)) {
+                return key;
+            }
+        }
+        return PRIMARY;
+    }
+    
+    @Override
+    public void destroy() {
+        replicas.values().forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.wso2demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * Periodically measures replication lag and takes replicas that are too far behind
+ * (or unreachable) out of the read rotation until they catch up.
+ */
+public class ReplicaLagMonitor {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+    
+    private final ReadWriteRoutingDataSource routingDataSource;
+    
+    private final String lagQuery;
+    
+    private final String lagColumn;
+    
+    private final long maxLagSeconds;
+    
+    public ReplicaLagMonitor(ReadWriteRoutingDataSource routingDataSource, String lagQuery, String lagColumn,
+                             long maxLagSeconds) {
+        this.routingDataSource = routingDataSource;
+        this.lagQuery = lagQuery;
+        this.lagColumn = lagColumn;
+        this.maxLagSeconds = maxLagSeconds;
+    }
+    
+    @Scheduled(fixedDelayString = "${app.datasource.replicas.lag-check-interval-ms:5000}")
+    public void checkReplicas() {
+        for (Map.Entry<String, HikariDataSource> replica : routingDataSource.getReplicas().entrySet()) {
+            boolean healthy;
+            try {
+                long lag = measureLag(replica.getValue());
+                healthy = lag >= 0 && lag <= maxLagSeconds;
+                if (!healthy) {
+                    log.warn("Replica {} is {}s behind (max {}s), routing its reads to the primary",
+                            replica.getKey(), lag, maxLagSeconds);
+                }
+            } catch (SQLException e) {
+                log.warn("Replica {} lag check failed: {}", replica.getKey(), e.getMessage());
+                healthy = false;
+            }
+            routingDataSource.setReplicaHealthy(replica.getKey(), healthy);
+        }
+    }
+    
+    // -1 means replication is configured but stopped; no row means this is not a replica (e.g. a test database)
+    private long measureLag(HikariDataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(lagQuery)) {
+            if (!rs.next()) {
+                return 0;
+            }
+            long lag = rs.getLong(lagColumn);
+            return rs.wasNull() ? -1 : lag;
+        }
+    }
+}
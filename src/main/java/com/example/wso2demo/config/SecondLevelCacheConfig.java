@@ -0,0 +1,59 @@
+package com.example.wso2demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Hibernate second-level cache on JCache (Ehcache) for Product and User, plus the query cache
+ * for the repository lookups marked cacheable. Regions, sizes and expiry are in ehcache.xml.
+ * Each instance has its own cache, so with several instances a change made on one is seen by
+ * the others only once their entry expires.
+ */
+@Configuration
+public class SecondLevelCacheConfig {
+    
+    @Value("${app.second-level-cache.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.second-level-cache.config:classpath:ehcache.xml}")
+    private Resource cacheConfig;
+    
+    @Value("${app.sharding.enabled:false}")
+    private boolean sharding;
+    
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer() {
+        if (!enabled) {
+            // With hibernate-jcache on the classpath Hibernate turns the cache on by itself, and
+            // SecondLevelCacheService would then not evict what JDBC writes change
+            return properties -> {
+                properties.put("hibernate.cache.use_second_level_cache", "false");
+                properties.put("hibernate.cache.use_query_cache", "false");
+            };
+        }
+        String configUri;
+        try {
+            // Hibernate resolves the URI itself and does not understand Spring's classpath: prefix
+            configUri = cacheConfig.getURL().toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read second-level cache configuration " + cacheConfig, e);
+        }
+        return properties -> {
+            properties.put("hibernate.cache.use_second_level_cache", "true");
+            properties.put("hibernate.cache.region.factory_class", "jcache");
+            properties.put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+            properties.put("hibernate.javax.cache.uri", configUri);
+            properties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+            // Cached query results are not keyed by shard, so a per-shard query would answer for every shard
+            properties.put("hibernate.cache.use_query_cache", String.valueOf(!sharding));
+            // Feeds the per-region hit/miss/put metrics
+            properties.put("hibernate.generate_statistics", "true");
+        };
+    }
+}
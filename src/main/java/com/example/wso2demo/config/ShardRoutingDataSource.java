@@ -0,0 +1,66 @@
+package com.example.wso2demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends each connection to the shard selected for the current thread, shard 0 (the global
+ * database holding products, outbox and the shard map) when none is selected. Must sit behind a
+ * LazyConnectionDataSourceProxy so a transaction's connection is only fetched once the shard is set.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+    
+    public static final int GLOBAL_SHARD = 0;
+    
+    private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+    
+    private final List<HikariDataSource> shards;
+    
+    public ShardRoutingDataSource(List<HikariDataSource> shards) {
+        this.shards = shards;
+        
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(GLOBAL_SHARD));
+    }
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = CURRENT_SHARD.get();
+        return shard != null ? shard : GLOBAL_SHARD;
+    }
+    
+    public int getShardCount() {
+        return shards.size();
+    }
+    
+    public HikariDataSource getShard(int shard) {
+        return shards.get(shard);
+    }
+    
+    public static Integer currentShard() {
+        return CURRENT_SHARD.get();
+    }
+    
+    // Restores a previous selection (null clears it), so nested shard calls unwind correctly
+    public static void useShard(Integer shard) {
+        if (shard == null) {
+            CURRENT_SHARD.remove();
+        } else {
+            CURRENT_SHARD.set(shard);
+        }
+    }
+    
+    @Override
+    public void destroy() {
+        shards.forEach(HikariDataSource::close);
+    }
+}
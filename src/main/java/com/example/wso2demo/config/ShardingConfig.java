@@ -0,0 +1,133 @@
+package com.example.wso2demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Horizontal sharding of users, orders and order items by user id: spring.datasource.url is
+ * shard 0 and also holds the global tables, app.sharding.shards.urls lists shards 1..N-1.
+ * Every shard gets the full schema so a bucket can be moved to any of them.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+    
+    @Value("${app.sharding.shards.urls:}")
+    private List<String> shardUrls;
+    
+    @Value("${app.sharding.shards.username:${spring.datasource.username}}")
+    private String shardUsername;
+    
+    @Value("${app.sharding.shards.password:${spring.datasource.password}}")
+    private String shardPassword;
+    
+    @Value("${app.sharding.shards.maximum-pool-size:10}")
+    private int shardPoolSize;
+    
+    @Value("${app.sharding.shard-migration-locations:classpath:db/migration}")
+    private String[] shardMigrationLocations;
+    
+    @Value("${app.datasource.routing.enabled:false}")
+    private boolean readWriteRouting;
+    
+    @Value("${app.write-behind.enabled:false}")
+    private boolean writeBehind;
+    
+    @Value("${app.bitmap-index.enabled:false}")
+    private boolean bitmapIndex;
+    
+    @Value("${app.order-archive.enabled:false}")
+    private boolean orderArchive;
+    
+    @Value("${app.order-pipeline.enabled:false}")
+    private boolean orderPipeline;
+    
+    // These read or write users/orders through plain repositories or JDBC and would only see shard 0;
+    // the order pipeline reserves stock (shard 0) and inserts the order in a single transaction
+    @PostConstruct
+    public void checkCompatibility() {
+        Map<String, Boolean> features = new LinkedHashMap<>();
+        features.put("app.datasource.routing.enabled", readWriteRouting);
+        features.put("app.write-behind.enabled", writeBehind);
+        features.put("app.bitmap-index.enabled", bitmapIndex);
+        features.put("app.order-archive.enabled", orderArchive);
+        features.put("app.order-pipeline.enabled", orderPipeline);
+        List<String> enabled = features.entrySet().stream().filter(Map.Entry::getValue).map(Map.Entry::getKey).toList();
+        if (!enabled.isEmpty()) {
+            throw new IllegalStateException("app.sharding.enabled cannot be combined with " + String.join(", ", enabled));
+        }
+    }
+    
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource globalShardDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("shard-0");
+        return dataSource;
+    }
+    
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(HikariDataSource globalShardDataSource,
+                                                         DataSourceProperties properties,
+                                                         ObjectProvider<MeterRegistry> meterRegistry) {
+        List<HikariDataSource> shards = new ArrayList<>();
+        shards.add(globalShardDataSource);
+        for (String url : shardUrls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource shard = new HikariDataSource();
+            shard.setPoolName("shard-" + shards.size());
+            shard.setJdbcUrl(url.trim());
+            shard.setUsername(shardUsername);
+            shard.setPassword(shardPassword);
+            shard.setDriverClassName(properties.determineDriverClassName());
+            shard.setMaximumPoolSize(shardPoolSize);
+            meterRegistry.ifAvailable(registry -> shard.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+            shards.add(shard);
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+    
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+    
+    // Boot migrates shard 0 through the primary DataSource; the other shards get the same schema
+    // but not the dev sample data, which is not placed by user id
+    @Bean
+    public FlywayMigrationStrategy shardedMigrationStrategy(ShardRoutingDataSource shardRoutingDataSource) {
+        return flyway -> {
+            flyway.migrate();
+            for (int shard = 1; shard < shardRoutingDataSource.getShardCount(); shard++) {
+                Flyway.configure()
+                        .configuration(flyway.getConfiguration())
+                        .dataSource(shardRoutingDataSource.getShard(shard))
+                        .locations(shardMigrationLocations)
+                        .load()
+                        .migrate();
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.wso2demo.controller;
+
+import com.example.wso2demo.model.ApiResponse;
+import com.example.wso2demo.service.SecondLevelCacheService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/admin/cache")
+@Tag(name = "Cache", description = "Hibernate second-level cache statistics and eviction")
+@CrossOrigin(origins = "*")
+public class CacheController {
+    
+    @Autowired
+    private SecondLevelCacheService secondLevelCacheService;
+    
+    @GetMapping
+    @Operation(summary = "Get cache statistics", description = "Hits, misses, puts, hit ratio and entries per second-level cache region")
+    public ResponseEntity<ApiResponse<Map<String, Map<String, Number>>>> getStatistics(
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        Map<String, Map<String, Number>> statistics = secondLevelCacheService.getRegionStatistics();
+        return ResponseEntity.ok()
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(statistics, secondLevelCacheService.isEnabled()
+                        ? "Cache statistics retrieved" : "Second-level cache is not enabled"));
+    }
+    
+    @DeleteMapping("/regions/{region}")
+    @Operation(summary = "Evict a cache region", description = "Empties one region, e.g. products, users, query.products or query.users")
+    public ResponseEntity<ApiResponse<Void>> evictRegion(
+            @Parameter(description = "Region name", required = true) @PathVariable String region,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        try {
+            secondLevelCacheService.evictRegion(region);
+            return ResponseEntity.ok()
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(null, "Cache region " + region + " evicted"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ApiResponse.error(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @DeleteMapping
+    @Operation(summary = "Evict the whole cache", description = "Empties every entity and query region")
+    public ResponseEntity<ApiResponse<Void>> evictAll(
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        secondLevelCacheService.evictAll();
+        return ResponseEntity.ok()
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(null, "Cache evicted"));
+    }
+}
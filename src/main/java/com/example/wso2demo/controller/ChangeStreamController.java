@@ -0,0 +1,39 @@
+package com.example.wso2demo.controller;
+
+import com.example.wso2demo.service.ChangeEventRelay;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/v1")
+@Tag(name = "Changes", description = "Change event stream for incremental sync")
+@CrossOrigin(origins = "*")
+public class ChangeStreamController {
+    
+    @Autowired
+    private ChangeEventRelay changeEventRelay;
+    
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+        summary = "Stream entity change events",
+        description = "Server-Sent Events stream of batched product, user and order changes. " +
+                "Each event id is a sequence cursor; reconnect with since=<cursor> (or Last-Event-ID) to resume."
+    )
+    public SseEmitter streamChanges(
+            @Parameter(description = "Resume after this sequence (0 replays the retained history, omitted = live only)") @RequestParam(required = false) Long since,
+            @Parameter(description = "Standard SSE resume header, used when since is not given") @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId
+    ) {
+        try {
+            return changeEventRelay.subscribe(since != null ? since : lastEventId);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+    }
+}
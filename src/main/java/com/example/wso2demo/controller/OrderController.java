@@ -1,18 +1,27 @@
 package com.example.wso2demo.controller;
 
 import com.example.wso2demo.model.ApiResponse;
+import com.example.wso2demo.model.DeltaPage;
+import com.example.wso2demo.model.MultiGetResult;
 import com.example.wso2demo.model.Order;
+import com.example.wso2demo.model.OrderSummary;
+import com.example.wso2demo.service.OrderPipelineService;
 import com.example.wso2demo.service.OrderService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
+import java.util.DoubleSummaryStatistics;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/v1/orders")
@@ -23,13 +32,21 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
     
+    @Autowired
+    private OrderPipelineService orderPipelineService;
+    
     @GetMapping
-    @Operation(summary = "Get all orders", description = "Retrieve a list of all orders")
+    @Operation(summary = "Get all orders", description = "Retrieve a list of all orders, optionally filtered by status and payment method")
     public ResponseEntity<ApiResponse<List<Order>>> getAllOrders(
+            @Parameter(description = "Filter by status") @RequestParam(required = false) String status,
+            @Parameter(description = "Filter by payment method") @RequestParam(required = false) String paymentMethod,
+            @Parameter(description = "Also return archived orders") @RequestParam(defaultValue = "false") boolean includeArchived,
             @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId,
             @Parameter(description = "API version") @RequestHeader(value = "X-API-Version", required = false, defaultValue = "1.0") String apiVersion
     ) {
-        List<Order> orders = orderService.getAllOrders();
+        List<Order> orders = (status != null && !status.isEmpty()) || (paymentMethod != null && !paymentMethod.isEmpty())
+                ? orderService.getFilteredOrders(status, paymentMethod, includeArchived)
+                : orderService.getAllOrders(includeArchived);
         return ResponseEntity.ok()
                 .header("X-Total-Count", String.valueOf(orders.size()))
                 .header("X-API-Version", apiVersion)
@@ -37,13 +54,100 @@ public class OrderController {
                 .body(ApiResponse.success(orders, "Orders retrieved successfully"));
     }
     
+    @GetMapping("/count")
+    @Operation(
+        summary = "Count orders matching attribute filters",
+        description = "Repeat a parameter to match any of several values, e.g. ?status=PENDING&status=PROCESSING&paymentMethod=CARD"
+    )
+    public ResponseEntity<ApiResponse<Long>> countOrders(
+            @Parameter(description = "Statuses to match (any)") @RequestParam(required = false) List<String> status,
+            @Parameter(description = "Payment methods to match (any)") @RequestParam(required = false) List<String> paymentMethod,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        long count = orderService.countOrders(status, paymentMethod);
+        return ResponseEntity.ok()
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(count, "Order count retrieved successfully"));
+    }
+    
+    @GetMapping("/statistics")
+    @Operation(summary = "Order totals by status", description = "Count, sum, min, average and max of order totals per status")
+    public ResponseEntity<ApiResponse<Map<String, DoubleSummaryStatistics>>> getOrderStatistics(
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        Map<String, DoubleSummaryStatistics> statistics = orderService.getOrderTotalsByStatus();
+        return ResponseEntity.ok()
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(statistics, "Order statistics retrieved successfully"));
+    }
+    
+    @GetMapping("/items/statistics")
+    @Operation(summary = "Order item subtotals by product", description = "Count, sum, min, average and max of order item subtotals per product ID")
+    public ResponseEntity<ApiResponse<Map<Long, DoubleSummaryStatistics>>> getItemStatistics(
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        Map<Long, DoubleSummaryStatistics> statistics = orderService.getItemSubtotalsByProduct();
+        return ResponseEntity.ok()
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(statistics, "Order item statistics retrieved successfully"));
+    }
+    
+    @GetMapping("/summaries")
+    @Operation(summary = "Get order summaries", description = "Lightweight list view with id, order number, user ID, total, status, payment method and order date only")
+    public ResponseEntity<ApiResponse<List<OrderSummary>>> getOrderSummaries(
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        List<OrderSummary> summaries = orderService.getOrderSummaries();
+        return ResponseEntity.ok()
+                .header("X-Total-Count", String.valueOf(summaries.size()))
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(summaries, "Orders retrieved successfully"));
+    }
+    
+    @GetMapping(params = "ids")
+    @Operation(summary = "Get orders by IDs", description = "Fetch many orders in one call, e.g. ?ids=1,2,3. Results keep the request order and unknown IDs are reported as missing.")
+    public ResponseEntity<ApiResponse<MultiGetResult<Long, Order>>> getOrdersByIds(
+            @Parameter(description = "IDs to fetch", required = true) @RequestParam List<Long> ids,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetIds(ids, requestId);
+    }
+    
+    @PostMapping("/ids")
+    @Operation(summary = "Get orders by IDs (request body)", description = "Same as the GET variant with the keys sent as a JSON array, for key sets too large for a URL")
+    public ResponseEntity<ApiResponse<MultiGetResult<Long, Order>>> postOrdersByIds(
+            @RequestBody List<Long> ids,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetIds(ids, requestId);
+    }
+    
+    @GetMapping("/numbers")
+    @Operation(summary = "Get orders by order numbers", description = "Fetch many orders in one call, e.g. ?numbers=a,b,c. Results keep the request order and unknown order numbers are reported as missing.")
+    public ResponseEntity<ApiResponse<MultiGetResult<String, Order>>> getOrdersByNumbers(
+            @Parameter(description = "Order numbers to fetch", required = true) @RequestParam List<String> numbers,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetNumbers(numbers, requestId);
+    }
+    
+    @PostMapping("/numbers")
+    @Operation(summary = "Get orders by order numbers (request body)", description = "Same as the GET variant with the keys sent as a JSON array, for key sets too large for a URL")
+    public ResponseEntity<ApiResponse<MultiGetResult<String, Order>>> postOrdersByNumbers(
+            @RequestBody List<String> numbers,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetNumbers(numbers, requestId);
+    }
+    
     @GetMapping("/{id}")
     @Operation(summary = "Get order by ID", description = "Retrieve a specific order by its ID")
     public ResponseEntity<ApiResponse<Order>> getOrderById(
             @Parameter(description = "Order ID", required = true) @PathVariable Long id,
+            @Parameter(description = "Also search archived orders") @RequestParam(defaultValue = "false") boolean includeArchived,
             @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
     ) {
-        return orderService.getOrderById(id)
+        return orderService.getOrderById(id, includeArchived)
                 .map(order -> ResponseEntity.ok()
                         .header("X-Request-ID", requestId != null ? requestId : "N/A")
                         .body(ApiResponse.success(order, "Order found")))
@@ -55,12 +159,26 @@ public class OrderController {
     @Operation(summary = "Get order by order number", description = "Retrieve an order by its order number")
     public ResponseEntity<ApiResponse<Order>> getOrderByOrderNumber(
             @Parameter(description = "Order number", required = true) @PathVariable String orderNumber,
+            @Parameter(description = "Also search archived orders") @RequestParam(defaultValue = "false") boolean includeArchived,
             @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
     ) {
-        return orderService.getOrderByOrderNumber(orderNumber)
+        // Orders still in the pipeline are not in the database yet; their status is the stage they reached
+        Optional<Order> inFlight = orderPipelineService.findInFlight(orderNumber);
+        if (inFlight.isPresent()) {
+            String message = orderPipelineService.getRejectionReason(orderNumber)
+                    .map(reason -> "Order rejected: " + reason)
+                    .orElse("Order is being processed");
+            return ResponseEntity.ok()
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(inFlight.get(), message));
+        }
+        String transitionMessage = orderPipelineService.getRejectedTransition(orderNumber)
+                .map(rejection -> "Order found, last status change to " + rejection.status() + " rejected: " + rejection.reason())
+                .orElse("Order found");
+        return orderService.getOrderByOrderNumber(orderNumber, includeArchived)
                 .map(order -> ResponseEntity.ok()
                         .header("X-Request-ID", requestId != null ? requestId : "N/A")
-                        .body(ApiResponse.success(order, "Order found")))
+                        .body(ApiResponse.success(order, transitionMessage)))
                 .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body(ApiResponse.error("Order not found with number: " + orderNumber)));
     }
@@ -69,9 +187,10 @@ public class OrderController {
     @Operation(summary = "Get orders by user ID", description = "Retrieve all orders for a specific user")
     public ResponseEntity<ApiResponse<List<Order>>> getOrdersByUserId(
             @Parameter(description = "User ID", required = true) @PathVariable Long userId,
+            @Parameter(description = "Also return archived orders") @RequestParam(defaultValue = "false") boolean includeArchived,
             @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
     ) {
-        List<Order> orders = orderService.getOrdersByUserId(userId);
+        List<Order> orders = orderService.getOrdersByUserId(userId, includeArchived);
         return ResponseEntity.ok()
                 .header("X-Total-Count", String.valueOf(orders.size()))
                 .header("X-Request-ID", requestId != null ? requestId : "N/A")
@@ -82,9 +201,10 @@ public class OrderController {
     @Operation(summary = "Get orders by status", description = "Retrieve all orders with a specific status")
     public ResponseEntity<ApiResponse<List<Order>>> getOrdersByStatus(
             @Parameter(description = "Order status (PENDING, PROCESSING, SHIPPED, DELIVERED, CANCELLED)", required = true) @PathVariable String status,
+            @Parameter(description = "Also return archived orders") @RequestParam(defaultValue = "false") boolean includeArchived,
             @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
     ) {
-        List<Order> orders = orderService.getOrdersByStatus(status);
+        List<Order> orders = orderService.getOrdersByStatus(status, includeArchived);
         return ResponseEntity.ok()
                 .header("X-Total-Count", String.valueOf(orders.size()))
                 .header("X-Request-ID", requestId != null ? requestId : "N/A")
@@ -102,13 +222,56 @@ public class OrderController {
                 .body(ApiResponse.success(statuses, "Statuses retrieved successfully"));
     }
     
+    @GetMapping("/changes")
+    @Operation(
+        summary = "Get orders changed since a cursor",
+        description = "Delta sync: returns orders created or updated and ids of orders deleted after the cursor, " +
+                "in commit order. Pass nextCursor back as since until hasMore is false, then keep polling with the last one. " +
+                "A full sync returns every current row; drop local rows it did not return. " +
+                "Start over without since when fullResyncRequired is set."
+    )
+    public ResponseEntity<ApiResponse<DeltaPage<Order>>> getOrderChanges(
+            @Parameter(description = "nextCursor from a previous response; omit for a full sync") @RequestParam(required = false) String since,
+            @Parameter(description = "Maximum changes to return (default: 500)") @RequestParam(defaultValue = "500") Integer limit,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        try {
+            DeltaPage<Order> page = orderService.getOrderChanges(since, limit);
+            return ResponseEntity.ok()
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(page, "Order changes retrieved"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     @PostMapping
-    @Operation(summary = "Create a new order", description = "Place a new order")
+    @Operation(
+        summary = "Create a new order",
+        description = "Place a new order. Returns 202 with the order number when the order pipeline is enabled; " +
+                "poll GET /api/v1/orders/number/{orderNumber} for the outcome."
+    )
     public ResponseEntity<ApiResponse<Order>> createOrder(
             @Valid @RequestBody Order order,
             @Parameter(description = "Client ID") @RequestHeader(value = "X-Client-ID", required = false) String clientId,
+            @Parameter(description = "Idempotency key - retries with the same key replay the original response") @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
     ) {
+        if (orderPipelineService.isEnabled()) {
+            try {
+                String orderNumber = orderPipelineService.submit(order);
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                        .header("Location", "/api/v1/orders/number/" + orderNumber)
+                        .body(ApiResponse.success(order, "Order accepted for processing"));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header("Retry-After", "1")
+                        .body(ApiResponse.error(e.getMessage()));
+            }
+        }
         Order createdOrder = orderService.createOrder(order);
         return ResponseEntity.status(HttpStatus.CREATED)
                 .header("X-Request-ID", requestId != null ? requestId : "N/A")
@@ -117,18 +280,102 @@ public class OrderController {
     }
     
     @PutMapping("/{id}")
-    @Operation(summary = "Update an order", description = "Update an existing order by ID")
+    @Operation(summary = "Update an order", description = "Update an existing order by ID. The status is not changed here, use PATCH /{id}/status")
     public ResponseEntity<ApiResponse<Order>> updateOrder(
             @Parameter(description = "Order ID", required = true) @PathVariable Long id,
             @Valid @RequestBody Order order,
             @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
     ) {
-        return orderService.updateOrder(id, order)
-                .map(updatedOrder -> ResponseEntity.ok()
+        try {
+            return orderService.updateOrder(id, order)
+                    .map(updatedOrder -> ResponseEntity.ok()
+                            .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                            .body(ApiResponse.success(updatedOrder, "Order updated successfully")))
+                    .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .body(ApiResponse.error("Order not found with id: " + id)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @PatchMapping("/{id}/status")
+    @Operation(
+        summary = "Update order status",
+        description = "Same transitions as POST /number/{orderNumber}/transitions, so CANCELLED returns the order's stock. " +
+                "Returns 202 when the order pipeline is enabled and the change is applied asynchronously."
+    )
+    public ResponseEntity<ApiResponse<Order>> updateOrderStatus(
+            @Parameter(description = "Order ID", required = true) @PathVariable Long id,
+            @Parameter(description = "New order status", required = true) @RequestParam String status,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        Optional<String> orderNumber = orderService.getOrderById(id, false).map(Order::getOrderNumber);
+        if (orderNumber.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error("Order not found with id: " + id));
+        }
+        try {
+            if (orderPipelineService.isEnabled()) {
+                orderPipelineService.submitTransition(orderNumber.get(), status);
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
                         .header("X-Request-ID", requestId != null ? requestId : "N/A")
-                        .body(ApiResponse.success(updatedOrder, "Order updated successfully")))
-                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body(ApiResponse.error("Order not found with id: " + id)));
+                        .header("Location", "/api/v1/orders/number/" + orderNumber.get())
+                        .body(ApiResponse.success(null, "Order status change queued"));
+            }
+            Optional<String> rejection = orderPipelineService.transitionNow(orderNumber.get(), status);
+            if (rejection.isPresent()) {
+                HttpStatus httpStatus = "Order not found".equals(rejection.get()) ? HttpStatus.NOT_FOUND : HttpStatus.CONFLICT;
+                return ResponseEntity.status(httpStatus).body(ApiResponse.error(rejection.get()));
+            }
+            return orderService.getOrderById(id, false)
+                    .map(updatedOrder -> ResponseEntity.ok()
+                            .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                            .body(ApiResponse.success(updatedOrder, "Order status updated successfully")))
+                    .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .body(ApiResponse.error("Order not found with id: " + id)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "1")
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/number/{orderNumber}/transitions")
+    @Operation(
+        summary = "Change order status by order number",
+        description = "Moves an order along PENDING -> PAID -> PROCESSING -> SHIPPED -> DELIVERED, or to CANCELLED before it ships " +
+                "(which returns its stock). Returns 202 when the order pipeline is enabled and the change is applied asynchronously."
+    )
+    public ResponseEntity<ApiResponse<Void>> transitionOrder(
+            @Parameter(description = "Order number", required = true) @PathVariable String orderNumber,
+            @Parameter(description = "New order status", required = true) @RequestParam String status,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        try {
+            if (orderPipelineService.isEnabled()) {
+                orderPipelineService.submitTransition(orderNumber, status);
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                        .header("Location", "/api/v1/orders/number/" + orderNumber)
+                        .body(ApiResponse.success(null, "Order status change queued"));
+            }
+            Optional<String> rejection = orderPipelineService.transitionNow(orderNumber, status);
+            if (rejection.isPresent()) {
+                HttpStatus httpStatus = "Order not found".equals(rejection.get()) ? HttpStatus.NOT_FOUND : HttpStatus.CONFLICT;
+                return ResponseEntity.status(httpStatus).body(ApiResponse.error(rejection.get()));
+            }
+            return ResponseEntity.ok()
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(null, "Order status changed to " + status));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "1")
+                    .body(ApiResponse.error(e.getMessage()));
+        }
     }
     
     @DeleteMapping("/{id}")
@@ -146,4 +393,59 @@ public class OrderController {
         return ResponseEntity.status(HttpStatus.NOT_FOUND)
                 .body(ApiResponse.error("Order not found with id: " + id));
     }
+    
+    @DeleteMapping
+    @Operation(
+        summary = "Delete orders by status and age",
+        description = "Deletes every order in one of the statuses placed before the given time (ISO date-time, e.g. " +
+                "2024-01-01T00:00:00), on every shard, in short chunked transactions. Returns the number deleted. " +
+                "Stops with 503 while a shard bucket move is running; chunks deleted before that stay deleted and " +
+                "their count is returned as data."
+    )
+    public ResponseEntity<ApiResponse<Integer>> deleteOrders(
+            @Parameter(description = "Order statuses to delete, e.g. CANCELLED", required = true) @RequestParam List<String> status,
+            @Parameter(description = "Only orders placed before this time", required = true)
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        try {
+            OrderService.BulkDeletion result = orderService.deleteOrders(status, before);
+            if (result.stopped() != null) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header("Retry-After", "60")
+                        .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                        .body(ApiResponse.error(result.stopped() + " (" + result.deleted() + " orders deleted before stopping)",
+                                result.deleted()));
+            }
+            return ResponseEntity.ok()
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(result.deleted(), result.deleted() + " orders deleted"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    private ResponseEntity<ApiResponse<MultiGetResult<Long, Order>>> multiGetIds(List<Long> ids, String requestId) {
+        try {
+            MultiGetResult<Long, Order> result = orderService.getOrdersByIds(ids);
+            return ResponseEntity.ok()
+                    .header("X-Total-Count", String.valueOf(result.getItems().size()))
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(result, "Orders retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    private ResponseEntity<ApiResponse<MultiGetResult<String, Order>>> multiGetNumbers(List<String> numbers, String requestId) {
+        try {
+            MultiGetResult<String, Order> result = orderService.getOrdersByOrderNumbers(numbers);
+            return ResponseEntity.ok()
+                    .header("X-Total-Count", String.valueOf(result.getItems().size()))
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(result, "Orders retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
 }
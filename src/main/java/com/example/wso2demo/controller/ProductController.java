@@ -1,8 +1,17 @@
 package com.example.wso2demo.controller;
 
 import com.example.wso2demo.model.ApiResponse;
+import com.example.wso2demo.model.DeltaPage;
+import com.example.wso2demo.model.MultiGetResult;
 import com.example.wso2demo.model.Product;
+import com.example.wso2demo.model.ProductSummary;
+import com.example.wso2demo.model.Suggestion;
+import com.example.wso2demo.service.BulkImportService;
+import com.example.wso2demo.service.BulkImportService.ImportJob;
+import com.example.wso2demo.service.BulkImportService.ImportSpec;
 import com.example.wso2demo.service.ProductService;
+import com.example.wso2demo.service.StockAlertService;
+import com.example.wso2demo.service.WriteBehindService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.headers.Header;
@@ -10,12 +19,18 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.List;
 
 @RestController
@@ -27,6 +42,15 @@ public class ProductController {
     @Autowired
     private ProductService productService;
     
+    @Autowired
+    private WriteBehindService writeBehindService;
+    
+    @Autowired
+    private StockAlertService stockAlertService;
+    
+    @Autowired
+    private BulkImportService bulkImportService;
+    
     @GetMapping
     @Operation(
         summary = "Get all products with optional filtering",
@@ -55,6 +79,87 @@ public class ProductController {
                 .body(ApiResponse.success(products, "Products retrieved successfully"));
     }
     
+    @GetMapping("/count")
+    @Operation(
+        summary = "Count products matching attribute filters",
+        description = "Repeat a parameter to match any of several values, e.g. ?category=Electronics&category=Books&brand=Acme"
+    )
+    public ResponseEntity<ApiResponse<Long>> countProducts(
+            @Parameter(description = "Categories to match (any)") @RequestParam(required = false) List<String> category,
+            @Parameter(description = "Brands to match (any)") @RequestParam(required = false) List<String> brand,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        long count = productService.countProducts(category, brand);
+        return ResponseEntity.ok()
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(count, "Product count retrieved successfully"));
+    }
+    
+    @GetMapping("/summaries")
+    @Operation(summary = "Get product summaries", description = "Lightweight list view with id, name, price, category, stock, SKU and brand only")
+    public ResponseEntity<ApiResponse<List<ProductSummary>>> getProductSummaries(
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        List<ProductSummary> summaries = productService.getProductSummaries();
+        return ResponseEntity.ok()
+                .header("X-Total-Count", String.valueOf(summaries.size()))
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(summaries, "Products retrieved successfully"));
+    }
+    
+    @GetMapping(params = "ids")
+    @Operation(summary = "Get products by IDs", description = "Fetch many products in one call, e.g. ?ids=1,2,3. Results keep the request order and unknown IDs are reported as missing.")
+    public ResponseEntity<ApiResponse<MultiGetResult<Long, Product>>> getProductsByIds(
+            @Parameter(description = "IDs to fetch", required = true) @RequestParam List<Long> ids,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetIds(ids, requestId);
+    }
+    
+    @PostMapping("/ids")
+    @Operation(summary = "Get products by IDs (request body)", description = "Same as the GET variant with the keys sent as a JSON array, for key sets too large for a URL")
+    public ResponseEntity<ApiResponse<MultiGetResult<Long, Product>>> postProductsByIds(
+            @RequestBody List<Long> ids,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetIds(ids, requestId);
+    }
+    
+    @GetMapping("/skus")
+    @Operation(summary = "Get products by SKUs", description = "Fetch many products in one call, e.g. ?skus=a,b,c. Results keep the request order and unknown SKUs are reported as missing.")
+    public ResponseEntity<ApiResponse<MultiGetResult<String, Product>>> getProductsBySkus(
+            @Parameter(description = "SKUs to fetch", required = true) @RequestParam List<String> skus,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetSkus(skus, requestId);
+    }
+    
+    @PostMapping("/skus")
+    @Operation(summary = "Get products by SKUs (request body)", description = "Same as the GET variant with the keys sent as a JSON array, for key sets too large for a URL")
+    public ResponseEntity<ApiResponse<MultiGetResult<String, Product>>> postProductsBySkus(
+            @RequestBody List<String> skus,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetSkus(skus, requestId);
+    }
+    
+    @GetMapping("/suggest")
+    @Operation(summary = "Suggest products (typeahead)", description = "Up to limit products whose name has words starting with each word of q, most popular first")
+    public ResponseEntity<ApiResponse<List<Suggestion>>> suggest(
+            @Parameter(description = "Prefix typed so far", required = true) @RequestParam String q,
+            @Parameter(description = "Maximum number of suggestions") @RequestParam(defaultValue = "10") int limit,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        try {
+            List<Suggestion> suggestions = productService.suggestProducts(q, limit);
+            return ResponseEntity.ok()
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(suggestions, "Suggestions retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     @GetMapping("/{id}")
     @Operation(summary = "Get product by ID", description = "Retrieve a specific product by its ID")
     public ResponseEntity<ApiResponse<Product>> getProductById(
@@ -144,11 +249,56 @@ public class ProductController {
                 .body(ApiResponse.success(products, "Low stock products retrieved"));
     }
     
+    @GetMapping(value = "/low-stock/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+        summary = "Stream low stock alerts",
+        description = "Server-Sent Events replacing polling of /low-stock: first the products currently below the threshold, " +
+                "then LOW_STOCK/RESTOCKED alerts whenever a product's stock crosses it. Limit to categories and/or SKUs, " +
+                "e.g. ?threshold=5&category=Electronics&sku=LAP-001; omit both for all products."
+    )
+    public SseEmitter streamLowStock(
+            @Parameter(description = "Stock threshold (default: 10)") @RequestParam(defaultValue = "10") Integer threshold,
+            @Parameter(description = "Categories to watch (any)") @RequestParam(required = false) List<String> category,
+            @Parameter(description = "SKUs to watch (any)") @RequestParam(required = false) List<String> sku
+    ) {
+        try {
+            return stockAlertService.subscribe(threshold, category, sku);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+    }
+    
+    @GetMapping("/changes")
+    @Operation(
+        summary = "Get products changed since a cursor",
+        description = "Delta sync: returns products created or updated and ids of products deleted after the cursor, " +
+                "in commit order. Pass nextCursor back as since until hasMore is false, then keep polling with the last one. " +
+                "A full sync returns every current row; drop local rows it did not return. " +
+                "Start over without since when fullResyncRequired is set."
+    )
+    public ResponseEntity<ApiResponse<DeltaPage<Product>>> getProductChanges(
+            @Parameter(description = "nextCursor from a previous response; omit for a full sync") @RequestParam(required = false) String since,
+            @Parameter(description = "Maximum changes to return (default: 500)") @RequestParam(defaultValue = "500") Integer limit,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        try {
+            DeltaPage<Product> page = productService.getProductChanges(since, limit);
+            return ResponseEntity.ok()
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(page, "Product changes retrieved"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     @PostMapping
     @Operation(summary = "Create a new product", description = "Add a new product to the catalog")
     public ResponseEntity<ApiResponse<Product>> createProduct(
             @Valid @RequestBody Product product,
             @Parameter(description = "Client ID") @RequestHeader(value = "X-Client-ID", required = false) String clientId,
+            @Parameter(description = "Idempotency key - retries with the same key replay the original response") @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
     ) {
         Product createdProduct = productService.createProduct(product);
@@ -158,6 +308,35 @@ public class ProductController {
                 .body(ApiResponse.success(createdProduct, "Product created successfully"));
     }
     
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"}, produces = "application/x-ndjson")
+    @Operation(
+        summary = "Import products",
+        description = "Streams a CSV (header row of sku,name,description,price,category,stock,brand in any order and subset, " +
+                "sku required) or NDJSON upload and inserts or updates products by SKU in batches; like PUT, a row replaces " +
+                "the product, so columns left out are cleared. The response is NDJSON: " +
+                "one {line, key, errors} object per rejected row as batches complete, then a {summary} line. " +
+                "Batches commit independently, so a failed or aborted import may have applied part of the file."
+    )
+    public void importProducts(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) throws IOException {
+        ImportJob<Product> job;
+        try {
+            job = bulkImportService.prepare(request.getInputStream(), request.getContentType(),
+                    new ImportSpec<>(Product.class, ProductService.IMPORT_COLUMNS, "sku", Product::getSku, productService::upsertProducts));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+        response.setContentType(BulkImportService.NDJSON.toString());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("X-Request-ID", requestId != null ? requestId : "N/A");
+        job.run(response.getOutputStream());
+    }
+    
     @PutMapping("/{id}")
     @Operation(summary = "Update a product", description = "Update an existing product by ID")
     public ResponseEntity<ApiResponse<Product>> updateProduct(
@@ -173,6 +352,37 @@ public class ProductController {
                         .body(ApiResponse.error("Product not found with id: " + id)));
     }
     
+    @PatchMapping("/{id}/stock")
+    @Operation(
+        summary = "Adjust product stock",
+        description = "Add a signed delta to the stock level. Returns 202 when write-behind buffering is enabled and the update is applied asynchronously."
+    )
+    public ResponseEntity<ApiResponse<Product>> adjustStock(
+            @Parameter(description = "Product ID", required = true) @PathVariable Long id,
+            @Parameter(description = "Signed stock delta", required = true) @RequestParam int delta,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        if (writeBehindService.isEnabled()) {
+            try {
+                if (!productService.queueStockAdjustment(id, delta)) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .body(ApiResponse.error("Product not found with id: " + id));
+                }
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+            }
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(null, "Stock adjustment queued"));
+        }
+        return productService.adjustStock(id, delta)
+                .map(updatedProduct -> ResponseEntity.ok()
+                        .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                        .body(ApiResponse.success(updatedProduct, "Stock adjusted successfully")))
+                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.error("Product not found with id: " + id)));
+    }
+    
     @DeleteMapping("/{id}")
     @Operation(summary = "Delete a product", description = "Remove a product from the catalog")
     public ResponseEntity<ApiResponse<Void>> deleteProduct(
@@ -188,4 +398,28 @@ public class ProductController {
         return ResponseEntity.status(HttpStatus.NOT_FOUND)
                 .body(ApiResponse.error("Product not found with id: " + id));
     }
+    
+    private ResponseEntity<ApiResponse<MultiGetResult<Long, Product>>> multiGetIds(List<Long> ids, String requestId) {
+        try {
+            MultiGetResult<Long, Product> result = productService.getProductsByIds(ids);
+            return ResponseEntity.ok()
+                    .header("X-Total-Count", String.valueOf(result.getItems().size()))
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(result, "Products retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    private ResponseEntity<ApiResponse<MultiGetResult<String, Product>>> multiGetSkus(List<String> skus, String requestId) {
+        try {
+            MultiGetResult<String, Product> result = productService.getProductsBySkus(skus);
+            return ResponseEntity.ok()
+                    .header("X-Total-Count", String.valueOf(result.getItems().size()))
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(result, "Products retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
 }
@@ -0,0 +1,48 @@
+package com.example.wso2demo.controller;
+
+import com.example.wso2demo.model.ApiResponse;
+import com.example.wso2demo.model.QueryRequest;
+import com.example.wso2demo.service.QueryService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1")
+@Tag(name = "Query", description = "Field selection queries across products, users and orders")
+@CrossOrigin(origins = "*")
+public class QueryController {
+    
+    @Autowired
+    private QueryService queryService;
+    
+    @PostMapping("/query")
+    @Operation(
+        summary = "Query with field selection and nested relations",
+        description = "Fetch only the selected fields of products, users or orders, including nested relations " +
+                "(order -> items -> product, order -> user, user -> orders) in a single request. " +
+                "Example: {\"entity\": \"orders\", \"where\": {\"userId\": 1}, \"fields\": [\"orderNumber\", \"status\", " +
+                "{\"items\": [\"quantity\", {\"product\": [\"name\", \"price\"]}]}, {\"user\": [\"username\"]}]}"
+    )
+    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> query(
+            @Valid @RequestBody QueryRequest request,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        try {
+            List<Map<String, Object>> results = queryService.execute(request);
+            return ResponseEntity.ok()
+                    .header("X-Total-Count", String.valueOf(results.size()))
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(results, "Query executed successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.wso2demo.controller;
+
+import com.example.wso2demo.model.ApiResponse;
+import com.example.wso2demo.service.ReshardingService;
+import com.example.wso2demo.service.ShardRouter;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+@RestController
+@RequestMapping("/api/v1/admin/shards")
+@Tag(name = "Shards", description = "Shard layout and resharding")
+@CrossOrigin(origins = "*")
+public class ShardController {
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private ReshardingService reshardingService;
+    
+    @GetMapping
+    @Operation(summary = "Get the shard layout", description = "Number of shards and buckets, buckets per shard and buckets being moved")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getLayout(
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        Map<String, Object> layout = new LinkedHashMap<>();
+        layout.put("enabled", shardRouter.isEnabled());
+        layout.put("shards", shardRouter.getShardCount());
+        if (shardRouter.isEnabled()) {
+            layout.put("buckets", shardRouter.getBucketCount());
+            layout.put("bucketsPerShard", shardRouter.getBucketsPerShard());
+            layout.put("movingBuckets", new TreeSet<>(shardRouter.getMovingBuckets()));
+        }
+        return ResponseEntity.ok()
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(layout, "Shard layout retrieved"));
+    }
+    
+    @GetMapping("/users/{userId}")
+    @Operation(summary = "Locate a user", description = "Bucket and shard a user id is placed on")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> locateUser(
+            @Parameter(description = "User ID", required = true) @PathVariable Long userId,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        Map<String, Object> placement = new LinkedHashMap<>();
+        placement.put("userId", userId);
+        if (shardRouter.isEnabled()) {
+            placement.put("bucket", shardRouter.bucketOf(userId));
+        }
+        placement.put("shard", shardRouter.shardOf(userId));
+        return ResponseEntity.ok()
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(placement, "User located"));
+    }
+    
+    @PostMapping("/buckets/{bucket}/move")
+    @Operation(
+        summary = "Move a bucket to another shard",
+        description = "Copies the users of the bucket with their orders and items to the target shard and switches the bucket. " +
+                "Writes for those users get 503 while the move runs; a failed move can be retried."
+    )
+    public ResponseEntity<ApiResponse<Map<String, Integer>>> moveBucket(
+            @Parameter(description = "Bucket number", required = true) @PathVariable int bucket,
+            @Parameter(description = "Target shard", required = true) @RequestParam int targetShard,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        try {
+            Map<String, Integer> moved = reshardingService.moveBucket(bucket, targetShard);
+            return ResponseEntity.ok()
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(moved, "Bucket " + bucket + " moved to shard " + targetShard));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+}
@@ -1,17 +1,30 @@
 package com.example.wso2demo.controller;
 
 import com.example.wso2demo.model.ApiResponse;
+import com.example.wso2demo.model.AvailabilityRequest;
+import com.example.wso2demo.model.DeltaPage;
+import com.example.wso2demo.model.MultiGetResult;
+import com.example.wso2demo.model.Suggestion;
 import com.example.wso2demo.model.User;
+import com.example.wso2demo.model.UserAvailability;
+import com.example.wso2demo.model.UserSummary;
+import com.example.wso2demo.service.BulkImportService;
+import com.example.wso2demo.service.BulkImportService.ImportJob;
+import com.example.wso2demo.service.BulkImportService.ImportSpec;
 import com.example.wso2demo.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
 import java.util.List;
 
 @RestController
@@ -23,6 +36,9 @@ public class UserController {
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private BulkImportService bulkImportService;
+    
     @GetMapping
     @Operation(
         summary = "Get all users with optional filtering",
@@ -45,6 +61,107 @@ public class UserController {
                 .body(ApiResponse.success(users, "Users retrieved successfully"));
     }
     
+    @GetMapping("/count")
+    @Operation(
+        summary = "Count users matching attribute filters",
+        description = "Repeat a parameter to match any of several values, e.g. ?country=USA&country=Canada&status=ACTIVE"
+    )
+    public ResponseEntity<ApiResponse<Long>> countUsers(
+            @Parameter(description = "Countries to match (any)") @RequestParam(required = false) List<String> country,
+            @Parameter(description = "Cities to match (any)") @RequestParam(required = false) List<String> city,
+            @Parameter(description = "Statuses to match (any)") @RequestParam(required = false) List<String> status,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        long count = userService.countUsers(country, city, status);
+        return ResponseEntity.ok()
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(count, "User count retrieved successfully"));
+    }
+    
+    @GetMapping("/summaries")
+    @Operation(summary = "Get user summaries", description = "Lightweight list view with id, username, full name, city, country and status only")
+    public ResponseEntity<ApiResponse<List<UserSummary>>> getUserSummaries(
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        List<UserSummary> summaries = userService.getUserSummaries();
+        return ResponseEntity.ok()
+                .header("X-Total-Count", String.valueOf(summaries.size()))
+                .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                .body(ApiResponse.success(summaries, "Users retrieved successfully"));
+    }
+    
+    @GetMapping(params = "ids")
+    @Operation(summary = "Get users by IDs", description = "Fetch many users in one call, e.g. ?ids=1,2,3. Results keep the request order and unknown IDs are reported as missing.")
+    public ResponseEntity<ApiResponse<MultiGetResult<Long, User>>> getUsersByIds(
+            @Parameter(description = "IDs to fetch", required = true) @RequestParam List<Long> ids,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetIds(ids, requestId);
+    }
+    
+    @PostMapping("/ids")
+    @Operation(summary = "Get users by IDs (request body)", description = "Same as the GET variant with the keys sent as a JSON array, for key sets too large for a URL")
+    public ResponseEntity<ApiResponse<MultiGetResult<Long, User>>> postUsersByIds(
+            @RequestBody List<Long> ids,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetIds(ids, requestId);
+    }
+    
+    @GetMapping("/usernames")
+    @Operation(summary = "Get users by usernames", description = "Fetch many users in one call, e.g. ?usernames=a,b,c. Results keep the request order and unknown usernames are reported as missing.")
+    public ResponseEntity<ApiResponse<MultiGetResult<String, User>>> getUsersByUsernames(
+            @Parameter(description = "Usernames to fetch", required = true) @RequestParam List<String> usernames,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetUsernames(usernames, requestId);
+    }
+    
+    @PostMapping("/usernames")
+    @Operation(summary = "Get users by usernames (request body)", description = "Same as the GET variant with the keys sent as a JSON array, for key sets too large for a URL")
+    public ResponseEntity<ApiResponse<MultiGetResult<String, User>>> postUsersByUsernames(
+            @RequestBody List<String> usernames,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return multiGetUsernames(usernames, requestId);
+    }
+    
+    @GetMapping("/availability")
+    @Operation(summary = "Check username/email availability", description = "e.g. ?username=a,b&email=x@example.com. Each key maps to true when no user has it yet.")
+    public ResponseEntity<ApiResponse<UserAvailability>> getAvailability(
+            @Parameter(description = "Usernames to check") @RequestParam(required = false) List<String> username,
+            @Parameter(description = "Emails to check") @RequestParam(required = false) List<String> email,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return availability(username, email, requestId);
+    }
+    
+    @PostMapping("/availability")
+    @Operation(summary = "Check username/email availability (request body)", description = "Same as the GET variant with the keys sent as {\"usernames\": [...], \"emails\": [...]}")
+    public ResponseEntity<ApiResponse<UserAvailability>> postAvailability(
+            @RequestBody AvailabilityRequest request,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        return availability(request.getUsernames(), request.getEmails(), requestId);
+    }
+    
+    @GetMapping("/suggest")
+    @Operation(summary = "Suggest users (typeahead)", description = "Up to limit users whose full name or username has words starting with each word of q, most popular first")
+    public ResponseEntity<ApiResponse<List<Suggestion>>> suggest(
+            @Parameter(description = "Prefix typed so far", required = true) @RequestParam String q,
+            @Parameter(description = "Maximum number of suggestions") @RequestParam(defaultValue = "10") int limit,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        try {
+            List<Suggestion> suggestions = userService.suggestUsers(q, limit);
+            return ResponseEntity.ok()
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(suggestions, "Suggestions retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     @GetMapping("/{id}")
     @Operation(summary = "Get user by ID", description = "Retrieve a specific user by their ID")
     public ResponseEntity<ApiResponse<User>> getUserById(
@@ -123,11 +240,35 @@ public class UserController {
                 .body(ApiResponse.success(countries, "Countries retrieved successfully"));
     }
     
+    @GetMapping("/changes")
+    @Operation(
+        summary = "Get users changed since a cursor",
+        description = "Delta sync: returns users created or updated and ids of users deleted after the cursor, " +
+                "in commit order. Pass nextCursor back as since until hasMore is false, then keep polling with the last one. " +
+                "A full sync returns every current row; drop local rows it did not return. " +
+                "Start over without since when fullResyncRequired is set."
+    )
+    public ResponseEntity<ApiResponse<DeltaPage<User>>> getUserChanges(
+            @Parameter(description = "nextCursor from a previous response; omit for a full sync") @RequestParam(required = false) String since,
+            @Parameter(description = "Maximum changes to return (default: 500)") @RequestParam(defaultValue = "500") Integer limit,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) {
+        try {
+            DeltaPage<User> page = userService.getUserChanges(since, limit);
+            return ResponseEntity.ok()
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(page, "User changes retrieved"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     @PostMapping
     @Operation(summary = "Create a new user", description = "Register a new user")
     public ResponseEntity<ApiResponse<User>> createUser(
             @Valid @RequestBody User user,
             @Parameter(description = "Client ID") @RequestHeader(value = "X-Client-ID", required = false) String clientId,
+            @Parameter(description = "Idempotency key - retries with the same key replay the original response") @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
     ) {
         User createdUser = userService.createUser(user);
@@ -137,6 +278,35 @@ public class UserController {
                 .body(ApiResponse.success(createdUser, "User created successfully"));
     }
     
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"}, produces = "application/x-ndjson")
+    @Operation(
+        summary = "Import users",
+        description = "Streams a CSV (header row of username,email,fullName,phone,address,city,country,status in any order " +
+                "and subset, username required) or NDJSON upload and inserts or updates users by username in batches; like PUT, " +
+                "a row replaces the user, so columns left out are cleared (except status, which is kept). " +
+                "The response is NDJSON: one {line, key, errors} object per rejected row as batches complete, then a {summary} line. " +
+                "Batches commit independently, so a failed or aborted import may have applied part of the file."
+    )
+    public void importUsers(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            @Parameter(description = "Request ID for tracing") @RequestHeader(value = "X-Request-ID", required = false) String requestId
+    ) throws IOException {
+        ImportJob<User> job;
+        try {
+            job = bulkImportService.prepare(request.getInputStream(), request.getContentType(),
+                    new ImportSpec<>(User.class, UserService.IMPORT_COLUMNS, "username", User::getUsername, userService::upsertUsers));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+        response.setContentType(BulkImportService.NDJSON.toString());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("X-Request-ID", requestId != null ? requestId : "N/A");
+        job.run(response.getOutputStream());
+    }
+    
     @PutMapping("/{id}")
     @Operation(summary = "Update a user", description = "Update an existing user by ID")
     public ResponseEntity<ApiResponse<User>> updateUser(
@@ -167,4 +337,39 @@ public class UserController {
         return ResponseEntity.status(HttpStatus.NOT_FOUND)
                 .body(ApiResponse.error("User not found with id: " + id));
     }
+    
+    private ResponseEntity<ApiResponse<MultiGetResult<Long, User>>> multiGetIds(List<Long> ids, String requestId) {
+        try {
+            MultiGetResult<Long, User> result = userService.getUsersByIds(ids);
+            return ResponseEntity.ok()
+                    .header("X-Total-Count", String.valueOf(result.getItems().size()))
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(result, "Users retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    private ResponseEntity<ApiResponse<MultiGetResult<String, User>>> multiGetUsernames(List<String> usernames, String requestId) {
+        try {
+            MultiGetResult<String, User> result = userService.getUsersByUsernames(usernames);
+            return ResponseEntity.ok()
+                    .header("X-Total-Count", String.valueOf(result.getItems().size()))
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(result, "Users retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    private ResponseEntity<ApiResponse<UserAvailability>> availability(List<String> usernames, List<String> emails, String requestId) {
+        try {
+            UserAvailability result = userService.checkAvailability(usernames, emails);
+            return ResponseEntity.ok()
+                    .header("X-Request-ID", requestId != null ? requestId : "N/A")
+                    .body(ApiResponse.success(result, "Availability checked"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
 }
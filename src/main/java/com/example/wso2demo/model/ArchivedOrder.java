@@ -0,0 +1,73 @@
+package com.example.wso2demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A closed order moved to the cold store. Keeps the original id and order number; the items are
+ * stored as a JSON array so an archived order is a single row.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "orders_archive", indexes = {
+        @Index(name = "idx_orders_archive_user_id", columnList = "user_id"),
+        @Index(name = "idx_orders_archive_status", columnList = "status"),
+        @Index(name = "idx_orders_archive_order_date", columnList = "order_date")
+})
+public class ArchivedOrder implements Persistable<Long> {
+    
+    @Id
+    private Long id;
+    
+    @Column(name = "order_number", nullable = false, unique = true, length = 50)
+    private String orderNumber;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Column(name = "total_amount", nullable = false)
+    private Double totalAmount;
+    
+    @Column(length = 30)
+    private String status;
+    
+    @Column(name = "payment_method", length = 50)
+    private String paymentMethod;
+    
+    @Column(name = "shipping_address")
+    private String shippingAddress;
+    
+    @Column(name = "order_date")
+    private LocalDateTime orderDate;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+    
+    @Column(columnDefinition = "MEDIUMTEXT")
+    private String items;
+    
+    // Ids are assigned from the hot order, so save() must not merge (one SELECT per row) to find out the row is new
+    @Transient
+    private boolean persisted;
+    
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+    
+    @PostLoad
+    @PostPersist
+    protected void markPersisted() {
+        persisted = true;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.wso2demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Body of POST /api/v1/users/availability; either list may be omitted.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AvailabilityRequest {
+    
+    private List<String> usernames;
+    
+    private List<String> emails;
+}
@@ -0,0 +1,27 @@
+package com.example.wso2demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+
+/**
+ * One shard's own record of whether it owns a bucket, and since which epoch of the bucket map.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "bucket_fences")
+public class BucketFence {
+    
+    @Id
+    private Integer bucket;
+    
+    @Column(nullable = false)
+    private long epoch;
+    
+    @Column(nullable = false)
+    private boolean owned;
+}
@@ -0,0 +1,29 @@
+package com.example.wso2demo.model;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeEvent {
+    
+    private Long sequence;
+    private String aggregateType;
+    private Long aggregateId;
+    private String eventType;
+    
+    @JsonRawValue
+    private String payload;
+    
+    private LocalDateTime createdAt;
+    
+    public static ChangeEvent from(OutboxEvent event) {
+        return new ChangeEvent(event.getSequence(), event.getAggregateType(), event.getAggregateId(),
+                event.getEventType(), event.getPayload(), event.getCreatedAt());
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.wso2demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * In-process notification of a batch of outbox events read by the change relay, in sequence
+ * order. Unlike EntityChangedEvent it also carries writes committed by other instances.
+ */
+@Data
+@AllArgsConstructor
+public class ChangesRelayedEvent {
+    
+    private List<ChangeEvent> changes;
+}
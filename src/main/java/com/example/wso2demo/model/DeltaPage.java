@@ -0,0 +1,23 @@
+package com.example.wso2demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeltaPage<T> {
+    
+    private List<T> changed;
+    private List<Long> deleted;
+    
+    // Pass back as ?since= to continue; stable even when nothing changed
+    private String nextCursor;
+    private boolean hasMore;
+    
+    // Outbox events after the cursor were already purged (or it predates sequence cursors): start over without since
+    private boolean fullResyncRequired;
+}
@@ -0,0 +1,18 @@
+package com.example.wso2demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * In-process notification of an entity write, published alongside the outbox record and
+ * delivered to listeners after the transaction commits. state is null for deletions.
+ */
+@Data
+@AllArgsConstructor
+public class EntityChangedEvent {
+    
+    private String aggregateType;
+    private Long aggregateId;
+    private String eventType;
+    private Object state;
+}
@@ -0,0 +1,16 @@
+package com.example.wso2demo.model;
+
+import java.util.DoubleSummaryStatistics;
+
+/**
+ * count/sum/min/max of a value for one group, as computed by a GROUP BY query.
+ */
+public record GroupStatistics<K>(K key, Long count, Double sum, Double min, Double max) {
+    
+    public DoubleSummaryStatistics toSummaryStatistics() {
+        if (count == null || count == 0) {
+            return new DoubleSummaryStatistics();
+        }
+        return new DoubleSummaryStatistics(count, min, max, sum);
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.wso2demo.model;
+
+import java.util.List;
+
+/**
+ * One line of a bulk import report: the input line a rejected row started on, its natural key
+ * when it could be read, and why it was rejected.
+ */
+public record ImportRowError(long line, String key, List<String> errors) {
+}
@@ -0,0 +1,9 @@
+package com.example.wso2demo.model;
+
+/**
+ * Last line of a bulk import report. Rows repeating a natural key within a batch count as
+ * duplicates, the last one wins; aborted is set when the upload could not be read to the end.
+ */
+public record ImportSummary(long rows, long inserted, long updated, long rejected, long duplicates,
+                            long elapsedMs, String aborted) {
+}
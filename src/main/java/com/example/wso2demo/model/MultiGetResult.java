@@ -0,0 +1,18 @@
+package com.example.wso2demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultiGetResult<K, T> {
+    
+    // In the order the keys were requested, duplicates removed
+    private List<T> items;
+    
+    private List<K> missing;
+}
@@ -1,5 +1,6 @@
 package com.example.wso2demo.model;
 
+import com.example.wso2demo.config.AllocatedId;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -15,11 +16,16 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_updated_at_id", columnList = "updated_at, id"),
+        @Index(name = "idx_orders_user_id_status", columnList = "user_id, status"),
+        @Index(name = "idx_orders_status_order_date", columnList = "status, order_date"),
+        @Index(name = "idx_orders_payment_method", columnList = "payment_method")
+})
 public class Order {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @AllocatedId("orders")
     private Long id;
     
     @Column(name = "order_number", nullable = false, unique = true, length = 50)
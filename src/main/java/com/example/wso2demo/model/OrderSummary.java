@@ -0,0 +1,10 @@
+package com.example.wso2demo.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * List-view projection of Order, without shipping address and items.
+ */
+public record OrderSummary(Long id, String orderNumber, Long userId, Double totalAmount, String status,
+                           String paymentMethod, LocalDateTime orderDate) {
+}
@@ -0,0 +1,23 @@
+package com.example.wso2demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "outbox_relay_state")
+public class OutboxRelayState {
+    
+    public static final Long SINGLETON_ID = 1L;
+    
+    @Id
+    private Long id;
+    
+    @Column(name = "last_sequence", nullable = false)
+    private Long lastSequence;
+}
@@ -0,0 +1,7 @@
+package com.example.wso2demo.model;
+
+/**
+ * Per-entity activity count (orders per user, units sold per product) used to rank suggestions.
+ */
+public record Popularity(Long id, Long count) {
+}
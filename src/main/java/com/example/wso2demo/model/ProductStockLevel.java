@@ -0,0 +1,9 @@
+package com.example.wso2demo.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Stock projection of Product: what low-stock alerts compare and report.
+ */
+public record ProductStockLevel(Long id, String sku, String name, String category, Integer stock, LocalDateTime updatedAt) {
+}
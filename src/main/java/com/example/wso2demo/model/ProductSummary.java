@@ -0,0 +1,7 @@
+package com.example.wso2demo.model;
+
+/**
+ * List-view projection of Product, without description and audit timestamps.
+ */
+public record ProductSummary(Long id, String name, Double price, String category, Integer stock, String sku, String brand) {
+}
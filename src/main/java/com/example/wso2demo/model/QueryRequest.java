@@ -0,0 +1,31 @@
+package com.example.wso2demo.model;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Body of POST /api/v1/query. fields lists scalar field names and nested relations, e.g.
+ * ["orderNumber", "status", {"items": ["quantity", {"product": ["name", "price"]}]}, {"user": ["username"]}].
+ * An omitted or empty field list selects every scalar field.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryRequest {
+    
+    @NotBlank(message = "Entity is required")
+    private String entity;
+    
+    private List<Long> ids;
+    
+    private Map<String, Object> where;
+    
+    private List<Object> fields;
+    
+    private Integer limit;
+}
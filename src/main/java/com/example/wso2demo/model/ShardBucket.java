@@ -0,0 +1,29 @@
+package com.example.wso2demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "shard_buckets")
+public class ShardBucket {
+    
+    @Id
+    private Integer bucket;
+    
+    @Column(nullable = false)
+    private Integer shard;
+    
+    // Set while the bucket's rows are copied to another shard; writes for its users are refused
+    @Column(nullable = false)
+    private boolean moving;
+    
+    // Changes with every move, so a shard's fence tells which placement it was given the bucket under
+    @Column(nullable = false)
+    private long epoch;
+}
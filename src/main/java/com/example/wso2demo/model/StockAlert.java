@@ -0,0 +1,16 @@
+package com.example.wso2demo.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Pushed on the low-stock stream when a product's stock crosses a subscribed threshold:
+ * LOW_STOCK when it drops below, RESTOCKED when it is back at or above. previousStock is null
+ * for alerts in the initial snapshot and for new products.
+ */
+public record StockAlert(String type, Long productId, String sku, String name, String category,
+                         Integer stock, Integer previousStock, int threshold, LocalDateTime updatedAt) {
+    
+    public static final String LOW_STOCK = "LOW_STOCK";
+    
+    public static final String RESTOCKED = "RESTOCKED";
+}
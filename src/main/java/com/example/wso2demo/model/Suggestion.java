@@ -0,0 +1,8 @@
+package com.example.wso2demo.model;
+
+/**
+ * Typeahead result: text is what matched (full name, product name), detail disambiguates it
+ * (username, brand), popularity is what results are ranked by.
+ */
+public record Suggestion(Long id, String text, String detail, long popularity) {
+}
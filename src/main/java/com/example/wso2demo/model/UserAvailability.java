@@ -0,0 +1,18 @@
+package com.example.wso2demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserAvailability {
+    
+    // Requested key to whether it is still free, in request order
+    private Map<String, Boolean> usernames;
+    
+    private Map<String, Boolean> emails;
+}
@@ -0,0 +1,7 @@
+package com.example.wso2demo.model;
+
+/**
+ * The unique keys of a User, for loading in-memory lookups without materializing entities.
+ */
+public record UserKeys(Long id, String username, String email) {
+}
@@ -0,0 +1,7 @@
+package com.example.wso2demo.model;
+
+/**
+ * List-view projection of User, without email, phone, address and audit timestamps.
+ */
+public record UserSummary(Long id, String username, String fullName, String city, String country, String status) {
+}
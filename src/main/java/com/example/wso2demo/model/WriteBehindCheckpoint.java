@@ -0,0 +1,23 @@
+package com.example.wso2demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "write_behind_checkpoints")
+public class WriteBehindCheckpoint {
+    
+    @Id
+    @Column(name = "node_id", length = 100)
+    private String nodeId;
+    
+    // Highest journal segment whose contents are committed to the database
+    @Column(name = "last_segment", nullable = false)
+    private Long lastSegment;
+}
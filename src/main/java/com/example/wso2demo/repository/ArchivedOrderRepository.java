@@ -0,0 +1,20 @@
+package com.example.wso2demo.repository;
+
+import com.example.wso2demo.model.ArchivedOrder;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ArchivedOrderRepository extends JpaRepository<ArchivedOrder, Long> {
+    
+    Optional<ArchivedOrder> findByOrderNumber(String orderNumber);
+    
+    List<ArchivedOrder> findByUserId(Long userId);
+    
+    List<ArchivedOrder> findByStatus(String status);
+    
+    List<ArchivedOrder> findByPaymentMethod(String paymentMethod);
+}
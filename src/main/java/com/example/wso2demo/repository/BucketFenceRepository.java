@@ -0,0 +1,21 @@
+package com.example.wso2demo.repository;
+
+import com.example.wso2demo.model.BucketFence;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BucketFenceRepository extends JpaRepository<BucketFence, Integer> {
+    
+    // Shared lock held until the writer commits; a bucket move's exclusive lock waits for it
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("SELECT f FROM BucketFence f WHERE f.bucket IN :buckets")
+    List<BucketFence> lockShared(@Param("buckets") Collection<Integer> buckets);
+}
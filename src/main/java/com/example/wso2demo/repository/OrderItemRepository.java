@@ -1,9 +1,16 @@
 package com.example.wso2demo.repository;
 
 import com.example.wso2demo.model.OrderItem;
+import com.example.wso2demo.model.GroupStatistics;
+import com.example.wso2demo.model.Popularity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -12,4 +19,19 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     List<OrderItem> findByOrderId(Long orderId);
     
     List<OrderItem> findByProductId(Long productId);
+    
+    List<OrderItem> findByOrderIdIn(Collection<Long> orderIds);
+    
+    List<OrderItem> findByOrderIdIn(Collection<Long> orderIds, Pageable pageable);
+    
+    @Modifying
+    @Query("DELETE FROM OrderItem i WHERE i.orderId IN :orderIds")
+    int deleteByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
+    
+    @Query("SELECT new com.example.wso2demo.model.GroupStatistics(i.productId, COUNT(i), SUM(i.subtotal), MIN(i.subtotal), MAX(i.subtotal)) " +
+           "FROM OrderItem i WHERE i.productId IS NOT NULL AND i.subtotal IS NOT NULL GROUP BY i.productId")
+    List<GroupStatistics<Long>> summarizeSubtotalsByProduct();
+    
+    @Query("SELECT new com.example.wso2demo.model.Popularity(i.productId, SUM(i.quantity)) FROM OrderItem i GROUP BY i.productId")
+    List<Popularity> sumQuantityByProduct();
 }
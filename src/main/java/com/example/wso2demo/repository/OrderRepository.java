@@ -1,10 +1,20 @@
 package com.example.wso2demo.repository;
 
 import com.example.wso2demo.model.Order;
+import com.example.wso2demo.model.OrderSummary;
+import com.example.wso2demo.model.GroupStatistics;
+import com.example.wso2demo.model.Popularity;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,10 +23,20 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     
     Optional<Order> findByOrderNumber(String orderNumber);
     
+    List<Order> findByOrderNumberIn(Collection<String> orderNumbers);
+    
     List<Order> findByUserId(Long userId);
     
+    List<Order> findByUserIdIn(Collection<Long> userIds);
+    
     List<Order> findByStatus(String status);
     
+    List<Order> findByUserId(Long userId, Pageable pageable);
+    
+    List<Order> findByUserIdIn(Collection<Long> userIds, Pageable pageable);
+    
+    List<Order> findByStatus(String status, Pageable pageable);
+    
     List<Order> findByPaymentMethod(String paymentMethod);
     
     @Query("SELECT DISTINCT o.status FROM Order o ORDER BY o.status")
@@ -24,4 +44,48 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     
     @Query("SELECT o FROM Order o WHERE o.userId = :userId AND o.status = :status")
     List<Order> findByUserIdAndStatus(Long userId, String status);
+    
+    @Query("SELECT o FROM Order o WHERE (o.updatedAt > :since OR (o.updatedAt = :since AND o.id > :afterId)) " +
+           "AND o.updatedAt < :until ORDER BY o.updatedAt, o.id")
+    List<Order> findChangesAfter(@Param("since") LocalDateTime since,
+                                 @Param("afterId") Long afterId,
+                                 @Param("until") LocalDateTime until,
+                                 Pageable pageable);
+    
+    List<Order> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+    
+    // Locks the rows it returns, so they still match when the caller archives or deletes them in the same transaction
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o.id FROM Order o WHERE o.status IN :statuses AND o.orderDate < :cutoff")
+    List<Long> lockDeletableIds(@Param("statuses") Collection<String> statuses,
+                                @Param("cutoff") LocalDateTime cutoff,
+                                Pageable pageable);
+    
+    @Query("SELECT o.userId FROM Order o WHERE o.id = :id")
+    Optional<Long> findUserIdById(@Param("id") Long id);
+    
+    @Query("SELECT DISTINCT o.userId FROM Order o WHERE o.id IN :ids")
+    List<Long> findUserIdsByIdIn(@Param("ids") Collection<Long> ids);
+    
+    // One statement, unlike deleteById which loads the order and cascades to its items one by one
+    @Modifying
+    @Query("DELETE FROM Order o WHERE o.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+    
+    @Modifying
+    @Query("DELETE FROM Order o WHERE o.id IN :ids AND o.status IN :statuses AND o.orderDate < :cutoff")
+    int deleteMatching(@Param("ids") Collection<Long> ids,
+                       @Param("statuses") Collection<String> statuses,
+                       @Param("cutoff") LocalDateTime cutoff);
+    
+    @Query("SELECT new com.example.wso2demo.model.OrderSummary(o.id, o.orderNumber, o.userId, o.totalAmount, o.status, o.paymentMethod, o.orderDate) FROM Order o ORDER BY o.id")
+    List<OrderSummary> findAllSummaries();
+    
+    // Rows without a total are left out, as DoubleSummaryStatistics has no null
+    @Query("SELECT new com.example.wso2demo.model.GroupStatistics(o.status, COUNT(o), SUM(o.totalAmount), MIN(o.totalAmount), MAX(o.totalAmount)) " +
+           "FROM Order o WHERE o.status IS NOT NULL AND o.totalAmount IS NOT NULL GROUP BY o.status")
+    List<GroupStatistics<String>> summarizeTotalsByStatus();
+    
+    @Query("SELECT new com.example.wso2demo.model.Popularity(o.userId, COUNT(o)) FROM Order o GROUP BY o.userId")
+    List<Popularity> countOrdersByUser();
 }
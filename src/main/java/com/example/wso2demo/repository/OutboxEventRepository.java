@@ -0,0 +1,32 @@
+package com.example.wso2demo.repository;
+
+import com.example.wso2demo.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    
+    List<OutboxEvent> findBySequenceIsNullOrderByIdAsc(Pageable pageable);
+    
+    List<OutboxEvent> findBySequenceGreaterThanOrderBySequenceAsc(Long sequence, Pageable pageable);
+    
+    List<OutboxEvent> findByAggregateTypeAndSequenceGreaterThanOrderBySequenceAsc(String aggregateType, Long sequence, Pageable pageable);
+    
+    @Query("SELECT MAX(e.sequence) FROM OutboxEvent e")
+    Long findMaxSequence();
+    
+    @Query("SELECT MIN(e.sequence) FROM OutboxEvent e")
+    Long findMinSequence();
+    
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.sequence IS NOT NULL AND e.createdAt < :cutoff")
+    int deletePublishedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,20 @@
+package com.example.wso2demo.repository;
+
+import com.example.wso2demo.model.OutboxRelayState;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface OutboxRelayStateRepository extends JpaRepository<OutboxRelayState, Long> {
+    
+    // Row lock serializes sequencing across application instances
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM OutboxRelayState s WHERE s.id = :id")
+    Optional<OutboxRelayState> findForUpdate(@Param("id") Long id);
+}
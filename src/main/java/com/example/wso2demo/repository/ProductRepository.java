@@ -1,39 +1,83 @@
 package com.example.wso2demo.repository;
 
 import com.example.wso2demo.model.Product;
+import com.example.wso2demo.model.ProductStockLevel;
+import com.example.wso2demo.model.ProductSummary;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
     
+    // Query cache region for the catalog lookups below; Hibernate invalidates it on any write to products
+    String QUERY_CACHE_REGION = "query.products";
+    
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     List<Product> findByCategory(String category);
     
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     List<Product> findByBrand(String brand);
     
+    List<Product> findByCategory(String category, Pageable pageable);
+    
+    List<Product> findByBrand(String brand, Pageable pageable);
+    
     List<Product> findByNameContainingIgnoreCase(String name);
     
     List<Product> findByPriceBetween(Double minPrice, Double maxPrice);
     
     List<Product> findByStockLessThan(Integer threshold);
     
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     Optional<Product> findBySku(String sku);
     
+    List<Product> findBySkuIn(Collection<String> skus);
+    
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     List<Product> findByCategoryAndBrand(String category, String brand);
     
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     @Query("SELECT DISTINCT p.category FROM Product p ORDER BY p.category")
     List<String> findAllCategories();
     
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     @Query("SELECT DISTINCT p.brand FROM Product p ORDER BY p.brand")
     List<String> findAllBrands();
     
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     @Query("SELECT p FROM Product p WHERE p.price >= :minPrice AND p.price <= :maxPrice AND p.category = :category")
     List<Product> findByCategoryAndPriceRange(@Param("category") String category, 
                                                @Param("minPrice") Double minPrice, 
                                                @Param("maxPrice") Double maxPrice);
+    
+    @Query("SELECT p FROM Product p WHERE (p.updatedAt > :since OR (p.updatedAt = :since AND p.id > :afterId)) " +
+           "AND p.updatedAt < :until ORDER BY p.updatedAt, p.id")
+    List<Product> findChangesAfter(@Param("since") LocalDateTime since,
+                                   @Param("afterId") Long afterId,
+                                   @Param("until") LocalDateTime until,
+                                   Pageable pageable);
+    
+    List<Product> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+    
+    @Query("SELECT new com.example.wso2demo.model.ProductStockLevel(p.id, p.sku, p.name, p.category, p.stock, p.updatedAt) " +
+           "FROM Product p WHERE p.id > :afterId ORDER BY p.id")
+    List<ProductStockLevel> findStockLevelsAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    // Constructor expression: rows become plain records, never managed entities
+    @Query("SELECT new com.example.wso2demo.model.ProductSummary(p.id, p.name, p.price, p.category, p.stock, p.sku, p.brand) FROM Product p ORDER BY p.id")
+    List<ProductSummary> findAllSummaries();
+    
+    @Query("SELECT new com.example.wso2demo.model.ProductSummary(p.id, p.name, p.price, p.category, p.stock, p.sku, p.brand) FROM Product p WHERE p.sku IN :skus")
+    List<ProductSummary> findSummariesBySkuIn(@Param("skus") Collection<String> skus);
 }
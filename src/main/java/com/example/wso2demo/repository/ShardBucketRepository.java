@@ -0,0 +1,9 @@
+package com.example.wso2demo.repository;
+
+import com.example.wso2demo.model.ShardBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ShardBucketRepository extends JpaRepository<ShardBucket, Integer> {
+}
@@ -1,35 +1,83 @@
 package com.example.wso2demo.repository;
 
 import com.example.wso2demo.model.User;
+import com.example.wso2demo.model.UserKeys;
+import com.example.wso2demo.model.UserSummary;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     
+    // Query cache region for the lookups below; Hibernate invalidates it on any write to users
+    String QUERY_CACHE_REGION = "query.users";
+    
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     Optional<User> findByUsername(String username);
     
+    List<User> findByUsernameIn(Collection<String> usernames);
+    
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     Optional<User> findByEmail(String email);
     
+    List<User> findByEmailIn(Collection<String> emails);
+    
     boolean existsByUsername(String username);
     
     boolean existsByEmail(String email);
     
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     List<User> findByStatus(String status);
     
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     List<User> findByCountry(String country);
     
+    List<User> findByStatus(String status, Pageable pageable);
+    
+    List<User> findByCountry(String country, Pageable pageable);
+    
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     List<User> findByCity(String city);
     
     List<User> findByFullNameContainingIgnoreCase(String name);
     
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     @Query("SELECT DISTINCT u.country FROM User u WHERE u.country IS NOT NULL ORDER BY u.country")
     List<String> findAllCountries();
     
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     @Query("SELECT DISTINCT u.city FROM User u WHERE u.city IS NOT NULL ORDER BY u.city")
     List<String> findAllCities();
+    
+    @Query("SELECT u FROM User u WHERE (u.updatedAt > :since OR (u.updatedAt = :since AND u.id > :afterId)) " +
+           "AND u.updatedAt < :until ORDER BY u.updatedAt, u.id")
+    List<User> findChangesAfter(@Param("since") LocalDateTime since,
+                                @Param("afterId") Long afterId,
+                                @Param("until") LocalDateTime until,
+                                Pageable pageable);
+    
+    List<User> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+    
+    @Query("SELECT new com.example.wso2demo.model.UserSummary(u.id, u.username, u.fullName, u.city, u.country, u.status) FROM User u ORDER BY u.id")
+    List<UserSummary> findAllSummaries();
+    
+    @Query("SELECT new com.example.wso2demo.model.UserSummary(u.id, u.username, u.fullName, u.city, u.country, u.status) FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<UserSummary> findSummariesAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query("SELECT new com.example.wso2demo.model.UserKeys(u.id, u.username, u.email) FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<UserKeys> findKeysAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query("SELECT new com.example.wso2demo.model.UserKeys(u.id, u.username, u.email) FROM User u WHERE u.username IN :usernames")
+    List<UserKeys> findKeysByUsernameIn(@Param("usernames") Collection<String> usernames);
 }
@@ -0,0 +1,146 @@
+package com.example.wso2demo.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adjusts itself from observed latency, in the style of the gradient
+ * limiters: a slow moving average of latency is the baseline, a fast one the current state,
+ * and their ratio scales the limit down when latency climbs (work is queueing somewhere,
+ * typically on connection checkout) and lets it grow back while latency holds steady.
+ */
+public class AdaptiveConcurrencyLimit {
+    
+    // Latency may drift this far above the baseline before the limit is cut
+    private static final double TOLERANCE = 1.5;
+    
+    private static final double SHORT_SMOOTHING = 0.2;
+    
+    private static final double LONG_SMOOTHING = 0.01;
+    
+    private static final double LIMIT_SMOOTHING = 0.2;
+    
+    private final int minLimit;
+    
+    private final int maxLimit;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    private final Condition released = lock.newCondition();
+    
+    private double limit;
+    
+    private int inFlight;
+    
+    private double shortRttNanos;
+    
+    private double longRttNanos;
+    
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+    
+    /**
+     * Takes a slot, waiting up to the timeout for one to free up.
+     *
+     * @return false if no slot became free in time
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = released.awaitNanos(remaining);
+            }
+            inFlight++;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Gives the slot back and feeds the latency of the work done under it into the limit.
+     */
+    public void release(long rttNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            update(rttNanos);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void update(long rttNanos) {
+        if (longRttNanos == 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+            return;
+        }
+        shortRttNanos += (rttNanos - shortRttNanos) * SHORT_SMOOTHING;
+        longRttNanos += (rttNanos - longRttNanos) * LONG_SMOOTHING;
+        // After a sustained slowdown the baseline has crept up; pull it back so the limit can recover
+        if (longRttNanos / shortRttNanos > 2) {
+            longRttNanos *= 0.95;
+        }
+        
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRttNanos));
+        // Headroom to probe upwards only while latency is within tolerance; added during a slowdown,
+        // sqrt(limit) would cancel the cut for small limits (0.5 * 4 + sqrt(4) = 4) and they could never fall
+        double queueSize = gradient < 1.0 ? 0 : Math.sqrt(limit);
+        double newLimit = limit * gradient + queueSize;
+        // Only grow when the limit is actually in use, an idle bulkhead has no evidence that more is fine
+        if (newLimit > limit && inFlight + 1 < limit / 2) {
+            return;
+        }
+        limit = limit * (1 - LIMIT_SMOOTHING) + newLimit * LIMIT_SMOOTHING;
+        limit = Math.min(maxLimit, Math.max(minLimit, limit));
+    }
+    
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public double getShortRttMillis() {
+        lock.lock();
+        try {
+            return shortRttNanos / 1_000_000;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public double getLongRttMillis() {
+        lock.lock();
+        try {
+            return longRttNanos / 1_000_000;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.wso2demo.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resizes the Hikari pools between bounds from what checkouts experience: when connections
+ * are waited for (threads queued, or the mean acquire time over the last interval above the
+ * threshold) the pool grows by a step; after several quiet intervals with idle connections it
+ * gives one back. Pools created outside the context (replicas, extra shards) keep their size.
+ */
+@Service
+public class AdaptivePoolSizer {
+    
+    private static final Logger log = LoggerFactory.getLogger(AdaptivePoolSizer.class);
+    
+    @Value("${app.datasource.adaptive-pool.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.datasource.adaptive-pool.min-size:5}")
+    private int minSize;
+    
+    @Value("${app.datasource.adaptive-pool.max-size:30}")
+    private int maxSize;
+    
+    @Value("${app.datasource.adaptive-pool.grow-step:2}")
+    private int growStep;
+    
+    @Value("${app.datasource.adaptive-pool.acquire-wait-threshold-ms:5}")
+    private double acquireWaitThresholdMs;
+    
+    @Value("${app.datasource.adaptive-pool.shrink-after-intervals:6}")
+    private int shrinkAfterIntervals;
+    
+    @Autowired
+    private ObjectProvider<HikariDataSource> pools;
+    
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+    
+    private final Map<String, PoolState> states = new HashMap<>();
+    
+    private static final class PoolState {
+        private long acquireCount;
+        private double acquireTotalNanos;
+        private int quietIntervals;
+    }
+    
+    @Scheduled(fixedDelayString = "${app.datasource.adaptive-pool.interval-ms:5000}")
+    public synchronized void resize() {
+        if (!enabled) {
+            return;
+        }
+        pools.orderedStream().forEach(this::resize);
+    }
+    
+    private void resize(HikariDataSource pool) {
+        HikariPoolMXBean stats = pool.getHikariPoolMXBean();
+        if (stats == null) {
+            return;
+        }
+        String name = pool.getPoolName();
+        PoolState state = states.computeIfAbsent(name, key -> new PoolState());
+        double meanWaitMs = meanAcquireWaitMs(name, state);
+        int waiting = stats.getThreadsAwaitingConnection();
+        int size = pool.getHikariConfigMXBean().getMaximumPoolSize();
+        
+        int target = size;
+        String reason = null;
+        if (waiting > 0 || meanWaitMs > acquireWaitThresholdMs) {
+            state.quietIntervals = 0;
+            target = Math.min(maxSize, size + Math.max(growStep, waiting));
+            reason = String.format("%d threads waiting, mean acquire %.1f ms", waiting, meanWaitMs);
+        } else if (size > minSize && stats.getIdleConnections() > 0 && ++state.quietIntervals >= shrinkAfterIntervals) {
+            state.quietIntervals = 0;
+            target = Math.max(minSize, size - 1);
+            reason = stats.getIdleConnections() + " idle connections";
+        }
+        if (target == size) {
+            return;
+        }
+        
+        if (pool.getHikariConfigMXBean().getMinimumIdle() > target) {
+            pool.getHikariConfigMXBean().setMinimumIdle(target);
+        }
+        pool.getHikariConfigMXBean().setMaximumPoolSize(target);
+        String direction = target > size ? "grow" : "shrink";
+        meterRegistry.ifAvailable(registry -> registry.counter("db.pool.resizes", "pool", name, "direction", direction).increment());
+        log.info("Pool {} resized from {} to {} ({})", name, size, target, reason);
+    }
+    
+    // Mean checkout time since the previous run, from Hikari's own acquire timer
+    private double meanAcquireWaitMs(String poolName, PoolState state) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        Timer timer = registry == null ? null : registry.find("hikaricp.connections.acquire").tag("pool", poolName).timer();
+        if (timer == null) {
+            return 0;
+        }
+        long count = timer.count();
+        double totalNanos = timer.totalTime(TimeUnit.NANOSECONDS);
+        long acquires = count - state.acquireCount;
+        double waitedNanos = totalNanos - state.acquireTotalNanos;
+        state.acquireCount = count;
+        state.acquireTotalNanos = totalNanos;
+        return acquires <= 0 ? 0 : waitedNanos / acquires / 1_000_000;
+    }
+}
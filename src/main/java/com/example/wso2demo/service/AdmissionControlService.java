@@ -0,0 +1,76 @@
+package com.example.wso2demo.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrency-based admission control. The global limit is kept at or below the Hikari pool size
+ * so excess load is shed with 503 before the pool saturates instead of queueing on checkout, and the
+ * per-client limit stops a single tenant from holding every permit.
+ */
+@Service
+public class AdmissionControlService {
+    
+    public enum Admission {
+        ADMITTED,
+        CLIENT_LIMITED,
+        OVERLOADED
+    }
+    
+    @Value("${app.admission.max-concurrent-requests:10}")
+    private int maxConcurrentRequests;
+    
+    @Value("${app.admission.max-concurrent-per-client:5}")
+    private int maxConcurrentPerClient;
+    
+    @Value("${app.admission.queue-timeout-ms:50}")
+    private long queueTimeoutMs;
+    
+    private Semaphore permits;
+    
+    private final ConcurrentHashMap<String, Integer> clientInFlight = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrentRequests);
+    }
+    
+    public Admission tryEnter(String clientId) {
+        int current = clientInFlight.merge(clientId, 1, Integer::sum);
+        if (current > maxConcurrentPerClient) {
+            releaseClient(clientId);
+            return Admission.CLIENT_LIMITED;
+        }
+        
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            releaseClient(clientId);
+            return Admission.OVERLOADED;
+        }
+        return Admission.ADMITTED;
+    }
+    
+    public void exit(String clientId) {
+        permits.release();
+        releaseClient(clientId);
+    }
+    
+    public int getInFlight() {
+        return maxConcurrentRequests - permits.availablePermits();
+    }
+    
+    private void releaseClient(String clientId) {
+        clientInFlight.merge(clientId, -1, (a, b) -> a + b == 0 ? null : a + b);
+    }
+}
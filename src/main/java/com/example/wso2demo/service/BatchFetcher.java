@@ -0,0 +1,79 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.MultiGetResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Runs key-based lookups as IN queries of bounded size, so large key sets neither exceed
+ * driver/database parameter limits nor produce a single huge statement.
+ */
+@Component
+public class BatchFetcher {
+    
+    @Value("${app.batch-fetch.max-keys-per-query:1000}")
+    private int maxKeysPerQuery;
+    
+    @Value("${app.batch-fetch.max-keys-per-request:5000}")
+    private int maxKeysPerRequest;
+    
+    public <K, T> List<T> fetch(Collection<K> keys, Function<List<K>, List<T>> query) {
+        List<K> distinct = keys.stream().distinct().toList();
+        List<T> result = new ArrayList<>(distinct.size());
+        for (int from = 0; from < distinct.size(); from += maxKeysPerQuery) {
+            result.addAll(query.apply(distinct.subList(from, Math.min(distinct.size(), from + maxKeysPerQuery))));
+        }
+        return result;
+    }
+    
+    public void checkRequestSize(int keyCount) {
+        if (keyCount > maxKeysPerRequest) {
+            throw new IllegalArgumentException("At most " + maxKeysPerRequest + " keys can be requested at once, got " + keyCount);
+        }
+    }
+    
+    /**
+     * Looks up every key and returns the matches in request order along with the keys that
+     * were not found. String keys fall back to a case-insensitive match, as MySQL compares them.
+     */
+    public <K, T> MultiGetResult<K, T> multiGet(List<K> keys, Function<List<K>, List<T>> query, Function<T, K> keyFn) {
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("At least one key is required");
+        }
+        checkRequestSize(keys.size());
+        
+        Map<K, T> byKey = new HashMap<>();
+        Map<String, T> byLowerCaseKey = new HashMap<>();
+        for (T entity : fetch(keys, query)) {
+            K key = keyFn.apply(entity);
+            byKey.put(key, entity);
+            if (key instanceof String text) {
+                byLowerCaseKey.put(text.toLowerCase(Locale.ROOT), entity);
+            }
+        }
+        
+        List<T> items = new ArrayList<>();
+        List<K> missing = new ArrayList<>();
+        for (K key : new LinkedHashSet<>(keys)) {
+            T entity = byKey.get(key);
+            if (entity == null && key instanceof String text) {
+                entity = byLowerCaseKey.get(text.toLowerCase(Locale.ROOT));
+            }
+            if (entity != null) {
+                items.add(entity);
+            } else {
+                missing.add(key);
+            }
+        }
+        return new MultiGetResult<>(items, missing);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.wso2demo.service;
+
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index from attribute value to a compressed bitmap of entity ids, meant for
+ * low-cardinality attributes. Values match ignoring case, like the stream filters in the services.
+ */
+public class BitmapIndex {
+    
+    private final List<String> attributes;
+    
+    private final Map<String, Map<String, Roaring64Bitmap>> postings = new HashMap<>();
+    
+    private final Roaring64Bitmap allIds = new Roaring64Bitmap();
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    public BitmapIndex(List<String> attributes) {
+        this.attributes = List.copyOf(attributes);
+        this.attributes.forEach(attribute -> postings.put(attribute, new HashMap<>()));
+    }
+    
+    public void put(long id, Map<String, String> values) {
+        lock.writeLock().lock();
+        try {
+            removeFromPostings(id);
+            allIds.addLong(id);
+            values.forEach((attribute, value) -> {
+                if (value != null) {
+                    postingsFor(attribute).computeIfAbsent(normalize(value), v -> new Roaring64Bitmap()).addLong(id);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeFromPostings(id);
+            allIds.removeLong(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Ids matching every attribute in the filter, where each attribute matches any of its listed
+     * values. Attributes with a null or empty value list do not filter.
+     */
+    public Roaring64Bitmap query(Map<String, ? extends Collection<String>> filters) {
+        lock.readLock().lock();
+        try {
+            Roaring64Bitmap result = null;
+            for (Map.Entry<String, ? extends Collection<String>> filter : filters.entrySet()) {
+                if (filter.getValue() == null || filter.getValue().isEmpty()) {
+                    continue;
+                }
+                Map<String, Roaring64Bitmap> attributePostings = postingsFor(filter.getKey());
+                Roaring64Bitmap union = new Roaring64Bitmap();
+                for (String value : filter.getValue()) {
+                    Roaring64Bitmap ids = attributePostings.get(normalize(value));
+                    if (ids != null) {
+                        union.or(ids);
+                    }
+                }
+                if (result == null) {
+                    result = union;
+                } else {
+                    result.and(union);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result != null ? result : allIds.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return allIds.getLongCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private Map<String, Roaring64Bitmap> postingsFor(String attribute) {
+        Map<String, Roaring64Bitmap> attributePostings = postings.get(attribute);
+        if (attributePostings == null) {
+            throw new IllegalArgumentException("Attribute is not indexed: " + attribute + ", expected one of " + attributes);
+        }
+        return attributePostings;
+    }
+    
+    // Attributes are low-cardinality, so checking every value bitmap is cheaper than keeping a reverse map per id
+    private void removeFromPostings(long id) {
+        if (!allIds.contains(id)) {
+            return;
+        }
+        for (Map<String, Roaring64Bitmap> attributePostings : postings.values()) {
+            attributePostings.values().removeIf(ids -> {
+                ids.removeLong(id);
+                return ids.isEmpty();
+            });
+        }
+    }
+    
+    private static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.EntityChangedEvent;
+import com.example.wso2demo.model.Order;
+import com.example.wso2demo.model.Product;
+import com.example.wso2demo.model.User;
+import com.example.wso2demo.repository.OrderRepository;
+import com.example.wso2demo.repository.ProductRepository;
+import com.example.wso2demo.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Roaring bitmap indexes over the low-cardinality attributes of products, users and orders.
+ * Filter combinations are answered with bitmap AND/OR, and the matching ids are loaded with
+ * batched findAllById instead of scanning the whole table.
+ * <p>
+ * Indexes are loaded at startup, kept current from committed local writes and reloaded on an
+ * interval to pick up writes made by other instances.
+ */
+@Service
+public class BitmapIndexService {
+    
+    private static final Logger log = LoggerFactory.getLogger(BitmapIndexService.class);
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private OrderRepository orderRepository;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${app.bitmap-index.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.bitmap-index.load-page-size:5000}")
+    private int loadPageSize;
+    
+    @Value("${app.bitmap-index.fetch-batch-size:1000}")
+    private int fetchBatchSize;
+    
+    private final Map<String, IndexedType<?>> types = new LinkedHashMap<>();
+    
+    private final Map<String, BitmapIndex> indexes = new ConcurrentHashMap<>();
+    
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    
+    // Guarded by this; non-null while a reload runs, so writes committed meanwhile are re-applied to the new indexes
+    private Map<String, List<Consumer<BitmapIndex>>> changesDuringReload;
+    
+    private volatile boolean ready;
+    
+    @PostConstruct
+    public void init() {
+        types.put("Product", new IndexedType<Product>(List.of("category", "brand"), Product::getId,
+                product -> attributes("category", product.getCategory(), "brand", product.getBrand()),
+                productRepository::findByIdGreaterThanOrderByIdAsc));
+        types.put("User", new IndexedType<User>(List.of("country", "city", "status"), User::getId,
+                user -> attributes("country", user.getCountry(), "city", user.getCity(), "status", user.getStatus()),
+                userRepository::findByIdGreaterThanOrderByIdAsc));
+        types.put("Order", new IndexedType<Order>(List.of("status", "paymentMethod"), Order::getId,
+                order -> attributes("status", order.getStatus(), "paymentMethod", order.getPaymentMethod()),
+                orderRepository::findByIdGreaterThanOrderByIdAsc));
+        
+        types.keySet().forEach(type -> Gauge.builder("bitmap.index.ids", () -> {
+                    BitmapIndex index = indexes.get(type);
+                    return index != null ? index.size() : 0;
+                })
+                .tag("type", type)
+                .description("Entity ids held in the attribute bitmap index")
+                .register(meterRegistry));
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (enabled) {
+            reload();
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${app.bitmap-index.reload-interval-ms:300000}",
+               initialDelayString = "${app.bitmap-index.reload-interval-ms:300000}")
+    public void scheduledReload() {
+        if (enabled) {
+            reload();
+        }
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    public void reload() {
+        if (!reloadLock.tryLock()) {
+            return;
+        }
+        try {
+            doReload();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+    
+    private void doReload() {
+        synchronized (this) {
+            changesDuringReload = new HashMap<>();
+            types.keySet().forEach(type -> changesDuringReload.put(type, new ArrayList<>()));
+        }
+        
+        Map<String, BitmapIndex> fresh = new HashMap<>();
+        try {
+            types.forEach((type, indexedType) -> fresh.put(type, indexedType.load(loadPageSize)));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                changesDuringReload = null;
+            }
+            log.error("Bitmap index reload failed, keeping previous indexes: {}", e.getMessage());
+            return;
+        }
+        
+        synchronized (this) {
+            fresh.forEach((type, index) -> {
+                changesDuringReload.get(type).forEach(change -> change.accept(index));
+                indexes.put(type, index);
+            });
+            changesDuringReload = null;
+            ready = true;
+        }
+        fresh.forEach((type, index) -> log.info("Bitmap index for {} loaded with {} ids", type, index.size()));
+    }
+    
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onEntityChanged(EntityChangedEvent event) {
+        IndexedType<?> indexedType = types.get(event.getAggregateType());
+        if (!enabled || indexedType == null) {
+            return;
+        }
+        long id = event.getAggregateId();
+        Consumer<BitmapIndex> change;
+        // Archived orders leave the hot table, so they leave its index too
+        if (OutboxService.DELETED.equals(event.getEventType()) || OutboxService.ARCHIVED.equals(event.getEventType())) {
+            change = index -> index.remove(id);
+        } else {
+            Map<String, String> values = indexedType.extract(event.getState());
+            change = index -> index.put(id, values);
+        }
+        
+        synchronized (this) {
+            BitmapIndex current = indexes.get(event.getAggregateType());
+            if (current != null) {
+                change.accept(current);
+            }
+            if (changesDuringReload != null) {
+                changesDuringReload.get(event.getAggregateType()).add(change);
+            }
+        }
+    }
+    
+    /**
+     * Ids of the given entity type that match every attribute filter, sorted ascending. Each
+     * attribute matches any of its listed values; null or empty value lists do not filter.
+     */
+    public long[] findIds(String aggregateType, Map<String, ? extends Collection<String>> filters) {
+        return indexFor(aggregateType).query(filters).toArray();
+    }
+    
+    public long count(String aggregateType, Map<String, ? extends Collection<String>> filters) {
+        return indexFor(aggregateType).query(filters).getLongCardinality();
+    }
+    
+    /**
+     * Loads the entities for the given ids with findAllById in batches, returned in id order.
+     */
+    public <T> List<T> loadAll(long[] ids, Function<List<Long>, List<T>> loader, Function<T, Long> idFn) {
+        List<T> result = new ArrayList<>(ids.length);
+        for (int from = 0; from < ids.length; from += fetchBatchSize) {
+            long[] batch = Arrays.copyOfRange(ids, from, Math.min(ids.length, from + fetchBatchSize));
+            result.addAll(loader.apply(Arrays.stream(batch).boxed().toList()));
+        }
+        result.sort(Comparator.comparing(idFn));
+        return result;
+    }
+    
+    private BitmapIndex indexFor(String aggregateType) {
+        BitmapIndex index = indexes.get(aggregateType);
+        if (index == null) {
+            throw new IllegalStateException("No bitmap index loaded for " + aggregateType);
+        }
+        return index;
+    }
+    
+    private static Map<String, String> attributes(String... namesAndValues) {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            values.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return values;
+    }
+    
+    private record IndexedType<T>(List<String> attributes,
+                                  Function<T, Long> idFn,
+                                  Function<T, Map<String, String>> extractor,
+                                  BiFunction<Long, Pageable, List<T>> pager) {
+        
+        @SuppressWarnings("unchecked")
+        Map<String, String> extract(Object entity) {
+            return extractor.apply((T) entity);
+        }
+        
+        BitmapIndex load(int pageSize) {
+            BitmapIndex index = new BitmapIndex(attributes);
+            long afterId = 0;
+            List<T> page;
+            do {
+                page = pager.apply(afterId, PageRequest.of(0, pageSize));
+                for (T entity : page) {
+                    index.put(idFn.apply(entity), extractor.apply(entity));
+                }
+                if (!page.isEmpty()) {
+                    afterId = idFn.apply(page.get(page.size() - 1));
+                }
+            } while (page.size() == pageSize);
+            return index;
+        }
+    }
+}
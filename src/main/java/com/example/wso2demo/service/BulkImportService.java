@@ -0,0 +1,487 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.ImportRowError;
+import com.example.wso2demo.model.ImportSummary;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Streams CSV or NDJSON uploads into upserts without holding the file: the request thread
+ * parses records into batches, a shared pool converts and validates batches in parallel with
+ * the entity's Jakarta constraints, and a writer thread upserts the valid rows of each batch in
+ * file order while streaming an NDJSON report of rejected rows back to the client.
+ * <p>
+ * At most max-in-flight-batches batches are parsed ahead of the writer, so memory stays bounded
+ * by batch size rather than upload size. Each batch commits on its own; a batch the database
+ * refuses is retried row by row so one bad row does not reject its neighbours.
+ */
+@Service
+public class BulkImportService {
+    
+    private static final Logger log = LoggerFactory.getLogger(BulkImportService.class);
+    
+    public static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    
+    /**
+     * Rows written by one upsert call.
+     */
+    public record UpsertResult(int inserted, int updated) {
+    }
+    
+    /**
+     * What an import needs to know about its entity: the columns a CSV header may name, the natural
+     * key rows are matched on, and the upsert of a batch with distinct keys (its own transaction).
+     */
+    public record ImportSpec<T>(Class<T> type, List<String> columns, String keyName, Function<T, String> key,
+                                Function<List<T>, UpsertResult> upsert) {
+    }
+    
+    private enum Format {
+        CSV,
+        NDJSON
+    }
+    
+    // A parsed record before conversion: CSV fields by column, or an NDJSON line
+    private record RawRow(long line, Map<String, String> fields, String json, String error) {
+    }
+    
+    private record Row<T>(long line, String key, T value, List<String> errors) {
+    }
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private Validator validator;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${app.import.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${app.import.validation-threads:0}")
+    private int validationThreads;
+    
+    @Value("${app.import.max-in-flight-batches:8}")
+    private int maxInFlightBatches;
+    
+    @Value("${app.import.max-concurrent:2}")
+    private int maxConcurrent;
+    
+    @Value("${app.import.max-record-chars:1048576}")
+    private int maxRecordChars;
+    
+    @Value("${app.import.max-reported-errors:10000}")
+    private int maxReportedErrors;
+    
+    private ExecutorService validationPool;
+    
+    private ExecutorService writerPool;
+    
+    private Semaphore running;
+    
+    @PostConstruct
+    public void init() {
+        int threads = validationThreads > 0 ? validationThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        validationPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "import-validate-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        writerPool = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "import-write-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = new Semaphore(maxConcurrent);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        validationPool.shutdownNow();
+        writerPool.shutdownNow();
+    }
+    
+    /**
+     * Checks the upload's format and, for CSV, its header, and takes an import slot. Nothing has
+     * been written when this throws, so the caller can still answer with an error status.
+     *
+     * @throws IllegalArgumentException for an unsupported content type or a bad CSV header
+     * @throws IllegalStateException when max-concurrent imports are already running
+     */
+    public <T> ImportJob<T> prepare(InputStream body, String contentType, ImportSpec<T> spec) throws IOException {
+        Format format = formatOf(contentType);
+        if (!running.tryAcquire()) {
+            throw new IllegalStateException("Too many imports running, retry later");
+        }
+        try {
+            Reader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), 64 * 1024);
+            CsvReader csv = null;
+            List<String> header = null;
+            if (format == Format.CSV) {
+                csv = new CsvReader(reader, maxRecordChars);
+                header = header(csv.next(), spec);
+            }
+            return new ImportJob<>(spec, reader, csv, header);
+        } catch (IOException | RuntimeException e) {
+            running.release();
+            throw e;
+        }
+    }
+    
+    private static Format formatOf(String contentType) {
+        MediaType mediaType;
+        try {
+            mediaType = contentType != null ? MediaType.parseMediaType(contentType) : null;
+        } catch (IllegalArgumentException e) {
+            mediaType = null;
+        }
+        if (mediaType != null && mediaType.isCompatibleWith(MediaType.parseMediaType("text/csv"))) {
+            return Format.CSV;
+        }
+        if (mediaType != null && mediaType.isCompatibleWith(NDJSON)) {
+            return Format.NDJSON;
+        }
+        throw new IllegalArgumentException("Content-Type must be text/csv or application/x-ndjson");
+    }
+    
+    // Column names are matched ignoring case; the natural key column is mandatory
+    private static List<String> header(List<String> names, ImportSpec<?> spec) {
+        if (names == null) {
+            throw new IllegalArgumentException("The upload is empty, a CSV header row is required");
+        }
+        Map<String, String> known = new HashMap<>();
+        spec.columns().forEach(column -> known.put(column.toLowerCase(Locale.ROOT), column));
+        List<String> header = new ArrayList<>();
+        for (String name : names) {
+            // Spreadsheet exports start the file with a byte order mark
+            String column = known.get(name.replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT));
+            if (column == null) {
+                throw new IllegalArgumentException("Unknown column '" + name + "', expected some of " + spec.columns());
+            }
+            if (header.contains(column)) {
+                throw new IllegalArgumentException("Column '" + column + "' appears twice");
+            }
+            header.add(column);
+        }
+        if (!header.contains(spec.keyName())) {
+            throw new IllegalArgumentException("Column '" + spec.keyName() + "' is required to match existing rows");
+        }
+        return header;
+    }
+    
+    /**
+     * A prepared import; run it exactly once.
+     */
+    public final class ImportJob<T> {
+        
+        private final ImportSpec<T> spec;
+        private final Reader reader;
+        private final CsvReader csv;
+        private final List<String> header;
+        private final String entity;
+        private final BlockingQueue<Future<List<Row<T>>>> inFlight;
+        
+        private long lineNumber;
+        private long rows;
+        private long inserted;
+        private long updated;
+        private long rejected;
+        private long duplicates;
+        private long reported;
+        
+        private ImportJob(ImportSpec<T> spec, Reader reader, CsvReader csv, List<String> header) {
+            this.spec = spec;
+            this.reader = reader;
+            this.csv = csv;
+            this.header = header;
+            this.entity = spec.type().getSimpleName().toLowerCase(Locale.ROOT);
+            this.inFlight = new ArrayBlockingQueue<>(maxInFlightBatches);
+        }
+        
+        /**
+         * Reads the upload to the end, writing the report (rejected rows, then the summary) as it goes.
+         */
+        public ImportSummary run(OutputStream report) {
+            long start = System.nanoTime();
+            String aborted = null;
+            try {
+                Future<?> writer = writerPool.submit(() -> {
+                    write(report);
+                    return null;
+                });
+                try {
+                    parse(writer);
+                } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+                    // Tomcat reports a client gone mid-upload as IllegalStateException once the response is committed
+                    aborted = "Upload could not be read: " + e.getMessage();
+                } finally {
+                    enqueue(CompletableFuture.completedFuture(null), writer);
+                }
+                writer.get();
+            } catch (ExecutionException e) {
+                aborted = "Import failed: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                aborted = "Import interrupted";
+            } finally {
+                running.release();
+            }
+            
+            ImportSummary summary = new ImportSummary(rows, inserted, updated, rejected, duplicates,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), aborted);
+            try {
+                writeLine(report, Map.of("summary", summary));
+                report.flush();
+            } catch (IOException e) {
+                log.warn("Could not send the {} import summary: {}", entity, e.getMessage());
+            }
+            log.info("Imported {}s: {}", entity, summary);
+            return summary;
+        }
+        
+        // Request thread: records -> batches -> validation pool, blocking while the writer is max-in-flight batches behind
+        private void parse(Future<?> writer) throws IOException, InterruptedException {
+            List<RawRow> batch = new ArrayList<>(batchSize);
+            RawRow raw;
+            while ((raw = nextRecord()) != null) {
+                batch.add(raw);
+                if (batch.size() == batchSize) {
+                    List<RawRow> full = batch;
+                    if (!enqueue(validationPool.submit(() -> validate(full)), writer)) {
+                        return;
+                    }
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                List<RawRow> last = batch;
+                enqueue(validationPool.submit(() -> validate(last)), writer);
+            }
+        }
+        
+        // False when the writer has failed (typically the client went away), so the upload is not read any further
+        private boolean enqueue(Future<List<Row<T>>> batch, Future<?> writer) throws InterruptedException {
+            while (!inFlight.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (writer.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private RawRow nextRecord() throws IOException {
+            if (csv != null) {
+                List<String> fields = csv.next();
+                if (fields == null) {
+                    return null;
+                }
+                long line = csv.getRecordLine();
+                if (fields.size() != header.size()) {
+                    return new RawRow(line, null, null, "Expected " + header.size() + " fields, found " + fields.size());
+                }
+                Map<String, String> byColumn = new HashMap<>();
+                for (int i = 0; i < fields.size(); i++) {
+                    // Empty cells are missing values, so @NotBlank/@NotNull report them and numbers do not fail to parse
+                    byColumn.put(header.get(i), fields.get(i).isEmpty() ? null : fields.get(i));
+                }
+                return new RawRow(line, byColumn, null, null);
+            }
+            String json;
+            while ((json = readLine()) != null) {
+                if (!json.isBlank()) {
+                    return new RawRow(lineNumber, null, json, null);
+                }
+            }
+            return null;
+        }
+        
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            lineNumber++;
+            while (c != -1 && c != '\n') {
+                if (line.length() == maxRecordChars) {
+                    throw new IllegalArgumentException("Line " + lineNumber + " exceeds " + maxRecordChars + " characters");
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+                c = reader.read();
+            }
+            return line.toString();
+        }
+        
+        // Validation pool: conversion to the entity and constraint checks, no shared state
+        private List<Row<T>> validate(List<RawRow> batch) {
+            List<Row<T>> result = new ArrayList<>(batch.size());
+            for (RawRow raw : batch) {
+                if (raw.error() != null) {
+                    result.add(new Row<>(raw.line(), null, null, List.of(raw.error())));
+                    continue;
+                }
+                T value;
+                try {
+                    value = raw.json() != null
+                            ? objectMapper.readValue(raw.json(), spec.type())
+                            : objectMapper.convertValue(raw.fields(), spec.type());
+                } catch (JsonProcessingException | IllegalArgumentException e) {
+                    String key = raw.fields() != null ? raw.fields().get(spec.keyName()) : null;
+                    result.add(new Row<>(raw.line(), key, null, List.of(describe(e))));
+                    continue;
+                }
+                String key = value != null ? spec.key().apply(value) : null;
+                List<String> errors = new ArrayList<>();
+                if (value == null) {
+                    errors.add("Each line must be a JSON object");
+                } else {
+                    for (ConstraintViolation<T> violation : validator.validate(value)) {
+                        errors.add(violation.getPropertyPath() + ": " + violation.getMessage());
+                    }
+                    if (key == null || key.isBlank()) {
+                        errors.add(spec.keyName() + ": is required to match existing rows");
+                    }
+                }
+                errors.sort(null);
+                result.add(new Row<>(raw.line(), key, value, errors));
+            }
+            return result;
+        }
+        
+        // Writer thread: batches in file order, so a key repeated across batches ends with its last row
+        private void write(OutputStream report) throws IOException, InterruptedException, ExecutionException {
+            while (true) {
+                List<Row<T>> batch = inFlight.take().get();
+                if (batch == null) {
+                    return;
+                }
+                rows += batch.size();
+                List<ImportRowError> errors = new ArrayList<>();
+                Map<String, Row<T>> byKey = new LinkedHashMap<>();
+                for (Row<T> row : batch) {
+                    if (!row.errors().isEmpty()) {
+                        errors.add(new ImportRowError(row.line(), row.key(), row.errors()));
+                    } else if (byKey.put(row.key().trim().toLowerCase(Locale.ROOT), row) != null) {
+                        duplicates++;
+                    }
+                }
+                if (!byKey.isEmpty()) {
+                    upsert(new ArrayList<>(byKey.values()), errors);
+                }
+                // Rows the database refused are found after the invalid ones; the report stays in file order
+                errors.sort(Comparator.comparingLong(ImportRowError::line));
+                for (ImportRowError error : errors) {
+                    reject(report, error);
+                }
+                report.flush();
+            }
+        }
+        
+        private void upsert(List<Row<T>> valid, List<ImportRowError> errors) {
+            try {
+                count(spec.upsert().apply(valid.stream().map(Row::value).toList()));
+                return;
+            } catch (RuntimeException e) {
+                log.debug("{} import batch failed, retrying row by row: {}", entity, e.getMessage());
+            }
+            for (Row<T> row : valid) {
+                try {
+                    count(spec.upsert().apply(List.of(row.value())));
+                } catch (RuntimeException e) {
+                    errors.add(new ImportRowError(row.line(), row.key(), List.of(firstLine(NestedExceptionUtils.getMostSpecificCause(e).getMessage()))));
+                }
+            }
+        }
+        
+        private void count(UpsertResult result) {
+            inserted += result.inserted();
+            updated += result.updated();
+            meterRegistry.counter("import.rows", "entity", entity, "result", "inserted").increment(result.inserted());
+            meterRegistry.counter("import.rows", "entity", entity, "result", "updated").increment(result.updated());
+        }
+        
+        private void reject(OutputStream report, ImportRowError error) throws IOException {
+            rejected++;
+            meterRegistry.counter("import.rows", "entity", entity, "result", "rejected").increment();
+            if (reported++ < maxReportedErrors) {
+                writeLine(report, error);
+            }
+        }
+    }
+    
+    private void writeLine(OutputStream out, Object value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
+    }
+    
+    // Driver messages go on with the failed SQL statement and its parameters
+    private static String firstLine(String message) {
+        if (message == null) {
+            return "Rejected by the database";
+        }
+        int end = message.indexOf('\n');
+        String line = end >= 0 ? message.substring(0, end) : message;
+        return line.endsWith("; SQL statement:") ? line.substring(0, line.length() - "; SQL statement:".length()) : line;
+    }
+    
+    // "price: cannot read 'abc' as Double" rather than Jackson's full message with its reference chain
+    private static String describe(Exception e) {
+        Throwable cause = e instanceof IllegalArgumentException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof InvalidFormatException invalid && !invalid.getPath().isEmpty()) {
+            return invalid.getPath().get(0).getFieldName() + ": cannot read '" + invalid.getValue() + "' as "
+                    + invalid.getTargetType().getSimpleName();
+        }
+        if (cause instanceof JsonMappingException mapping && !mapping.getPath().isEmpty()) {
+            return mapping.getPath().get(0).getFieldName() + ": " + mapping.getOriginalMessage();
+        }
+        if (cause instanceof JsonProcessingException processing) {
+            return "Malformed JSON: " + processing.getOriginalMessage();
+        }
+        return cause.getMessage();
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.wso2demo.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Separate concurrency limits for interactive reads, writes and bulk reads (exports, statistics,
+ * delta sync, multi-gets, dynamic queries), so a burst of slow bulk work runs out of its own
+ * slots instead of taking every pool connection from the other two. Each limit adapts between
+ * its bounds to the latency seen in its class.
+ */
+@Service
+public class BulkheadService {
+    
+    public enum EndpointClass {
+        INTERACTIVE,
+        WRITE,
+        BULK
+    }
+    
+    @Value("${app.bulkhead.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${app.bulkhead.bulk-paths:}")
+    private List<String> bulkPaths;
+    
+    @Value("${app.bulkhead.queue-timeout-ms:50}")
+    private long queueTimeoutMs;
+    
+    @Value("${app.bulkhead.interactive.initial-limit:8}")
+    private int interactiveInitial;
+    
+    @Value("${app.bulkhead.interactive.min-limit:4}")
+    private int interactiveMin;
+    
+    @Value("${app.bulkhead.interactive.max-limit:12}")
+    private int interactiveMax;
+    
+    @Value("${app.bulkhead.write.initial-limit:4}")
+    private int writeInitial;
+    
+    @Value("${app.bulkhead.write.min-limit:2}")
+    private int writeMin;
+    
+    @Value("${app.bulkhead.write.max-limit:8}")
+    private int writeMax;
+    
+    @Value("${app.bulkhead.bulk.initial-limit:2}")
+    private int bulkInitial;
+    
+    @Value("${app.bulkhead.bulk.min-limit:1}")
+    private int bulkMin;
+    
+    @Value("${app.bulkhead.bulk.max-limit:3}")
+    private int bulkMax;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    
+    private final Map<EndpointClass, AdaptiveConcurrencyLimit> limits = new EnumMap<>(EndpointClass.class);
+    
+    @PostConstruct
+    public void init() {
+        limits.put(EndpointClass.INTERACTIVE, new AdaptiveConcurrencyLimit(interactiveInitial, interactiveMin, interactiveMax));
+        limits.put(EndpointClass.WRITE, new AdaptiveConcurrencyLimit(writeInitial, writeMin, writeMax));
+        limits.put(EndpointClass.BULK, new AdaptiveConcurrencyLimit(bulkInitial, bulkMin, bulkMax));
+        if (!enabled) {
+            return;
+        }
+        limits.forEach((endpointClass, limit) -> {
+            String tag = endpointClass.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("db.bulkhead.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                    .description("Current concurrency limit of the bulkhead")
+                    .tag("class", tag)
+                    .register(meterRegistry);
+            Gauge.builder("db.bulkhead.in_flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                    .description("Requests currently holding a slot of the bulkhead")
+                    .tag("class", tag)
+                    .register(meterRegistry);
+            Gauge.builder("db.bulkhead.latency.short", limit, AdaptiveConcurrencyLimit::getShortRttMillis)
+                    .description("Fast moving average of request latency in milliseconds")
+                    .tag("class", tag)
+                    .register(meterRegistry);
+            Gauge.builder("db.bulkhead.latency.long", limit, AdaptiveConcurrencyLimit::getLongRttMillis)
+                    .description("Slow moving average (baseline) of request latency in milliseconds")
+                    .tag("class", tag)
+                    .register(meterRegistry);
+        });
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public EndpointClass classify(String path, boolean write) {
+        if (bulkPaths.stream().anyMatch(pattern -> !pattern.isBlank() && pathMatcher.match(pattern.trim(), path))) {
+            return EndpointClass.BULK;
+        }
+        return write ? EndpointClass.WRITE : EndpointClass.INTERACTIVE;
+    }
+    
+    public boolean tryEnter(EndpointClass endpointClass) {
+        return !enabled || limits.get(endpointClass).tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+    
+    public void exit(EndpointClass endpointClass, long elapsedNanos) {
+        if (enabled) {
+            limits.get(endpointClass).release(elapsedNanos);
+        }
+    }
+}
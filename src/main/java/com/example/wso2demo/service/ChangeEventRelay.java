@@ -0,0 +1,248 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.ChangeEvent;
+import com.example.wso2demo.model.ChangesRelayedEvent;
+import com.example.wso2demo.model.OutboxEvent;
+import com.example.wso2demo.model.OutboxRelayState;
+import com.example.wso2demo.repository.OutboxEventRepository;
+import com.example.wso2demo.repository.OutboxRelayStateRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Relays outbox rows to Server-Sent Events subscribers in two steps:
+ * sequencing assigns a gap-free sequence to newly committed rows under a row lock (safe with
+ * several instances), publishing pushes sequenced rows to this instance's subscribers in batches.
+ * Subscribers resume from any sequence still within the retention window.
+ * <p>
+ * The relay thread never writes to a client: batches go to each subscriber's bounded queue and
+ * are sent from a small sender pool, so one slow client cannot hold up the others. Each fresh
+ * batch is also published in-process as a ChangesRelayedEvent, so local views can follow writes
+ * made by other instances.
+ */
+@Service
+public class ChangeEventRelay {
+    
+    private static final Logger log = LoggerFactory.getLogger(ChangeEventRelay.class);
+    
+    private static final class Subscriber {
+        private SseSubscriberQueue events;
+        // Last sequence queued for sending; only the relay thread moves it
+        private long cursor;
+        
+        private Subscriber(long cursor) {
+            this.cursor = cursor;
+        }
+    }
+    
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    
+    @Autowired
+    private OutboxRelayStateRepository outboxRelayStateRepository;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Value("${app.outbox.batch-size:200}")
+    private int batchSize;
+    
+    @Value("${app.outbox.max-subscribers:100}")
+    private int maxSubscribers;
+    
+    @Value("${app.outbox.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+    
+    @Value("${app.outbox.retention-hours:168}")
+    private long retentionHours;
+    
+    @Value("${app.outbox.keepalive-ms:15000}")
+    private long keepaliveMs;
+    
+    @Value("${app.outbox.subscriber-queue-size:20}")
+    private int subscriberQueueSize;
+    
+    @Value("${app.outbox.sender-threads:4}")
+    private int senderThreads;
+    
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    
+    private TransactionTemplate writeTransaction;
+    
+    private TransactionTemplate readTransaction;
+    
+    private ExecutorService senderPool;
+    
+    private volatile long head;
+    
+    private long lastSendMillis = System.currentTimeMillis();
+    
+    @PostConstruct
+    public void init() {
+        writeTransaction = new TransactionTemplate(transactionManager);
+        readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+        Long maxSequence = readTransaction.execute(status -> outboxEventRepository.findMaxSequence());
+        head = maxSequence != null ? maxSequence : 0L;
+        AtomicInteger threadCount = new AtomicInteger();
+        senderPool = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "change-stream-send-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        senderPool.shutdownNow();
+    }
+    
+    public SseEmitter subscribe(Long since) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new IllegalStateException("Too many change stream subscribers");
+        }
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        Subscriber subscriber = new Subscriber(since != null ? since : head);
+        subscriber.events = new SseSubscriberQueue(emitter, subscriberQueueSize, senderPool, () -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+    
+    public long getHead() {
+        return head;
+    }
+    
+    @Scheduled(fixedDelayString = "${app.outbox.relay-interval-ms:500}")
+    public void relay() {
+        try {
+            forwardShardOutboxes();
+            sequencePending();
+            publish();
+        } catch (RuntimeException e) {
+            log.warn("Change event relay failed: {}", e.getMessage());
+        }
+    }
+    
+    @Scheduled(cron = "${app.outbox.purge-cron:0 15 3 * * *}")
+    public void purgePublished() {
+        int purged = writeTransaction.execute(status ->
+                outboxEventRepository.deletePublishedBefore(LocalDateTime.now().minusHours(retentionHours)));
+        log.info("Purged {} published outbox events older than {}h", purged, retentionHours);
+    }
+    
+    // Writes for users on shards 1..N-1 land in that shard's outbox; they are moved to the global
+    // one before sequencing. A crash between the copy and the delete delivers those events twice.
+    private void forwardShardOutboxes() {
+        for (int shard = 1; shard < shardRouter.getShardCount(); shard++) {
+            List<OutboxEvent> pending = shardRouter.onShard(shard, true,
+                    () -> outboxEventRepository.findBySequenceIsNullOrderByIdAsc(PageRequest.of(0, batchSize)));
+            if (pending.isEmpty()) {
+                continue;
+            }
+            writeTransaction.executeWithoutResult(status -> outboxEventRepository.saveAll(pending.stream()
+                    .map(event -> new OutboxEvent(null, null, event.getAggregateType(), event.getAggregateId(),
+                            event.getEventType(), event.getPayload(), event.getCreatedAt()))
+                    .toList()));
+            List<Long> ids = pending.stream().map(OutboxEvent::getId).toList();
+            shardRouter.onShard(shard, false, () -> {
+                outboxEventRepository.deleteAllByIdInBatch(ids);
+                return ids.size();
+            });
+        }
+    }
+    
+    private void sequencePending() {
+        writeTransaction.executeWithoutResult(status -> {
+            OutboxRelayState state = outboxRelayStateRepository.findForUpdate(OutboxRelayState.SINGLETON_ID)
+                    .orElseGet(() -> outboxRelayStateRepository.save(new OutboxRelayState(OutboxRelayState.SINGLETON_ID, 0L)));
+            List<OutboxEvent> pending = outboxEventRepository.findBySequenceIsNullOrderByIdAsc(PageRequest.of(0, batchSize));
+            long sequence = state.getLastSequence();
+            for (OutboxEvent event : pending) {
+                event.setSequence(++sequence);
+            }
+            state.setLastSequence(sequence);
+        });
+    }
+    
+    private void publish() {
+        long previousHead = head;
+        List<OutboxEvent> fresh = readTransaction.execute(status -> eventsAfter(previousHead));
+        if (!fresh.isEmpty()) {
+            head = fresh.get(fresh.size() - 1).getSequence();
+        }
+        
+        boolean sent = false;
+        for (Subscriber subscriber : subscribers) {
+            List<OutboxEvent> batch;
+            if (subscriber.cursor == previousHead) {
+                // Caught-up subscribers share the fresh batch; one whose queue is full is dropped
+                batch = fresh;
+            } else if (subscriber.events.isIdle()) {
+                // Lagging ones catch up one batch per tick, and only as fast as they take it
+                batch = readTransaction.execute(status -> eventsAfter(subscriber.cursor));
+            } else {
+                continue;
+            }
+            if (!batch.isEmpty()) {
+                sent |= send(subscriber, batch);
+            }
+        }
+        
+        if (!sent && System.currentTimeMillis() - lastSendMillis > keepaliveMs) {
+            subscribers.forEach(this::keepalive);
+            lastSendMillis = System.currentTimeMillis();
+        }
+        
+        if (!fresh.isEmpty()) {
+            eventPublisher.publishEvent(new ChangesRelayedEvent(fresh.stream().map(ChangeEvent::from).toList()));
+        }
+    }
+    
+    private List<OutboxEvent> eventsAfter(long sequence) {
+        return outboxEventRepository.findBySequenceGreaterThanOrderBySequenceAsc(sequence, PageRequest.of(0, batchSize));
+    }
+    
+    private boolean send(Subscriber subscriber, List<OutboxEvent> batch) {
+        long last = batch.get(batch.size() - 1).getSequence();
+        boolean queued = subscriber.events.offer(SseEmitter.event()
+                .id(String.valueOf(last))
+                .name("changes")
+                .data(batch.stream().map(ChangeEvent::from).toList()));
+        if (queued) {
+            subscriber.cursor = last;
+            lastSendMillis = System.currentTimeMillis();
+        }
+        return queued;
+    }
+    
+    private void keepalive(Subscriber subscriber) {
+        // A subscriber with events still queued is not idle and needs none
+        if (subscriber.events.isIdle()) {
+            subscriber.events.offer(SseEmitter.event().comment("keepalive"));
+        }
+    }
+}
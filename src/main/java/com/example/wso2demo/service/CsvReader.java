@@ -0,0 +1,114 @@
+package com.example.wso2demo.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming RFC 4180 reader: comma separated, fields optionally double-quoted, "" inside quotes
+ * for a quote, quoted fields may span lines. Reads one record at a time, so input size is not
+ * bounded by memory. Not thread-safe.
+ */
+public class CsvReader {
+    
+    private final Reader reader;
+    
+    private final int maxRecordChars;
+    
+    private int peeked = -2;
+    
+    private long line = 1;
+    
+    private long recordLine;
+    
+    public CsvReader(Reader reader, int maxRecordChars) {
+        this.reader = reader;
+        this.maxRecordChars = maxRecordChars;
+    }
+    
+    /**
+     * Line number the record last returned by next() started on.
+     */
+    public long getRecordLine() {
+        return recordLine;
+    }
+    
+    /**
+     * The next record's fields, or null at the end of input. Blank lines are skipped.
+     *
+     * @throws IllegalArgumentException for an unterminated quote or a record over the size limit
+     */
+    public List<String> next() throws IOException {
+        int c = read();
+        while (c == '\r' || c == '\n') {
+            c = read();
+        }
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int recordChars = 0;
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        while (true) {
+            if (++recordChars > maxRecordChars) {
+                throw new IllegalArgumentException("Record on line " + recordLine + " exceeds " + maxRecordChars + " characters");
+            }
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Unterminated quoted field in record on line " + recordLine);
+                }
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty() && !wasQuoted) {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                wasQuoted = false;
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+    
+    private int read() throws IOException {
+        int c;
+        if (peeked != -2) {
+            c = peeked;
+            peeked = -2;
+        } else {
+            c = reader.read();
+        }
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+    
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = reader.read();
+        }
+        return peeked;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.DeltaPage;
+import com.example.wso2demo.model.OutboxEvent;
+import com.example.wso2demo.model.OutboxRelayState;
+import com.example.wso2demo.repository.OutboxEventRepository;
+import com.example.wso2demo.repository.OutboxRelayStateRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Delta sync over the outbox. Once caught up, a cursor is an outbox sequence and a page holds
+ * the rows changed and the ids deleted by the events after it. Sequences are assigned after
+ * commit under a row lock, so a transaction that commits late still lands after every cursor
+ * handed out before it, whatever its timestamps say. Rows are returned as they are now, so one
+ * changed several times appears once.
+ * <p>
+ * A full sync (no cursor) pages through the current rows by (updated_at, id), carrying the
+ * sequence it started at in its cursor "&lt;timestamp&gt;,&lt;id&gt;,&lt;sequence&gt;", and then
+ * continues from that sequence. Anything committed meanwhile is sequenced after it.
+ */
+@Service
+public class DeltaSyncService {
+    
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+    
+    // Upper bound of the full sync scan; rows stamped ahead of this clock must not be skipped
+    private static final LocalDateTime FAR_FUTURE = LocalDateTime.of(9999, 1, 1, 0, 0);
+    
+    @FunctionalInterface
+    public interface ChangeQuery<T> {
+        List<T> find(LocalDateTime since, Long afterId, LocalDateTime until, Pageable pageable);
+    }
+    
+    // time is null once the full sync is done and only the sequence counts
+    private record Cursor(LocalDateTime time, long id, long sequence) {
+    }
+    
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    
+    @Autowired
+    private OutboxRelayStateRepository outboxRelayStateRepository;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Value("${app.delta-sync.max-page-size:5000}")
+    private int maxPageSize;
+    
+    /**
+     * @param query pages through the current rows for a full sync
+     * @param load  loads current rows by id, skipping ids that no longer exist
+     */
+    @Transactional(readOnly = true)
+    public <T> DeltaPage<T> changesSince(String entityType, String since, int limit, ChangeQuery<T> query,
+                                         Function<List<Long>, List<T>> load,
+                                         Function<T, LocalDateTime> updatedAt, Function<T, Long> id) {
+        int pageSize = Math.min(Math.max(limit, 1), maxPageSize);
+        Cursor cursor = since == null || since.isBlank() ? new Cursor(EPOCH, 0, lastSequence()) : parseCursor(since);
+        if (cursor == null) {
+            // A timestamp cursor from before sequences were used; it may already have missed changes
+            return new DeltaPage<>(List.of(), List.of(), null, false, true);
+        }
+        return cursor.time() != null
+                ? fullSyncPage(cursor, pageSize, query, updatedAt, id)
+                : eventPage(entityType, cursor.sequence(), pageSize, load, id);
+    }
+    
+    private <T> DeltaPage<T> fullSyncPage(Cursor cursor, int pageSize, ChangeQuery<T> query,
+                                          Function<T, LocalDateTime> updatedAt, Function<T, Long> id) {
+        List<T> rows = query.find(cursor.time(), cursor.id(), FAR_FUTURE, PageRequest.of(0, pageSize + 1));
+        if (shardRouter.isEnabled()) {
+            // Each shard's part is ordered, the page needs one ordered stream
+            rows = new ArrayList<>(rows);
+            rows.sort(Comparator.comparing(updatedAt).thenComparing(id));
+        }
+        if (rows.size() <= pageSize) {
+            return new DeltaPage<>(rows, List.of(), String.valueOf(cursor.sequence()), false, false);
+        }
+        List<T> changed = new ArrayList<>(rows.subList(0, pageSize));
+        T last = changed.get(changed.size() - 1);
+        return new DeltaPage<>(changed, List.of(), updatedAt.apply(last) + "," + id.apply(last) + "," + cursor.sequence(),
+                true, false);
+    }
+    
+    private <T> DeltaPage<T> eventPage(String entityType, long after, int pageSize,
+                                       Function<List<Long>, List<T>> load, Function<T, Long> id) {
+        List<OutboxEvent> events = outboxEventRepository.findByAggregateTypeAndSequenceGreaterThanOrderBySequenceAsc(
+                entityType, after, PageRequest.of(0, pageSize + 1));
+        boolean hasMore = events.size() > pageSize;
+        if (hasMore) {
+            events = events.subList(0, pageSize);
+        }
+        
+        // The last event of each id decides; an archived order is gone from the table like a deleted one
+        Map<Long, Boolean> gone = new LinkedHashMap<>();
+        for (OutboxEvent event : events) {
+            gone.remove(event.getAggregateId());
+            gone.put(event.getAggregateId(), OutboxService.DELETED.equals(event.getEventType())
+                    || OutboxService.ARCHIVED.equals(event.getEventType()));
+        }
+        List<Long> deleted = new ArrayList<>();
+        List<Long> changedIds = new ArrayList<>();
+        gone.forEach((entityId, removed) -> (removed ? deleted : changedIds).add(entityId));
+        
+        List<T> changed = new ArrayList<>();
+        if (!changedIds.isEmpty()) {
+            Map<Long, T> current = new HashMap<>();
+            load.apply(changedIds).forEach(row -> current.put(id.apply(row), row));
+            // One missing here was deleted by an event not yet sequenced, which a later page reports
+            changedIds.stream().map(current::get).filter(Objects::nonNull).forEach(changed::add);
+        }
+        
+        long next = events.isEmpty() ? after : events.get(events.size() - 1).getSequence();
+        return new DeltaPage<>(changed, deleted, String.valueOf(next), hasMore, missedEvents(after));
+    }
+    
+    // Events up to the cursor may have been purged, but none after it
+    private boolean missedEvents(long after) {
+        Long oldest = outboxEventRepository.findMinSequence();
+        return oldest != null ? after < oldest - 1 : after < lastSequence();
+    }
+    
+    private long lastSequence() {
+        return outboxRelayStateRepository.findById(OutboxRelayState.SINGLETON_ID)
+                .map(OutboxRelayState::getLastSequence)
+                .orElse(0L);
+    }
+    
+    // "<sequence>" or, during a full sync, "<timestamp>,<id>,<sequence>"; null for an old "<timestamp>[,<id>]" cursor
+    private Cursor parseCursor(String since) {
+        String[] parts = since.trim().split("\\s*,\\s*");
+        try {
+            if (parts.length == 1 && !parts[0].contains("T")) {
+                return new Cursor(null, 0, Long.parseLong(parts[0]));
+            }
+            if (parts.length <= 3) {
+                LocalDateTime time = LocalDateTime.parse(parts[0]);
+                long afterId = parts.length > 1 ? Long.parseLong(parts[1]) : 0;
+                return parts.length == 3 ? new Cursor(time, afterId, Long.parseLong(parts[2])) : null;
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid since cursor, pass back a nextCursor or omit it for a full sync: " + since);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.config.ShardRoutingDataSource;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out ids for users, orders and order items from blocks reserved in the global
+ * id_allocations table, so ids stay unique across shards without a round trip per insert.
+ * Blocks are reserved on their own connection and committed at once; ids of a block that is
+ * not used up before shutdown are skipped, never reused.
+ */
+@Component
+public class IdAllocator {
+    
+    // Sequence names double as table names for the MAX(id) floor, so only these are accepted
+    private static final Set<String> SEQUENCES = Set.of("users", "orders", "order_items");
+    
+    private static volatile IdAllocator instance;
+    
+    private static final class Block {
+        private long next;
+        private long limit;
+    }
+    
+    @Autowired
+    private DataSource dataSource;
+    
+    @Autowired
+    private ObjectProvider<ShardRoutingDataSource> shardRoutingDataSource;
+    
+    @Value("${app.id-allocation.block-size:100}")
+    private int blockSize;
+    
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        instance = this;
+    }
+    
+    // For the Hibernate id generator, which Hibernate instantiates itself
+    public static IdAllocator getInstance() {
+        if (instance == null) {
+            throw new IllegalStateException("IdAllocator is not initialized yet");
+        }
+        return instance;
+    }
+    
+    public long next(String sequence) {
+        if (!SEQUENCES.contains(sequence)) {
+            throw new IllegalArgumentException("Unknown id sequence " + sequence);
+        }
+        Block block = blocks.computeIfAbsent(sequence, name -> new Block());
+        synchronized (block) {
+            if (block.next >= block.limit) {
+                block.next = reserve(sequence, blockSize);
+                block.limit = block.next + blockSize;
+            }
+            return block.next++;
+        }
+    }
+    
+    // Plain connection outside any Spring transaction, so the reservation commits immediately
+    private long reserve(String sequence, int size) {
+        ShardRoutingDataSource shards = shardRoutingDataSource.getIfAvailable();
+        DataSource global = shards != null ? shards.getShard(ShardRoutingDataSource.GLOBAL_SHARD) : dataSource;
+        try (Connection connection = global.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                long start = Math.max(lockNextValue(connection, sequence), maxId(connection, sequence) + 1);
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE id_allocations SET next_value = ? WHERE name = ?")) {
+                    update.setLong(1, start + size);
+                    update.setString(2, sequence);
+                    update.executeUpdate();
+                }
+                connection.commit();
+                return start;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not reserve ids for " + sequence, e);
+        }
+    }
+    
+    private long lockNextValue(Connection connection, String sequence) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT next_value FROM id_allocations WHERE name = ? FOR UPDATE")) {
+            select.setString(1, sequence);
+            try (ResultSet rs = select.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+        }
+        throw new IllegalStateException("No id_allocations row for " + sequence);
+    }
+    
+    // Rows inserted without the allocator (e.g. the dev sample data) must not collide with its ids
+    private long maxId(Connection connection, String table) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM " + table);
+             ResultSet rs = select.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
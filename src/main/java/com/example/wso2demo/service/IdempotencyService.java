@@ -0,0 +1,251 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.IdempotencyRecord;
+import com.example.wso2demo.repository.IdempotencyRecordRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded, expiring store of responses keyed by Idempotency-Key. A duplicate arriving while the
+ * first request still runs is told so at once (its future is not done yet), so a retry storm
+ * executes the create only once without holding threads.
+ * With app.idempotency.persistent=true a key is claimed by inserting an in-progress row
+ * (status_code 0) into idempotency_records, so two instances cannot run it at the same time, and
+ * the response is stored in that row so replays survive restarts. A claim left behind by an
+ * instance that died is taken over after claim-lease-seconds.
+ */
+@Service
+public class IdempotencyService {
+    
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+    
+    private static final int IN_PROGRESS = 0;
+    
+    public enum ClaimType {
+        NEW,
+        DUPLICATE,
+        MISMATCH
+    }
+    
+    public record StoredResponse(int status, String contentType, String location, byte[] body) {
+    }
+    
+    public record Claim(ClaimType type, CompletableFuture<StoredResponse> response) {
+    }
+    
+    private record Entry(String requestHash, CompletableFuture<StoredResponse> response, long expiresAt) {
+    }
+    
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Value("${app.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+    
+    @Value("${app.idempotency.max-entries:10000}")
+    private int maxEntries;
+    
+    @Value("${app.idempotency.persistent:false}")
+    private boolean persistent;
+    
+    @Value("${app.idempotency.claim-lease-seconds:60}")
+    private long claimLeaseSeconds;
+    
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    
+    public Claim claim(String key, String requestHash) {
+        long now = System.currentTimeMillis();
+        Entry existing = entries.get(key);
+        if (existing != null && existing.expiresAt() <= now && existing.response().isDone()) {
+            entries.remove(key, existing);
+            existing = null;
+        }
+        
+        if (existing == null) {
+            ensureCapacity(now);
+            Entry created = new Entry(requestHash, new CompletableFuture<>(), now + ttlSeconds * 1000);
+            existing = entries.putIfAbsent(key, created);
+            if (existing == null) {
+                Entry elsewhere = persistent ? claimPersisted(key, created, now) : null;
+                if (elsewhere == null) {
+                    return new Claim(ClaimType.NEW, created.response());
+                }
+                entries.remove(key, created);
+                // Completed responses are kept here too; a claim running elsewhere is asked about again next time
+                if (elsewhere.response().isDone()) {
+                    entries.putIfAbsent(key, elsewhere);
+                }
+                existing = elsewhere;
+            }
+        }
+        
+        if (!existing.requestHash().equals(requestHash)) {
+            return new Claim(ClaimType.MISMATCH, null);
+        }
+        return new Claim(ClaimType.DUPLICATE, existing.response());
+    }
+    
+    public void complete(String key, StoredResponse response) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+        
+        try {
+            // Server errors are not remembered so the client's retry actually runs again
+            if (response.status() >= 500) {
+                entries.remove(key, entry);
+                releasePersisted(key);
+            } else if (persistent) {
+                persist(key, entry, response);
+            }
+        } catch (RuntimeException e) {
+            // The request itself succeeded; replays are served from memory on this instance only
+            log.warn("Could not persist idempotent response: {}", e.getMessage());
+        } finally {
+            // Waiting duplicates, and purging, depend on the future being done whatever happens above
+            entry.response().complete(response);
+        }
+    }
+    
+    public void fail(String key, Throwable error) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entries.remove(key, entry);
+            entry.response().completeExceptionally(error);
+        }
+        try {
+            releasePersisted(key);
+        } catch (RuntimeException e) {
+            log.warn("Could not release idempotency claim, it is taken over once its lease ends: {}", e.getMessage());
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${app.idempotency.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt() <= now && entry.response().isDone());
+        if (persistent) {
+            idempotencyRecordRepository.deleteExpired(LocalDateTime.now());
+        }
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Claims the key for this instance by inserting an in-progress row. Returns null when claimed,
+     * otherwise what is stored for the key: a completed response, or a claim still running
+     * elsewhere (a future that never completes here).
+     */
+    private Entry claimPersisted(String key, Entry created, long now) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                jdbcTemplate.update("INSERT INTO idempotency_records (idempotency_key, request_hash, status_code, created_at, expires_at) "
+                        + "VALUES (?, ?, ?, ?, ?)", key, created.requestHash(), IN_PROGRESS,
+                        Timestamp.valueOf(LocalDateTime.now()), Timestamp.valueOf(toDateTime(created.expiresAt())));
+                return null;
+            } catch (DuplicateKeyException e) {
+                Optional<IdempotencyRecord> stored = idempotencyRecordRepository.findById(key);
+                if (stored.isEmpty()) {
+                    continue;
+                }
+                IdempotencyRecord record = stored.get();
+                boolean running = record.getStatusCode() == IN_PROGRESS;
+                boolean stale = running
+                        ? toMillis(record.getCreatedAt()) + claimLeaseSeconds * 1000 <= now
+                        : toMillis(record.getExpiresAt()) <= now;
+                if (!stale) {
+                    return running
+                            ? new Entry(record.getRequestHash(), new CompletableFuture<>(), toMillis(record.getExpiresAt()))
+                            : completed(record);
+                }
+                // Expired, or left behind by an instance that died; only one of the instances racing for it removes it
+                jdbcTemplate.update("DELETE FROM idempotency_records WHERE idempotency_key = ? AND status_code = ? AND created_at = ?",
+                        key, record.getStatusCode(), Timestamp.valueOf(record.getCreatedAt()));
+            }
+        }
+        // Lost the race for a stale row to another instance, which now holds it
+        return new Entry(created.requestHash(), new CompletableFuture<>(), created.expiresAt());
+    }
+    
+    private void releasePersisted(String key) {
+        if (persistent) {
+            jdbcTemplate.update("DELETE FROM idempotency_records WHERE idempotency_key = ? AND status_code = ?", key, IN_PROGRESS);
+        }
+    }
+    
+    private Entry completed(IdempotencyRecord record) {
+        return new Entry(
+                record.getRequestHash(),
+                CompletableFuture.completedFuture(new StoredResponse(
+                        record.getStatusCode(),
+                        record.getContentType(),
+                        record.getLocation(),
+                        record.getResponseBody() != null
+                                ? record.getResponseBody().getBytes(StandardCharsets.UTF_8)
+                                : new byte[0])),
+                toMillis(record.getExpiresAt()));
+    }
+    
+    // Turns this instance's in-progress row into the stored response
+    private void persist(String key, Entry entry, StoredResponse response) {
+        IdempotencyRecord record = new IdempotencyRecord(
+                key,
+                entry.requestHash(),
+                response.status(),
+                response.contentType(),
+                response.location(),
+                new String(response.body(), StandardCharsets.UTF_8),
+                LocalDateTime.now(),
+                toDateTime(entry.expiresAt()));
+        idempotencyRecordRepository.save(record);
+    }
+    
+    // Drop expired entries first, then the completed entries closest to expiry
+    private void ensureCapacity(long now) {
+        if (entries.size() < maxEntries) {
+            return;
+        }
+        entries.values().removeIf(entry -> entry.expiresAt() <= now && entry.response().isDone());
+        int excess = entries.size() - (maxEntries * 9 / 10);
+        if (excess > 0) {
+            entries.entrySet().stream()
+                    .filter(e -> e.getValue().response().isDone())
+                    .sorted(Comparator.comparingLong(e -> e.getValue().expiresAt()))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(entries::remove);
+        }
+    }
+    
+    private long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    private LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
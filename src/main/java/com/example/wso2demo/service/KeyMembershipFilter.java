@@ -0,0 +1,135 @@
+package com.example.wso2demo.service;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Membership test for string keys with no false negatives: a Bloom filter answers most absent
+ * keys from a few cache lines, and an open-addressing set of 64-bit key fingerprints behind it
+ * removes the Bloom filter's false positives. A "maybe" still has to be confirmed against the
+ * database, as two keys can share a fingerprint.
+ * <p>
+ * Keys are normalized (trimmed, lower-cased, accents stripped) so the filter is never stricter
+ * than MySQL's case- and accent-insensitive collation. Not thread-safe; callers synchronize.
+ */
+public class KeyMembershipFilter {
+    
+    private static final int BLOOM_HASHES = 7;
+    
+    // About 1% false positives at the expected number of keys
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    
+    private static final long EMPTY = 0;
+    
+    private final long[] bloom;
+    
+    private final long bloomBits;
+    
+    private long[] fingerprints;
+    
+    private int size;
+    
+    public KeyMembershipFilter(int expectedKeys) {
+        int keys = Math.max(1024, expectedKeys);
+        this.bloomBits = (long) keys * BLOOM_BITS_PER_KEY;
+        this.bloom = new long[(int) ((bloomBits + 63) / 64)];
+        this.fingerprints = new long[tableCapacity(keys)];
+    }
+    
+    public static String normalize(String key) {
+        String decomposed = Normalizer.normalize(key.trim(), Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+    }
+    
+    public void add(String key) {
+        if (key == null) {
+            return;
+        }
+        long fingerprint = fingerprint(key);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = bloomBit(fingerprint, i);
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        if (insert(fingerprints, fingerprint)) {
+            size++;
+            // Keep the table at most half full so probe sequences stay short
+            if (size * 2L > fingerprints.length) {
+                rehash(fingerprints.length * 2);
+            }
+        }
+    }
+    
+    public boolean mightContain(String key) {
+        if (key == null) {
+            return false;
+        }
+        long fingerprint = fingerprint(key);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = bloomBit(fingerprint, i);
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        int mask = fingerprints.length - 1;
+        for (int slot = (int) fingerprint & mask; fingerprints[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (fingerprints[slot] == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    private long bloomBit(long fingerprint, int i) {
+        // Double hashing: the halves of the fingerprint give every probe of the filter
+        long h1 = fingerprint >>> 32;
+        long h2 = fingerprint & 0xFFFFFFFFL | 1;
+        return Math.floorMod(h1 + i * h2, bloomBits);
+    }
+    
+    private static boolean insert(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == fingerprint) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = fingerprint;
+        return true;
+    }
+    
+    private void rehash(int capacity) {
+        long[] resized = new long[capacity];
+        for (long fingerprint : fingerprints) {
+            if (fingerprint != EMPTY) {
+                insert(resized, fingerprint);
+            }
+        }
+        fingerprints = resized;
+    }
+    
+    // FNV-1a over the UTF-8 bytes followed by the murmur3 finalizer; 0 is reserved for empty slots
+    private static long fingerprint(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : normalize(key).getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1 : hash;
+    }
+    
+    private static int tableCapacity(int keys) {
+        return Integer.highestOneBit(Math.max(16, keys * 2 - 1)) << 1;
+    }
+}
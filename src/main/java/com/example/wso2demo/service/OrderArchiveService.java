@@ -0,0 +1,211 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.ArchivedOrder;
+import com.example.wso2demo.model.Order;
+import com.example.wso2demo.model.OrderItem;
+import com.example.wso2demo.repository.ArchivedOrderRepository;
+import com.example.wso2demo.repository.OrderItemRepository;
+import com.example.wso2demo.repository.OrderRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Moves closed orders older than the configured age out of orders/order_items into the
+ * orders_archive cold store, keeping the hot tables (and the InnoDB buffer pool) limited to
+ * recent and open orders. Archived orders are read back as detached {@link Order}s.
+ */
+@Service
+public class OrderArchiveService {
+    
+    private static final Logger log = LoggerFactory.getLogger(OrderArchiveService.class);
+    
+    private static final TypeReference<List<OrderItem>> ITEM_LIST = new TypeReference<>() {
+    };
+    
+    @Autowired
+    private OrderRepository orderRepository;
+    
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+    
+    @Autowired
+    private ArchivedOrderRepository archivedOrderRepository;
+    
+    @Autowired
+    private OutboxService outboxService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Value("${app.order-archive.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.order-archive.after-days:180}")
+    private int afterDays;
+    
+    @Value("${app.order-archive.closed-statuses:DELIVERED,CANCELLED}")
+    private List<String> closedStatuses;
+    
+    @Value("${app.order-archive.batch-size:500}")
+    private int batchSize;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+    
+    @Scheduled(fixedDelayString = "${app.order-archive.interval-ms:3600000}",
+               initialDelayString = "${app.order-archive.interval-ms:3600000}")
+    public void scheduledArchive() {
+        if (enabled) {
+            archiveClosedOrders();
+        }
+    }
+    
+    /**
+     * Archives every closed order placed before the cutoff, one transaction per batch so a
+     * failure only rolls back the current batch. Returns the number of orders moved.
+     */
+    public synchronized int archiveClosedOrders() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(afterDays);
+        int total = 0;
+        int moved;
+        try {
+            do {
+                moved = transactionTemplate.execute(status -> archiveBatch(cutoff));
+                total += moved;
+            } while (moved == batchSize);
+        } catch (IllegalStateException e) {
+            log.warn("Stopped archiving orders closed before {} after {}: {}", cutoff, total, e.getMessage());
+            return total;
+        }
+        if (total > 0) {
+            log.info("Archived {} orders closed before {}", total, cutoff);
+        }
+        return total;
+    }
+    
+    private int archiveBatch(LocalDateTime cutoff) {
+        // The rows stay locked until the batch commits, so a status change or write-behind update
+        // waits for the move instead of landing on a copy that is about to be deleted
+        List<Long> ids = orderRepository.lockDeletableIds(closedStatuses, cutoff, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Order> orders = orderRepository.findAllById(ids);
+        List<ArchivedOrder> archived = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            // Batch fetching loads the items of the whole batch in a few queries
+            Hibernate.initialize(order.getItems());
+            archived.add(toArchive(order, now));
+            outboxService.record("Order", order.getId(), OutboxService.ARCHIVED, order);
+        }
+        archivedOrderRepository.saveAll(archived);
+        archivedOrderRepository.flush();
+        
+        orderItemRepository.deleteByOrderIdIn(ids);
+        if (orderRepository.deleteMatching(ids, closedStatuses, cutoff) != ids.size()) {
+            throw new IllegalStateException("Orders selected for archiving changed before they were moved");
+        }
+        return ids.size();
+    }
+    
+    @Transactional(readOnly = true)
+    public Optional<Order> findById(Long id) {
+        return archivedOrderRepository.findById(id).map(this::toOrder);
+    }
+    
+    @Transactional(readOnly = true)
+    public Optional<Order> findByOrderNumber(String orderNumber) {
+        return archivedOrderRepository.findByOrderNumber(orderNumber).map(this::toOrder);
+    }
+    
+    @Transactional(readOnly = true)
+    public List<Order> findByUserId(Long userId) {
+        return toOrders(archivedOrderRepository.findByUserId(userId));
+    }
+    
+    @Transactional(readOnly = true)
+    public List<Order> findByStatus(String status) {
+        return toOrders(archivedOrderRepository.findByStatus(status));
+    }
+    
+    @Transactional(readOnly = true)
+    public List<Order> findByPaymentMethod(String paymentMethod) {
+        return toOrders(archivedOrderRepository.findByPaymentMethod(paymentMethod));
+    }
+    
+    @Transactional(readOnly = true)
+    public List<Order> findAll() {
+        return toOrders(archivedOrderRepository.findAll());
+    }
+    
+    private ArchivedOrder toArchive(Order order, LocalDateTime archivedAt) {
+        ArchivedOrder archived = new ArchivedOrder();
+        archived.setId(order.getId());
+        archived.setOrderNumber(order.getOrderNumber());
+        archived.setUserId(order.getUserId());
+        archived.setTotalAmount(order.getTotalAmount());
+        archived.setStatus(order.getStatus());
+        archived.setPaymentMethod(order.getPaymentMethod());
+        archived.setShippingAddress(order.getShippingAddress());
+        archived.setOrderDate(order.getOrderDate());
+        archived.setUpdatedAt(order.getUpdatedAt());
+        archived.setArchivedAt(archivedAt);
+        try {
+            archived.setItems(objectMapper.writeValueAsString(order.getItems()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize items of order " + order.getId(), e);
+        }
+        return archived;
+    }
+    
+    private List<Order> toOrders(List<ArchivedOrder> archived) {
+        return archived.stream().map(this::toOrder).toList();
+    }
+    
+    private Order toOrder(ArchivedOrder archived) {
+        Order order = new Order();
+        order.setId(archived.getId());
+        order.setOrderNumber(archived.getOrderNumber());
+        order.setUserId(archived.getUserId());
+        order.setTotalAmount(archived.getTotalAmount());
+        order.setStatus(archived.getStatus());
+        order.setPaymentMethod(archived.getPaymentMethod());
+        order.setShippingAddress(archived.getShippingAddress());
+        order.setOrderDate(archived.getOrderDate());
+        order.setUpdatedAt(archived.getUpdatedAt());
+        try {
+            order.setItems(archived.getItems() != null
+                    ? new ArrayList<>(objectMapper.readValue(archived.getItems(), ITEM_LIST))
+                    : new ArrayList<>());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read items of archived order " + archived.getId(), e);
+        }
+        return order;
+    }
+}
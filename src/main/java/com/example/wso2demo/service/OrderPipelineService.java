@@ -0,0 +1,544 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.Order;
+import com.example.wso2demo.model.OrderItem;
+import com.example.wso2demo.model.Product;
+import com.example.wso2demo.model.User;
+import com.example.wso2demo.repository.ProductRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Staged order intake: accepted orders pass validate -> price -> reserve stock and persist, each
+ * stage a bounded queue drained in batches by its own worker threads. A full queue blocks the
+ * stage in front of it, and a full intake queue makes submit fail, so overload turns into
+ * backpressure on clients instead of unbounded memory. Status changes go through a separate
+ * transition stage. Stock is reserved in the transaction that inserts the order, so nothing is
+ * committed for an order until it is stored; orders still queued are lost if the instance dies.
+ */
+@Service
+public class OrderPipelineService {
+    
+    private static final Logger log = LoggerFactory.getLogger(OrderPipelineService.class);
+    
+    public static final String RECEIVED = "RECEIVED";
+    public static final String VALIDATED = "VALIDATED";
+    public static final String PRICED = "PRICED";
+    public static final String REJECTED = "REJECTED";
+    
+    // Status a persisted order starts in
+    private static final String INITIAL_STATUS = "PENDING";
+    
+    private static final Map<String, Set<String>> TRANSITIONS = Map.of(
+            "PENDING", Set.of("PAID", "CANCELLED"),
+            "PAID", Set.of("PROCESSING", "SHIPPED", "CANCELLED"),
+            "PROCESSING", Set.of("SHIPPED", "CANCELLED"),
+            "SHIPPED", Set.of("DELIVERED")
+    );
+    
+    private static final class PipelineOrder {
+        private final Order order;
+        private volatile String stage = RECEIVED;
+        private volatile String error;
+        private volatile long finishedAt;
+        private Map<Long, Product> products = Map.of();
+        
+        private PipelineOrder(Order order) {
+            this.order = order;
+        }
+    }
+    
+    private record Transition(String orderNumber, String status) {
+    }
+    
+    public record Rejection(String status, String reason, long at) {
+    }
+    
+    @Autowired
+    private OrderService orderService;
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    @Autowired
+    private ProductService productService;
+    
+    @Autowired
+    private OutboxService outboxService;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+    
+    @Value("${app.order-pipeline.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.order-pipeline.queue-capacity:1000}")
+    private int queueCapacity;
+    
+    @Value("${app.order-pipeline.workers:2}")
+    private int workers;
+    
+    @Value("${app.order-pipeline.batch-size:50}")
+    private int batchSize;
+    
+    @Value("${app.order-pipeline.result-retention-ms:600000}")
+    private long resultRetentionMs;
+    
+    @Value("${app.order-pipeline.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+    
+    // In-flight orders by number, plus rejected ones until the retention ends
+    private final Map<String, PipelineOrder> tracked = new ConcurrentHashMap<>();
+    
+    private final Map<String, Rejection> rejectedTransitions = new ConcurrentHashMap<>();
+    
+    private final List<Stage<?>> stages = new ArrayList<>();
+    
+    private Stage<PipelineOrder> validateStage;
+    
+    private Stage<PipelineOrder> priceStage;
+    
+    private Stage<PipelineOrder> persistStage;
+    
+    private Stage<Transition> transitionStage;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    private volatile boolean accepting;
+    
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        if (!enabled) {
+            return;
+        }
+        validateStage = new Stage<>("validate", workers, this::validate);
+        priceStage = new Stage<>("price", 1, this::price);
+        // A single persisting worker takes product row locks in one order, so batches cannot deadlock each other
+        persistStage = new Stage<>("persist", 1, this::persist);
+        transitionStage = new Stage<>("transition", workers, this::transition);
+        stages.forEach(Stage::start);
+        accepting = true;
+        log.info("Order pipeline started: {} stages, queue capacity {}, batch size {}", stages.size(), queueCapacity, batchSize);
+    }
+    
+    // Stops intake and gives queued orders a chance to reach the database before the workers stop
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        accepting = false;
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        while (System.currentTimeMillis() < deadline && stages.stream().anyMatch(Stage::isBusy)) {
+            sleep(50);
+        }
+        stages.forEach(Stage::stop);
+        long lost = tracked.values().stream().filter(order -> !REJECTED.equals(order.stage)).count();
+        if (lost > 0) {
+            log.warn("Order pipeline stopped with {} orders not yet persisted", lost);
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Accepts an order for asynchronous processing and returns its order number (generated when
+     * the order has none). Fails with IllegalStateException when the pipeline is full.
+     */
+    public String submit(Order order) {
+        if (!accepting) {
+            throw new IllegalStateException("Order pipeline is not accepting orders");
+        }
+        if (order.getOrderNumber() == null || order.getOrderNumber().isBlank()) {
+            order.setOrderNumber("ORD-" + UUID.randomUUID().toString().substring(0, 13).toUpperCase());
+        }
+        order.setId(null);
+        order.setStatus(RECEIVED);
+        if (order.getItems() == null) {
+            order.setItems(new ArrayList<>());
+        }
+        PipelineOrder pipelineOrder = new PipelineOrder(order);
+        if (tracked.putIfAbsent(order.getOrderNumber(), pipelineOrder) != null) {
+            throw new IllegalArgumentException("Order " + order.getOrderNumber() + " is already being processed");
+        }
+        if (!validateStage.queue.offer(pipelineOrder)) {
+            tracked.remove(order.getOrderNumber());
+            throw new IllegalStateException("Order pipeline is full, retry later");
+        }
+        return order.getOrderNumber();
+    }
+    
+    /**
+     * Queues a status change. Unknown target statuses fail at once; whether the change is allowed
+     * from the order's current status is decided when it is applied.
+     */
+    public void submitTransition(String orderNumber, String status) {
+        if (!accepting) {
+            throw new IllegalStateException("Order pipeline is not accepting status changes");
+        }
+        if (!isKnownStatus(status)) {
+            throw new IllegalArgumentException("Unknown order status " + status);
+        }
+        rejectedTransitions.remove(orderNumber);
+        if (!transitionStage.queue.offer(new Transition(orderNumber, status))) {
+            throw new IllegalStateException("Order pipeline is full, retry later");
+        }
+    }
+    
+    /**
+     * Applies a status change right away, for when the pipeline is disabled. Returns the reason
+     * when the change is not allowed.
+     */
+    public Optional<String> transitionNow(String orderNumber, String status) {
+        if (!isKnownStatus(status)) {
+            throw new IllegalArgumentException("Unknown order status " + status);
+        }
+        List<Order> cancelled = new ArrayList<>();
+        Map<String, String> rejected = orderService.transitionStatuses(Map.of(orderNumber, status), this::isAllowed,
+                order -> collectCancelled(order, cancelled));
+        releaseStock(cancelled);
+        return Optional.ofNullable(rejected.get(orderNumber));
+    }
+    
+    // The order as the pipeline sees it, with the stage as its status, while it is not persisted yet
+    public Optional<Order> findInFlight(String orderNumber) {
+        return Optional.ofNullable(tracked.get(orderNumber)).map(pipelineOrder -> {
+            pipelineOrder.order.setStatus(pipelineOrder.stage);
+            return pipelineOrder.order;
+        });
+    }
+    
+    public Optional<String> getRejectionReason(String orderNumber) {
+        return Optional.ofNullable(tracked.get(orderNumber)).map(pipelineOrder -> pipelineOrder.error);
+    }
+    
+    public Optional<Rejection> getRejectedTransition(String orderNumber) {
+        return Optional.ofNullable(rejectedTransitions.get(orderNumber));
+    }
+    
+    public Map<String, Integer> getQueueSizes() {
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        stages.forEach(stage -> sizes.put(stage.name, stage.queue.size()));
+        return sizes;
+    }
+    
+    @Scheduled(fixedDelayString = "${app.order-pipeline.result-retention-ms:600000}")
+    public void purgeResults() {
+        long cutoff = System.currentTimeMillis() - resultRetentionMs;
+        tracked.values().removeIf(order -> REJECTED.equals(order.stage) && order.finishedAt < cutoff);
+        rejectedTransitions.values().removeIf(rejection -> rejection.at() < cutoff);
+    }
+    
+    // Stage 1: the users, products and order numbers of the whole batch are looked up with one query each
+    private void validate(List<PipelineOrder> batch) {
+        Set<Long> userIds = batch.stream().map(o -> o.order.getUserId()).collect(Collectors.toSet());
+        Set<Long> existingUsers = userService.getUsersByIds(new ArrayList<>(userIds)).getItems().stream()
+                .map(User::getId)
+                .collect(Collectors.toSet());
+        Set<Long> productIds = batch.stream()
+                .flatMap(o -> o.order.getItems().stream())
+                .map(OrderItem::getProductId)
+                .filter(id -> id != null)
+                .collect(Collectors.toSet());
+        Map<Long, Product> products = productIds.isEmpty() ? Map.of()
+                : productRepository.findAllById(productIds).stream().collect(Collectors.toMap(Product::getId, p -> p));
+        Set<String> takenNumbers = orderService.getOrdersByOrderNumbers(batch.stream().map(o -> o.order.getOrderNumber()).toList())
+                .getItems().stream()
+                .map(Order::getOrderNumber)
+                .collect(Collectors.toSet());
+        
+        for (PipelineOrder pipelineOrder : batch) {
+            Order order = pipelineOrder.order;
+            String error = null;
+            if (takenNumbers.contains(order.getOrderNumber())) {
+                error = "Order number already exists";
+            } else if (!existingUsers.contains(order.getUserId())) {
+                error = "User not found with id: " + order.getUserId();
+            } else if (order.getItems().isEmpty()) {
+                error = "Order has no items";
+            } else {
+                for (OrderItem item : order.getItems()) {
+                    if (item.getProductId() == null || !products.containsKey(item.getProductId())) {
+                        error = "Product not found with id: " + item.getProductId();
+                        break;
+                    }
+                    if (item.getQuantity() == null || item.getQuantity() <= 0) {
+                        error = "Quantity must be positive for product " + item.getProductId();
+                        break;
+                    }
+                }
+            }
+            if (error != null) {
+                reject(pipelineOrder, error);
+                continue;
+            }
+            pipelineOrder.products = products;
+            forward(pipelineOrder, VALIDATED, priceStage);
+        }
+    }
+    
+    // Stage 2: prices come from the catalog at validation time, whatever the client sent
+    private void price(List<PipelineOrder> batch) {
+        for (PipelineOrder pipelineOrder : batch) {
+            double total = 0;
+            for (OrderItem item : pipelineOrder.order.getItems()) {
+                double unitPrice = pipelineOrder.products.get(item.getProductId()).getPrice();
+                item.setId(null);
+                item.setUnitPrice(unitPrice);
+                item.setSubtotal(roundToCents(unitPrice * item.getQuantity()));
+                total += item.getSubtotal();
+            }
+            pipelineOrder.order.setTotalAmount(roundToCents(total));
+            forward(pipelineOrder, PRICED, persistStage);
+        }
+    }
+    
+    // Stage 3: the stock reservations and inserts of a batch commit in one transaction; if it fails,
+    // orders are retried one by one so a single bad order does not take the rest of the batch with it
+    private void persist(List<PipelineOrder> batch) {
+        try {
+            store(batch);
+        } catch (RuntimeException batchFailure) {
+            log.warn("Storing a batch of {} orders failed, retrying one by one: {}", batch.size(), batchFailure.getMessage());
+            for (PipelineOrder pipelineOrder : batch) {
+                try {
+                    store(List.of(pipelineOrder));
+                } catch (RuntimeException e) {
+                    log.warn("Could not persist order {}: {}", pipelineOrder.order.getOrderNumber(), e.getMessage());
+                    reject(pipelineOrder, "Could not store order: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    // Rejections are applied after the commit, so a rolled back attempt leaves its orders as they were for the retry
+    private void store(List<PipelineOrder> batch) {
+        Map<PipelineOrder, String> rejected = new LinkedHashMap<>();
+        List<PipelineOrder> stored = transactionTemplate.execute(status -> reserveAndInsert(batch, rejected));
+        rejected.forEach(this::reject);
+        stored.forEach(this::persisted);
+    }
+    
+    // An order that cannot get every item gives back what it already took and is not inserted
+    private List<PipelineOrder> reserveAndInsert(List<PipelineOrder> batch, Map<PipelineOrder, String> rejected) {
+        LocalDateTime now = LocalDateTime.now();
+        Set<Long> touched = new HashSet<>();
+        List<PipelineOrder> reserved = new ArrayList<>();
+        for (PipelineOrder pipelineOrder : batch) {
+            List<OrderItem> taken = new ArrayList<>();
+            String error = null;
+            for (OrderItem item : pipelineOrder.order.getItems()) {
+                if (!productService.reserveStock(item.getProductId(), item.getQuantity(), now)) {
+                    error = "Insufficient stock for product " + item.getProductId();
+                    break;
+                }
+                taken.add(item);
+            }
+            if (error != null) {
+                taken.forEach(item -> productService.addStock(item.getProductId(), item.getQuantity(), now));
+                rejected.put(pipelineOrder, error);
+                continue;
+            }
+            taken.forEach(item -> touched.add(item.getProductId()));
+            reserved.add(pipelineOrder);
+        }
+        reserved.forEach(pipelineOrder -> pipelineOrder.order.setStatus(INITIAL_STATUS));
+        orderService.createOrders(reserved.stream().map(o -> o.order).toList());
+        productRepository.findAllById(touched)
+                .forEach(product -> outboxService.record("Product", product.getId(), OutboxService.UPDATED, product));
+        return reserved;
+    }
+    
+    private void persisted(PipelineOrder pipelineOrder) {
+        tracked.remove(pipelineOrder.order.getOrderNumber(), pipelineOrder);
+    }
+    
+    // Status changes of a batch are applied together; the last change queued for an order wins
+    private void transition(List<Transition> batch) {
+        Map<String, String> targets = new LinkedHashMap<>();
+        batch.forEach(transition -> targets.put(transition.orderNumber(), transition.status()));
+        List<Order> cancelled = new ArrayList<>();
+        Map<String, String> rejected = orderService.transitionStatuses(targets, this::isAllowed,
+                order -> collectCancelled(order, cancelled));
+        releaseStock(cancelled);
+        long now = System.currentTimeMillis();
+        rejected.forEach((orderNumber, reason) ->
+                rejectedTransitions.put(orderNumber, new Rejection(targets.get(orderNumber), reason, now)));
+    }
+    
+    private boolean isAllowed(String current, String target) {
+        return TRANSITIONS.getOrDefault(current, Set.of()).contains(target);
+    }
+    
+    private static boolean isKnownStatus(String status) {
+        return TRANSITIONS.containsKey(status) || TRANSITIONS.values().stream().anyMatch(targets -> targets.contains(status));
+    }
+    
+    // Only statuses before SHIPPED may move to CANCELLED, so every cancelled order still holds its stock
+    private void collectCancelled(Order order, List<Order> cancelled) {
+        if ("CANCELLED".equals(order.getStatus())) {
+            cancelled.add(order);
+        }
+    }
+    
+    private void releaseStock(List<Order> orders) {
+        Map<Long, Integer> quantities = new HashMap<>();
+        orders.forEach(order -> order.getItems().forEach(item -> quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum)));
+        if (quantities.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            quantities.forEach((productId, quantity) -> productService.addStock(productId, quantity, now));
+            productRepository.findAllById(quantities.keySet())
+                    .forEach(product -> outboxService.record("Product", product.getId(), OutboxService.UPDATED, product));
+        });
+    }
+    
+    private void forward(PipelineOrder pipelineOrder, String stage, Stage<PipelineOrder> next) {
+        pipelineOrder.stage = stage;
+        next.put(pipelineOrder);
+    }
+    
+    private void reject(PipelineOrder pipelineOrder, String error) {
+        pipelineOrder.error = error;
+        pipelineOrder.finishedAt = System.currentTimeMillis();
+        pipelineOrder.stage = REJECTED;
+        log.info("Order {} rejected: {}", pipelineOrder.order.getOrderNumber(), error);
+    }
+    
+    private static double roundToCents(double amount) {
+        return Math.round(amount * 100) / 100.0;
+    }
+    
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * A bounded queue with its worker threads. Workers take whatever is queued, up to batch-size,
+     * and hand it to the handler as one batch.
+     */
+    private final class Stage<T> {
+        private final String name;
+        private final int threads;
+        private final Consumer<List<T>> handler;
+        private final BlockingQueue<T> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final List<Thread> workerThreads = new ArrayList<>();
+        private final Set<Thread> working = ConcurrentHashMap.newKeySet();
+        private volatile boolean running = true;
+        
+        private Stage(String name, int threads, Consumer<List<T>> handler) {
+            this.name = name;
+            this.threads = Math.max(1, threads);
+            this.handler = handler;
+            stages.add(this);
+            meterRegistry.ifAvailable(registry -> Gauge.builder("order.pipeline.queue.size", queue, BlockingQueue::size)
+                    .tag("stage", name)
+                    .register(registry));
+        }
+        
+        private void start() {
+            for (int i = 1; i <= threads; i++) {
+                Thread thread = new Thread(this::work, "order-pipeline-" + name + "-" + i);
+                thread.setDaemon(true);
+                thread.start();
+                workerThreads.add(thread);
+            }
+        }
+        
+        // Blocks while the stage is full, which is what pushes back on the stage in front
+        private void put(T element) {
+            try {
+                queue.put(element);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while handing over to stage " + name, e);
+            }
+        }
+        
+        private boolean isBusy() {
+            return !queue.isEmpty() || !working.isEmpty();
+        }
+        
+        private void stop() {
+            running = false;
+            workerThreads.forEach(Thread::interrupt);
+        }
+        
+        private void work() {
+            List<T> batch = new ArrayList<>(batchSize);
+            while (running) {
+                try {
+                    T first = queue.poll(500, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    working.add(Thread.currentThread());
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    handler.accept(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("Order pipeline stage {} failed for a batch of {}", name, batch.size(), e);
+                    batch.forEach(this::failed);
+                } finally {
+                    batch.clear();
+                    working.remove(Thread.currentThread());
+                }
+            }
+        }
+        
+        private void failed(T element) {
+            if (element instanceof PipelineOrder pipelineOrder) {
+                reject(pipelineOrder, "Processing failed in stage " + name);
+            } else if (element instanceof Transition transition) {
+                rejectedTransitions.put(transition.orderNumber(),
+                        new Rejection(transition.status(), "Processing failed", System.currentTimeMillis()));
+            }
+        }
+    }
+}
@@ -1,68 +1,463 @@
 package com.example.wso2demo.service;
 
+import com.example.wso2demo.model.DeltaPage;
+import com.example.wso2demo.model.GroupStatistics;
+import com.example.wso2demo.model.MultiGetResult;
 import com.example.wso2demo.model.Order;
+import com.example.wso2demo.model.OrderItem;
+import com.example.wso2demo.model.OrderSummary;
+import com.example.wso2demo.repository.OrderItemRepository;
 import com.example.wso2demo.repository.OrderRepository;
+import jakarta.annotation.PostConstruct;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
-@Transactional
+@Transactional(readOnly = true)
 public class OrderService {
     
+    private static final Logger log = LoggerFactory.getLogger(OrderService.class);
+    
     @Autowired
     private OrderRepository orderRepository;
     
-    public List<Order> getAllOrders() {
-        return orderRepository.findAll();
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+    
+    @Autowired
+    private SingleFlight singleFlight;
+    
+    @Autowired
+    private BatchFetcher batchFetcher;
+    
+    @Autowired
+    private OutboxService outboxService;
+    
+    @Autowired
+    private DeltaSyncService deltaSyncService;
+    
+    @Autowired
+    private BitmapIndexService bitmapIndex;
+    
+    @Autowired
+    private ParallelScan parallelScan;
+    
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+    
+    @Autowired
+    private IdAllocator idAllocator;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Value("${app.order-delete.batch-size:500}")
+    private int deleteBatchSize;
+    
+    @Value("${app.order-delete.max-statuses:10}")
+    private int maxDeleteStatuses;
+    
+    private TransactionTemplate chunkTransaction;
+    
+    @PostConstruct
+    public void init() {
+        chunkTransaction = new TransactionTemplate(transactionManager);
+    }
+    
+    public List<Order> getAllOrders(boolean includeArchived) {
+        List<Order> orders = shardRouter.fanOut(() -> loadedOnShard(orderRepository.findAll()), Order::getUserId);
+        return includeArchived ? withArchived(orders, orderArchiveService.findAll()) : orders;
+    }
+    
+    public List<Order> getFilteredOrders(String status, String paymentMethod, boolean includeArchived) {
+        List<Order> orders;
+        if (bitmapIndex.isReady()) {
+            long[] ids = bitmapIndex.findIds("Order", orderCriteria(listOf(status), listOf(paymentMethod)));
+            orders = bitmapIndex.loadAll(ids, orderRepository::findAllById, Order::getId);
+        } else {
+            orders = shardRouter.fanOut(() -> loadedOnShard(parallelScan.filter(orderRepository.findAll(),
+                    o -> matchesAny(o.getStatus(), listOf(status)) && matchesAny(o.getPaymentMethod(), listOf(paymentMethod)))),
+                    Order::getUserId);
+        }
+        orders.forEach(order -> Hibernate.initialize(order.getItems()));
+        if (!includeArchived) {
+            return orders;
+        }
+        List<Order> archived = listOf(status) != null
+                ? orderArchiveService.findByStatus(status)
+                : orderArchiveService.findByPaymentMethod(paymentMethod);
+        return withArchived(orders, archived.stream()
+                .filter(o -> matchesAny(o.getPaymentMethod(), listOf(paymentMethod)))
+                .toList());
+    }
+    
+    // Within an attribute any listed value matches, across attributes all must match
+    public long countOrders(List<String> statuses, List<String> paymentMethods) {
+        if (bitmapIndex.isReady()) {
+            return bitmapIndex.count("Order", orderCriteria(statuses, paymentMethods));
+        }
+        return parallelScan.count(shardRouter.fanOut(orderRepository::findAll, Order::getUserId),
+                o -> matchesAny(o.getStatus(), statuses) && matchesAny(o.getPaymentMethod(), paymentMethods));
+    }
+    
+    // Aggregated by the database; shards return one row per group, merged here. Rows a running bucket
+    // move has copied but not yet deleted are counted on both shards until it finishes
+    public Map<String, DoubleSummaryStatistics> getOrderTotalsByStatus() {
+        return mergeGroups(shardRouter.fanOut(orderRepository::summarizeTotalsByStatus));
+    }
+    
+    public Map<Long, DoubleSummaryStatistics> getItemSubtotalsByProduct() {
+        return mergeGroups(shardRouter.fanOut(orderItemRepository::summarizeSubtotalsByProduct));
+    }
+    
+    private static <K> Map<K, DoubleSummaryStatistics> mergeGroups(List<GroupStatistics<K>> groups) {
+        Map<K, DoubleSummaryStatistics> merged = new TreeMap<>();
+        for (GroupStatistics<K> group : groups) {
+            merged.merge(group.key(), group.toSummaryStatistics(), (a, b) -> {
+                a.combine(b);
+                return a;
+            });
+        }
+        return merged;
+    }
+    
+    public List<OrderSummary> getOrderSummaries() {
+        return shardRouter.fanOutSorted(orderRepository::findAllSummaries, OrderSummary::userId,
+                Comparator.comparing(OrderSummary::id));
+    }
+    
+    public MultiGetResult<Long, Order> getOrdersByIds(List<Long> ids) {
+        return withItems(batchFetcher.multiGet(ids,
+                batch -> shardRouter.fanOut(() -> loadedOnShard(orderRepository.findAllById(batch)), Order::getUserId), Order::getId));
+    }
+    
+    public MultiGetResult<String, Order> getOrdersByOrderNumbers(List<String> orderNumbers) {
+        return withItems(batchFetcher.multiGet(orderNumbers,
+                batch -> shardRouter.fanOut(() -> loadedOnShard(orderRepository.findByOrderNumberIn(batch)), Order::getUserId),
+                Order::getOrderNumber));
     }
     
-    public Optional<Order> getOrderById(Long id) {
-        return orderRepository.findById(id);
+    // The archive is only consulted when asked and the hot table has no match
+    public Optional<Order> getOrderById(Long id, boolean includeArchived) {
+        Optional<Order> order = singleFlight.execute("order.id", id, () -> findOnAnyShard(() -> orderRepository.findById(id)),
+                OrderService::copyOf);
+        return order.isPresent() || !includeArchived ? order : orderArchiveService.findById(id);
     }
     
-    public Optional<Order> getOrderByOrderNumber(String orderNumber) {
-        return orderRepository.findByOrderNumber(orderNumber);
+    public Optional<Order> getOrderByOrderNumber(String orderNumber, boolean includeArchived) {
+        Optional<Order> order = singleFlight.execute("order.number", orderNumber,
+                () -> findOnAnyShard(() -> orderRepository.findByOrderNumber(orderNumber)), OrderService::copyOf);
+        return order.isPresent() || !includeArchived ? order : orderArchiveService.findByOrderNumber(orderNumber);
     }
     
-    public List<Order> getOrdersByUserId(Long userId) {
-        return orderRepository.findByUserId(userId);
+    public List<Order> getOrdersByUserId(Long userId, boolean includeArchived) {
+        List<Order> orders = shardRouter.readForUser(userId, () -> loadedOnShard(orderRepository.findByUserId(userId)));
+        return includeArchived ? withArchived(orders, orderArchiveService.findByUserId(userId)) : orders;
     }
     
-    public List<Order> getOrdersByStatus(String status) {
-        return orderRepository.findByStatus(status);
+    public List<Order> getOrdersByStatus(String status, boolean includeArchived) {
+        List<Order> orders = shardRouter.fanOut(() -> loadedOnShard(orderRepository.findByStatus(status)), Order::getUserId);
+        return includeArchived ? withArchived(orders, orderArchiveService.findByStatus(status)) : orders;
     }
     
     public List<String> getAllStatuses() {
-        return orderRepository.findAllStatuses();
+        return shardRouter.fanOutDistinct(orderRepository::findAllStatuses);
     }
     
+    public DeltaPage<Order> getOrderChanges(String since, int limit) {
+        DeltaPage<Order> page = deltaSyncService.changesSince("Order", since, limit,
+                (after, afterId, until, batch) -> shardRouter.fanOut(
+                        () -> loadedOnShard(orderRepository.findChangesAfter(after, afterId, until, batch)), Order::getUserId),
+                ids -> shardRouter.fanOut(() -> loadedOnShard(orderRepository.findAllById(ids)), Order::getUserId),
+                Order::getUpdatedAt, Order::getId);
+        // Items are part of the synced state; batch fetching loads them with one query per batch of orders
+        page.getChanged().forEach(order -> Hibernate.initialize(order.getItems()));
+        return page;
+    }
+    
+    @Transactional
     public Order createOrder(Order order) {
         order.setId(null); // Ensure new order
-        return orderRepository.save(order);
+        return shardRouter.writeForUser(order.getUserId(), () -> {
+            Order created = orderRepository.save(order);
+            outboxService.record("Order", created.getId(), OutboxService.CREATED, created);
+            return created;
+        });
+    }
+    
+    /**
+     * Inserts a batch of orders with their items, one transaction per shard. Order ids are
+     * allocated up front so the items can carry theirs; ids left over from a failed attempt are
+     * replaced, which makes a rolled back batch safe to retry.
+     */
+    @Transactional
+    public List<Order> createOrders(List<Order> orders) {
+        List<Order> created = new ArrayList<>(orders.size());
+        byShard(orders).forEach((shard, group) -> {
+            created.addAll(shardRouter.onShard(shard, false, () -> {
+                List<Order> saved = new ArrayList<>(group.size());
+                for (Order order : group) {
+                    shardRouter.checkWritable(order.getUserId());
+                    order.setId(idAllocator.next("orders"));
+                    order.getItems().forEach(item -> {
+                        item.setId(null);
+                        item.setOrderId(order.getId());
+                    });
+                    Order persisted = orderRepository.save(order);
+                    outboxService.record("Order", persisted.getId(), OutboxService.CREATED, persisted);
+                    saved.add(persisted);
+                }
+                return saved;
+            }));
+        });
+        return created;
+    }
+    
+    /**
+     * Moves a batch of orders (by order number) to new statuses, one transaction per shard, when
+     * allowed.test(current, target) holds. Returns the reason for every order left unchanged.
+     */
+    @Transactional
+    public Map<String, String> transitionStatuses(Map<String, String> targets, BiPredicate<String, String> allowed,
+                                                  Consumer<Order> onTransition) {
+        Map<String, String> rejected = new HashMap<>();
+        List<Order> orders = shardRouter.fanOut(() -> orderRepository.findByOrderNumberIn(new ArrayList<>(targets.keySet())),
+                Order::getUserId);
+        targets.keySet().stream()
+                .filter(number -> orders.stream().noneMatch(order -> number.equals(order.getOrderNumber())))
+                .forEach(number -> rejected.put(number, "Order not found"));
+        
+        byShard(orders).forEach((shard, group) -> {
+            List<String> numbers = group.stream().map(Order::getOrderNumber).toList();
+            shardRouter.onShard(shard, false, () -> {
+                // Reloaded in this transaction, the fan-out copies are detached
+                for (Order order : orderRepository.findByOrderNumberIn(numbers)) {
+                    String target = targets.get(order.getOrderNumber());
+                    if (!allowed.test(order.getStatus(), target)) {
+                        rejected.put(order.getOrderNumber(), "Cannot change status from " + order.getStatus() + " to " + target);
+                        continue;
+                    }
+                    shardRouter.checkWritable(order.getUserId());
+                    order.setStatus(target);
+                    Hibernate.initialize(order.getItems());
+                    outboxService.record("Order", order.getId(), OutboxService.UPDATED, order);
+                    onTransition.accept(order);
+                }
+                return null;
+            });
+        });
+        return rejected;
     }
     
+    // The status is left alone: changes go through OrderPipelineService, which enforces its transitions
+    @Transactional
     public Optional<Order> updateOrder(Long id, Order updatedOrder) {
-        return orderRepository.findById(id)
+        return onOrderShard(id, () -> orderRepository.findById(id)
                 .map(existingOrder -> {
+                    shardRouter.checkWritable(existingOrder.getUserId());
+                    if (shardRouter.shardOf(updatedOrder.getUserId()) != shardRouter.shardOf(existingOrder.getUserId())) {
+                        throw new IllegalArgumentException("An order cannot be moved to a user on another shard");
+                    }
                     existingOrder.setOrderNumber(updatedOrder.getOrderNumber());
                     existingOrder.setUserId(updatedOrder.getUserId());
                     existingOrder.setTotalAmount(updatedOrder.getTotalAmount());
-                    existingOrder.setStatus(updatedOrder.getStatus());
                     existingOrder.setPaymentMethod(updatedOrder.getPaymentMethod());
                     existingOrder.setShippingAddress(updatedOrder.getShippingAddress());
-                    return orderRepository.save(existingOrder);
-                });
+                    Order saved = orderRepository.save(existingOrder);
+                    outboxService.record("Order", saved.getId(), OutboxService.UPDATED, saved);
+                    return saved;
+                }));
     }
     
+    @Transactional
     public boolean deleteOrder(Long id) {
-        if (orderRepository.existsById(id)) {
-            orderRepository.deleteById(id);
-            return true;
+        return onOrderShard(id, () -> {
+            // Only the owner's bucket can be mid-move; unsharded there is nothing to look up
+            if (shardRouter.isEnabled()) {
+                orderRepository.findUserIdById(id).ifPresent(shardRouter::checkWritable);
+            }
+            return deleteByIds(List.of(id)) > 0 ? Optional.of(true) : Optional.<Boolean>empty();
+        }).orElse(false);
+    }
+    
+    /**
+     * Outcome of a bulk delete; stopped is the reason it ended early, after deleting that many.
+     */
+    public record BulkDeletion(int deleted, String stopped) {
+    }
+    
+    /**
+     * Deletes the orders in any of the statuses placed before the cutoff, on every shard. Works in
+     * chunks of app.order-delete.batch-size, each its own short transaction, so row locks are held
+     * for one chunk at a time and a failure keeps the chunks already deleted, which the result
+     * still counts. Archived orders are not touched.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BulkDeletion deleteOrders(List<String> statuses, LocalDateTime before) {
+        if (statuses == null || statuses.isEmpty() || statuses.stream().anyMatch(status -> status == null || status.isBlank())) {
+            throw new IllegalArgumentException("At least one status is required");
+        }
+        if (statuses.size() > maxDeleteStatuses) {
+            throw new IllegalArgumentException("At most " + maxDeleteStatuses + " statuses can be given");
+        }
+        if (before == null) {
+            throw new IllegalArgumentException("before is required");
         }
-        return false;
+        int shards = shardRouter.isEnabled() ? shardRouter.getShardCount() : 1;
+        AtomicInteger deleted = new AtomicInteger();
+        try {
+            for (int shard = 0; shard < shards; shard++) {
+                deleteChunks(shard, statuses, before, deleted);
+            }
+        } catch (IllegalStateException | DataAccessException | ResponseStatusException e) {
+            String reason = e instanceof ResponseStatusException refused ? refused.getReason() : e.getMessage();
+            log.warn("Stopped deleting orders in {} placed before {} after {}: {}", statuses, before, deleted.get(), reason);
+            return new BulkDeletion(deleted.get(), reason);
+        }
+        log.info("Deleted {} orders in {} placed before {}", deleted.get(), statuses, before);
+        return new BulkDeletion(deleted.get(), null);
+    }
+    
+    private void deleteChunks(int shard, List<String> statuses, LocalDateTime before, AtomicInteger deleted) {
+        int selected;
+        do {
+            Supplier<Integer> chunk = () -> {
+                // Served by the (status, order_date) index, like the archiver's selection. The rows stay locked
+                // until the chunk commits, so an order whose status changed meanwhile is neither deleted nor reported
+                List<Long> ids = orderRepository.lockDeletableIds(statuses, before, PageRequest.of(0, deleteBatchSize));
+                if (ids.isEmpty()) {
+                    return 0;
+                }
+                // A bucket move copies rows it has not reached yet; a delete under it would be undone on the target shard
+                if (shardRouter.isEnabled()) {
+                    shardRouter.checkWritable(orderRepository.findUserIdsByIdIn(ids));
+                }
+                orderItemRepository.deleteByOrderIdIn(ids);
+                if (orderRepository.deleteMatching(ids, statuses, before) != ids.size()) {
+                    throw new IllegalStateException("Orders selected for deletion changed before they were deleted");
+                }
+                recordDeletions(ids);
+                return ids.size();
+            };
+            // Sharded, onShard opens the chunk's transaction on that shard
+            selected = shardRouter.isEnabled() ? shardRouter.onShard(shard, false, chunk) : chunkTransaction.execute(status -> chunk.get());
+            deleted.addAndGet(selected);
+        } while (selected == deleteBatchSize);
+    }
+    
+    // Items then orders, one statement each, instead of loading the orders and removing every item as an orphan
+    private int deleteByIds(List<Long> ids) {
+        orderItemRepository.deleteByOrderIdIn(ids);
+        int deleted = orderRepository.deleteByIdIn(ids);
+        if (deleted > 0) {
+            recordDeletions(ids);
+        }
+        return deleted;
+    }
+    
+    private void recordDeletions(List<Long> ids) {
+        for (Long id : ids) {
+            outboxService.record("Order", id, OutboxService.DELETED, null);
+        }
+    }
+    
+    private Map<String, List<String>> orderCriteria(List<String> statuses, List<String> paymentMethods) {
+        Map<String, List<String>> criteria = new HashMap<>();
+        criteria.put("status", statuses);
+        criteria.put("paymentMethod", paymentMethods);
+        return criteria;
+    }
+    
+    private static List<String> listOf(String value) {
+        return value != null && !value.isEmpty() ? List.of(value) : null;
+    }
+    
+    private static boolean matchesAny(String value, List<String> candidates) {
+        return candidates == null || candidates.isEmpty()
+                || (value != null && candidates.stream().anyMatch(value::equalsIgnoreCase));
+    }
+    
+    // Hot orders first, then archived ones
+    private static List<Order> withArchived(List<Order> hot, List<Order> archived) {
+        List<Order> orders = new ArrayList<>(hot.size() + archived.size());
+        orders.addAll(hot);
+        orders.addAll(archived);
+        return orders;
+    }
+    
+    private Map<Integer, List<Order>> byShard(List<Order> orders) {
+        Map<Integer, List<Order>> byShard = new TreeMap<>();
+        orders.forEach(order -> byShard.computeIfAbsent(shardRouter.shardOf(order.getUserId()), shard -> new ArrayList<>()).add(order));
+        return byShard;
+    }
+    
+    // Rows of a shard transaction are detached once it ends, so their items are loaded inside it
+    private List<Order> loadedOnShard(List<Order> orders) {
+        if (shardRouter.isEnabled()) {
+            orders.forEach(order -> Hibernate.initialize(order.getItems()));
+        }
+        return orders;
+    }
+    
+    private Optional<Order> findOnAnyShard(Supplier<Optional<Order>> finder) {
+        return shardRouter.fanOut(() -> loadedOnShard(finder.get().stream().toList()), Order::getUserId)
+                .stream()
+                .findFirst();
+    }
+    
+    // Orders are only addressed by their own id here, so the shard holding it is looked up first
+    private <T> Optional<T> onOrderShard(Long id, Supplier<Optional<T>> work) {
+        return shardRouter.locate(() -> orderRepository.existsById(id))
+                .flatMap(shard -> shardRouter.onShard(shard, false, work));
+    }
+    
+    private <K> MultiGetResult<K, Order> withItems(MultiGetResult<K, Order> result) {
+        result.getItems().forEach(order -> Hibernate.initialize(order.getItems()));
+        return result;
+    }
+    
+    // Items included, loading them if the leader's session has not yet
+    private static Optional<Order> copyOf(Optional<Order> order) {
+        return order.map(source -> {
+            Order copy = new Order();
+            BeanUtils.copyProperties(source, copy, "items");
+            List<OrderItem> items = new ArrayList<>(source.getItems().size());
+            for (OrderItem item : source.getItems()) {
+                OrderItem itemCopy = new OrderItem();
+                BeanUtils.copyProperties(item, itemCopy);
+                items.add(itemCopy);
+            }
+            copy.setItems(items);
+            return copy;
+        });
     }
 }
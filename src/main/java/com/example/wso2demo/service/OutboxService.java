@@ -0,0 +1,51 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.EntityChangedEvent;
+import com.example.wso2demo.model.OutboxEvent;
+import com.example.wso2demo.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+public class OutboxService {
+    
+    public static final String CREATED = "CREATED";
+    public static final String UPDATED = "UPDATED";
+    public static final String DELETED = "DELETED";
+    // Moved to the order archive; the payload is the order as it was archived
+    public static final String ARCHIVED = "ARCHIVED";
+    
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    // MANDATORY: the event must commit or roll back together with the entity change
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(String aggregateType, Long aggregateId, String eventType, Object state) {
+        OutboxEvent event = new OutboxEvent();
+        event.setAggregateType(aggregateType);
+        event.setAggregateId(aggregateId);
+        event.setEventType(eventType);
+        event.setPayload(state != null ? toJson(state) : null);
+        outboxEventRepository.save(event);
+        eventPublisher.publishEvent(new EntityChangedEvent(aggregateType, aggregateId, eventType, state));
+    }
+    
+    private String toJson(Object state) {
+        try {
+            return objectMapper.writeValueAsString(state);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize outbox payload for " + state.getClass().getSimpleName(), e);
+        }
+    }
+}
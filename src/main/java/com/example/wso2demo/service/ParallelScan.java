@@ -0,0 +1,135 @@
+package com.example.wso2demo.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+
+/**
+ * Single-pass scans over in-memory lists that split across a dedicated, bounded fork-join pool
+ * once the input is large enough to pay for the fork. Below the threshold everything runs
+ * sequentially on the calling thread. The common pool is never used, so scans cannot starve
+ * other parallel-stream users in the JVM and are capped at the configured parallelism.
+ * <p>
+ * The default threshold of 5000 elements comes from ParallelScanBenchmark (src/test): the cheapest
+ * ProductService predicate (category and price range) costs about 8.5 ns per product and the
+ * name search about 50 ns, while a split adds a fixed 4-24 µs of fork, hand-off and join at
+ * 1-4 workers. From 5000 products a scan is ~40 µs, enough for two workers to save more than the
+ * split costs. With a single worker a split never won at any size, so it is not attempted. Re-run
+ * the benchmark on the production hardware before changing app.parallel-scan.threshold.
+ */
+@Component
+public class ParallelScan {
+    
+    @Value("${app.parallel-scan.parallelism:0}")
+    private int parallelism;
+    
+    @Value("${app.parallel-scan.threshold:5000}")
+    private int threshold;
+    
+    private ForkJoinPool pool;
+    
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        pool = new ForkJoinPool(threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("parallel-scan-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+    
+    /**
+     * Elements matching the predicate, in source order.
+     */
+    public <T> List<T> filter(List<T> source, Predicate<? super T> predicate) {
+        return scan(source, (elements, from, to) -> {
+            List<T> matches = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                T element = elements.get(i);
+                if (predicate.test(element)) {
+                    matches.add(element);
+                }
+            }
+            return matches;
+        }, (left, right) -> {
+            left.addAll(right);
+            return left;
+        });
+    }
+    
+    public <T> long count(List<T> source, Predicate<? super T> predicate) {
+        return scan(source, (elements, from, to) -> {
+            long count = 0;
+            for (int i = from; i < to; i++) {
+                if (predicate.test(elements.get(i))) {
+                    count++;
+                }
+            }
+            return count;
+        }, Long::sum);
+    }
+    
+    private <T, R> R scan(List<T> source, RangeFunction<T, R> leaf, BinaryOperator<R> combine) {
+        // One worker only adds the fork and join to the same sequential work
+        if (source.size() < threshold || pool.getParallelism() == 1) {
+            return leaf.apply(source, 0, source.size());
+        }
+        // Ranges are indexed directly, so linked lists are copied once up front
+        List<T> elements = source instanceof RandomAccess ? source : new ArrayList<>(source);
+        // A few leaves per worker keeps them busy when some ranges finish early
+        int leafSize = Math.max(Math.max(1, threshold / 4), elements.size() / (pool.getParallelism() * 4));
+        return pool.invoke(new RangeTask<>(elements, 0, elements.size(), leafSize, leaf, combine));
+    }
+    
+    @FunctionalInterface
+    private interface RangeFunction<T, R> {
+        R apply(List<T> elements, int from, int to);
+    }
+    
+    private static final class RangeTask<T, R> extends RecursiveTask<R> {
+        
+        private final List<T> elements;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+        private final RangeFunction<T, R> leaf;
+        private final BinaryOperator<R> combine;
+        
+        RangeTask(List<T> elements, int from, int to, int leafSize, RangeFunction<T, R> leaf, BinaryOperator<R> combine) {
+            this.elements = elements;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.leaf = leaf;
+            this.combine = combine;
+        }
+        
+        @Override
+        protected R compute() {
+            if (to - from <= leafSize) {
+                return leaf.apply(elements, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            RangeTask<T, R> left = new RangeTask<>(elements, from, middle, leafSize, leaf, combine);
+            RangeTask<T, R> right = new RangeTask<>(elements, middle, to, leafSize, leaf, combine);
+            left.fork();
+            R rightResult = right.compute();
+            return combine.apply(left.join(), rightResult);
+        }
+    }
+}
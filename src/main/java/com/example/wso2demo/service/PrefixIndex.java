@@ -0,0 +1,262 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.Suggestion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Prefix index for typeahead: every normalized word of an entry's text is a posting in a
+ * sorted token array, so the words starting with a prefix are one binary search away and
+ * sit next to each other. Multi-word queries match entries having, for every query word,
+ * some word starting with it; the best entries by popularity win.
+ * <p>
+ * Postings are kept sorted on update by shifting the arrays, like the catalog snapshot's
+ * columns, which is cheap next to the reads this serves. Not thread-safe; callers synchronize.
+ */
+public class PrefixIndex {
+    
+    private static final String[] NO_TOKENS = new String[0];
+    
+    private record Entry(String text, String detail, String[] tokens, long popularity) {
+    }
+    
+    private record Posting(String token, long id) {
+    }
+    
+    private final Map<Long, Entry> entries = new HashMap<>();
+    
+    // Postings sorted by token, then id, except between load() and finishLoad()
+    private String[] tokens;
+    
+    private long[] ids;
+    
+    private int postings;
+    
+    public PrefixIndex(int expectedEntries) {
+        int capacity = Math.max(16, expectedEntries * 2);
+        this.tokens = new String[capacity];
+        this.ids = new long[capacity];
+    }
+    
+    /**
+     * Lower-cased, accent-stripped words of the text, sorted; the same form queries are matched in.
+     */
+    public static String[] tokenize(String... texts) {
+        Set<String> words = new HashSet<>();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            for (String word : KeyMembershipFilter.normalize(text).split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        String[] sorted = words.toArray(NO_TOKENS);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+    
+    /**
+     * Adds or replaces the entry; its words come from indexedTexts, popularity is kept when null.
+     */
+    public void put(long id, String text, String detail, Long popularity, String... indexedTexts) {
+        Entry previous = entries.get(id);
+        long score = popularity != null ? popularity : previous != null ? previous.popularity() : 0;
+        String[] words = tokenize(indexedTexts);
+        // Most updates (stock, price, status) leave the words alone and need no posting changes
+        if (previous == null || !Arrays.equals(previous.tokens(), words)) {
+            if (previous != null) {
+                for (String token : previous.tokens()) {
+                    removePosting(token, id);
+                }
+            }
+            for (String token : words) {
+                addPosting(token, id);
+            }
+        }
+        entries.put(id, new Entry(text, detail, words, score));
+    }
+    
+    /**
+     * Bulk variant of put for entries not in the index yet: postings are appended unsorted and
+     * sorted once by finishLoad(), which must run before any other call.
+     */
+    public void load(long id, String text, String detail, long popularity, String... indexedTexts) {
+        // A user copied by an unfinished bucket move is seen on two shards
+        if (entries.containsKey(id)) {
+            return;
+        }
+        String[] words = tokenize(indexedTexts);
+        for (String token : words) {
+            if (postings == tokens.length) {
+                grow();
+            }
+            tokens[postings] = token;
+            ids[postings] = id;
+            postings++;
+        }
+        entries.put(id, new Entry(text, detail, words, popularity));
+    }
+    
+    public void finishLoad() {
+        Posting[] sorted = new Posting[postings];
+        for (int i = 0; i < postings; i++) {
+            sorted[i] = new Posting(tokens[i], ids[i]);
+        }
+        Arrays.sort(sorted, Comparator.comparing(Posting::token).thenComparingLong(Posting::id));
+        for (int i = 0; i < postings; i++) {
+            tokens[i] = sorted[i].token();
+            ids[i] = sorted[i].id();
+        }
+    }
+    
+    public void remove(long id) {
+        Entry previous = entries.remove(id);
+        if (previous != null) {
+            for (String token : previous.tokens()) {
+                removePosting(token, id);
+            }
+        }
+    }
+    
+    public void addPopularity(long id, long delta) {
+        entries.computeIfPresent(id, (key, entry) ->
+                new Entry(entry.text(), entry.detail(), entry.tokens(), entry.popularity() + delta));
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Up to limit entries matching every word of the query as a prefix, most popular first;
+     * ties go to the shorter text, then the lower id.
+     */
+    public List<Suggestion> suggest(String query, int limit) {
+        String[] words = tokenize(query);
+        if (words.length == 0 || limit <= 0) {
+            return List.of();
+        }
+        // The rarest prefix drives the scan, the others are checked against each candidate's words
+        int driver = 0;
+        int[][] ranges = new int[words.length][];
+        for (int i = 0; i < words.length; i++) {
+            ranges[i] = prefixRange(words[i]);
+            if (ranges[i][0] == ranges[i][1]) {
+                return List.of();
+            }
+            if (ranges[i][1] - ranges[i][0] < ranges[driver][1] - ranges[driver][0]) {
+                driver = i;
+            }
+        }
+        
+        Comparator<Suggestion> rank = Comparator.comparingLong(Suggestion::popularity)
+                .thenComparing(s -> -lengthOf(s.text()))
+                .thenComparing(s -> -s.id());
+        PriorityQueue<Suggestion> best = new PriorityQueue<>(limit + 1, rank);
+        Set<Long> seen = new HashSet<>();
+        for (int p = ranges[driver][0]; p < ranges[driver][1]; p++) {
+            long id = ids[p];
+            if (!seen.add(id)) {
+                continue;
+            }
+            Entry entry = entries.get(id);
+            if (!matchesAll(entry, words, driver)) {
+                continue;
+            }
+            best.add(new Suggestion(id, entry.text(), entry.detail(), entry.popularity()));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<Suggestion> result = new ArrayList<>(best);
+        result.sort(rank.reversed());
+        return result;
+    }
+    
+    private static boolean matchesAll(Entry entry, String[] words, int skip) {
+        for (int i = 0; i < words.length; i++) {
+            if (i == skip) {
+                continue;
+            }
+            boolean found = false;
+            for (String token : entry.tokens()) {
+                if (token.startsWith(words[i])) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int lengthOf(String text) {
+        return text != null ? text.length() : 0;
+    }
+    
+    // [from, to) of the postings whose token starts with the prefix
+    private int[] prefixRange(String prefix) {
+        // Tokens never contain U+FFFF, so it sorts after every token starting with the prefix
+        return new int[] {lowerBound(prefix, Long.MIN_VALUE), lowerBound(prefix + Character.MAX_VALUE, Long.MIN_VALUE)};
+    }
+    
+    // First posting not ordered before (token, id)
+    private int lowerBound(String token, long id) {
+        int low = 0;
+        int high = postings;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = tokens[mid].compareTo(token);
+            if (cmp < 0 || (cmp == 0 && ids[mid] < id)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private void addPosting(String token, long id) {
+        int at = lowerBound(token, id);
+        if (at < postings && tokens[at].equals(token) && ids[at] == id) {
+            return;
+        }
+        if (postings == tokens.length) {
+            grow();
+        }
+        System.arraycopy(tokens, at, tokens, at + 1, postings - at);
+        System.arraycopy(ids, at, ids, at + 1, postings - at);
+        tokens[at] = token;
+        ids[at] = id;
+        postings++;
+    }
+    
+    private void grow() {
+        int capacity = tokens.length + (tokens.length >> 1);
+        tokens = Arrays.copyOf(tokens, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+    }
+    
+    private void removePosting(String token, long id) {
+        int at = lowerBound(token, id);
+        if (at < postings && tokens[at].equals(token) && ids[at] == id) {
+            System.arraycopy(tokens, at + 1, tokens, at, postings - at - 1);
+            System.arraycopy(ids, at + 1, ids, at, postings - at - 1);
+            postings--;
+            tokens[postings] = null;
+        }
+    }
+}
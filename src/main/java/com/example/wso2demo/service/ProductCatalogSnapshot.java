@@ -0,0 +1,611 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.ChangeEvent;
+import com.example.wso2demo.model.ChangesRelayedEvent;
+import com.example.wso2demo.model.EntityChangedEvent;
+import com.example.wso2demo.model.Product;
+import com.example.wso2demo.repository.ProductRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Optional in-memory serving mode for catalog reads. Products are held column-wise in primitive
+ * arrays sorted by id, with category and brand dictionary-encoded to ints, so filters run as a
+ * single array scan and only matching rows are materialized as Product objects. Name, description
+ * and SKU are UTF-8 bytes packed into one array per column rather than a String per row. Columns
+ * cost about 68 bytes per product plus the text itself.
+ * <p>
+ * The snapshot is loaded at startup, kept current from committed local writes and from the
+ * change relay, which also carries the writes of other instances, and reloaded on an interval.
+ * Commits of concurrent transactions can be observed out of order, so a state older than the
+ * row's is ignored, and removed ids are remembered for at least one reload interval so a late
+ * state cannot bring a deleted product back. Ids are never reused.
+ */
+@Service
+public class ProductCatalogSnapshot {
+    
+    private static final Logger log = LoggerFactory.getLogger(ProductCatalogSnapshot.class);
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${app.catalog-snapshot.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.catalog-snapshot.load-page-size:5000}")
+    private int loadPageSize;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // Guarded by lock
+    private Columns columns;
+    
+    // Guarded by lock; non-null while a reload runs, so writes committed meanwhile are re-applied to the new copy
+    private List<Consumer<Columns>> changesDuringReload;
+    
+    // Guarded by lock; when each deleted product was removed, in epoch millis
+    private final Map<Long, Long> removedAt = new HashMap<>();
+    
+    // Start of the last completed reload; removals from before it are forgotten at the next one
+    private long lastReloadStartedAt;
+    
+    private record Change(long id, Product state) {
+        
+        boolean isRemoval() {
+            return state == null;
+        }
+    }
+    
+    private volatile boolean ready;
+    
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("catalog.snapshot.rows", this, ProductCatalogSnapshot::getRowCount)
+                .description("Products held in the in-memory catalog snapshot")
+                .register(meterRegistry);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (enabled) {
+            reload();
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${app.catalog-snapshot.reload-interval-ms:300000}",
+               initialDelayString = "${app.catalog-snapshot.reload-interval-ms:300000}")
+    public void scheduledReload() {
+        if (enabled) {
+            reload();
+        }
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    public int getRowCount() {
+        lock.readLock().lock();
+        try {
+            return columns != null ? columns.size : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public synchronized void reload() {
+        long startedAt = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            changesDuringReload = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        Columns fresh = new Columns(Math.max(16, getRowCount()));
+        try {
+            long afterId = 0;
+            List<Product> page;
+            do {
+                page = productRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, loadPageSize));
+                page.forEach(fresh::upsert);
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == loadPageSize);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changesDuringReload = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("Catalog snapshot reload failed, keeping previous snapshot: {}", e.getMessage());
+            return;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            changesDuringReload.forEach(change -> change.accept(fresh));
+            changesDuringReload = null;
+            columns = fresh;
+            ready = true;
+            // Any late state of these has had a full reload interval to arrive
+            long forgetBefore = lastReloadStartedAt;
+            removedAt.values().removeIf(at -> at < forgetBefore);
+            lastReloadStartedAt = startedAt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Catalog snapshot loaded with {} products", fresh.size);
+    }
+    
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (!enabled || !"Product".equals(event.getAggregateType())) {
+            return;
+        }
+        Product state = OutboxService.DELETED.equals(event.getEventType()) ? null : (Product) event.getState();
+        apply(List.of(new Change(event.getAggregateId(), state)));
+    }
+    
+    // Writes committed by any instance, stock changes included; this instance's own come round again and are not newer
+    @EventListener
+    public void onChangesRelayed(ChangesRelayedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        List<Change> changes = new ArrayList<>();
+        for (ChangeEvent change : event.getChanges()) {
+            if (!"Product".equals(change.getAggregateType())) {
+                continue;
+            }
+            if (OutboxService.DELETED.equals(change.getEventType())) {
+                changes.add(new Change(change.getAggregateId(), null));
+                continue;
+            }
+            if (change.getPayload() == null) {
+                continue;
+            }
+            try {
+                changes.add(new Change(change.getAggregateId(), objectMapper.readValue(change.getPayload(), Product.class)));
+            } catch (JsonProcessingException e) {
+                log.warn("Skipping unreadable payload of product {} change {}: {}", change.getAggregateId(), change.getSequence(), e.getMessage());
+            }
+        }
+        if (!changes.isEmpty()) {
+            apply(changes);
+        }
+    }
+    
+    private void apply(List<Change> changes) {
+        lock.writeLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+            List<Change> applicable = new ArrayList<>();
+            for (Change change : changes) {
+                if (change.isRemoval()) {
+                    removedAt.putIfAbsent(change.id(), now);
+                } else if (removedAt.containsKey(change.id())) {
+                    // A state committed before the delete, observed after it
+                    continue;
+                }
+                applicable.add(change);
+            }
+            Consumer<Columns> update = target -> applicable.forEach(change -> {
+                if (change.isRemoval()) {
+                    target.remove(change.id());
+                } else {
+                    target.upsert(change.state());
+                }
+            });
+            if (columns != null) {
+                update.accept(columns);
+            }
+            if (changesDuringReload != null) {
+                changesDuringReload.add(update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Same semantics as ProductService.getFilteredProducts: null or empty arguments do not filter,
+     * category and brand match ignoring case, search is a case-insensitive substring of the name.
+     */
+    public List<Product> filter(String category, String brand, Double minPrice, Double maxPrice, String search) {
+        lock.readLock().lock();
+        try {
+            Columns c = columns;
+            boolean[] categoryMatch = category != null && !category.isEmpty() ? c.categories.matchIgnoreCase(category) : null;
+            boolean[] brandMatch = brand != null && !brand.isEmpty() ? c.brands.matchIgnoreCase(brand) : null;
+            boolean searching = search != null && !search.isEmpty();
+            
+            List<Product> result = new ArrayList<>();
+            for (int i = 0; i < c.size; i++) {
+                if (categoryMatch != null && (c.categoryCodes[i] < 0 || !categoryMatch[c.categoryCodes[i]])) {
+                    continue;
+                }
+                if (brandMatch != null && (c.brandCodes[i] < 0 || !brandMatch[c.brandCodes[i]])) {
+                    continue;
+                }
+                if (minPrice != null && !(c.prices[i] >= minPrice)) {
+                    continue;
+                }
+                if (maxPrice != null && !(c.prices[i] <= maxPrice)) {
+                    continue;
+                }
+                if (searching && !c.names.containsIgnoreCase(i, search)) {
+                    continue;
+                }
+                result.add(c.toProduct(i));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Matches SQL "stock < threshold": products without a stock value are excluded
+    public List<Product> stockBelow(int threshold) {
+        lock.readLock().lock();
+        try {
+            Columns c = columns;
+            List<Product> result = new ArrayList<>();
+            for (int i = 0; i < c.size; i++) {
+                if (c.stock[i] != Columns.NULL_INT && c.stock[i] < threshold) {
+                    result.add(c.toProduct(i));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private static final class Dictionary {
+        
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        
+        int encode(String value) {
+            if (value == null) {
+                return -1;
+            }
+            return codes.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+        
+        String decode(int code) {
+            return code < 0 ? null : values.get(code);
+        }
+        
+        boolean[] matchIgnoreCase(String value) {
+            boolean[] match = new boolean[values.size()];
+            for (int code = 0; code < match.length; code++) {
+                match[code] = values.get(code).equalsIgnoreCase(value);
+            }
+            return match;
+        }
+    }
+    
+    private static final class Columns {
+        
+        static final int NULL_INT = Integer.MIN_VALUE;
+        static final long NULL_TIME = Long.MIN_VALUE;
+        
+        final Dictionary categories = new Dictionary();
+        final Dictionary brands = new Dictionary();
+        
+        long[] ids;
+        double[] prices;
+        int[] stock;
+        int[] categoryCodes;
+        int[] brandCodes;
+        long[] createdAt;
+        long[] updatedAt;
+        final TextColumn names;
+        final TextColumn descriptions;
+        final TextColumn skus;
+        int size;
+        
+        Columns(int capacity) {
+            ids = new long[capacity];
+            prices = new double[capacity];
+            stock = new int[capacity];
+            categoryCodes = new int[capacity];
+            brandCodes = new int[capacity];
+            createdAt = new long[capacity];
+            updatedAt = new long[capacity];
+            names = new TextColumn(capacity, 32);
+            descriptions = new TextColumn(capacity, 128);
+            skus = new TextColumn(capacity, 16);
+        }
+        
+        void upsert(Product product) {
+            int row = Arrays.binarySearch(ids, 0, size, product.getId());
+            if (row >= 0 && updatedAt[row] != NULL_TIME && toEpochNanos(product.getUpdatedAt()) < updatedAt[row]) {
+                return;
+            }
+            if (row < 0) {
+                row = -row - 1;
+                ensureCapacity(size + 1);
+                // Ids are assigned in increasing order, so this is normally an append
+                shift(row, row + 1, size - row);
+                size++;
+                // After a shift the slot still points at its old neighbour's text
+                names.forget(row);
+                descriptions.forget(row);
+                skus.forget(row);
+            }
+            ids[row] = product.getId();
+            prices[row] = product.getPrice() != null ? product.getPrice() : Double.NaN;
+            stock[row] = product.getStock() != null ? product.getStock() : NULL_INT;
+            categoryCodes[row] = categories.encode(product.getCategory());
+            brandCodes[row] = brands.encode(product.getBrand());
+            createdAt[row] = toEpochNanos(product.getCreatedAt());
+            updatedAt[row] = toEpochNanos(product.getUpdatedAt());
+            names.set(row, product.getName());
+            descriptions.set(row, product.getDescription());
+            skus.set(row, product.getSku());
+        }
+        
+        void remove(long id) {
+            int row = Arrays.binarySearch(ids, 0, size, id);
+            if (row >= 0) {
+                names.clear(row);
+                descriptions.clear(row);
+                skus.clear(row);
+                shift(row + 1, row, size - row - 1);
+                size--;
+                names.forget(size);
+                descriptions.forget(size);
+                skus.forget(size);
+            }
+        }
+        
+        Product toProduct(int row) {
+            return new Product(ids[row], names.get(row), descriptions.get(row),
+                    Double.isNaN(prices[row]) ? null : prices[row],
+                    categories.decode(categoryCodes[row]),
+                    stock[row] == NULL_INT ? null : stock[row],
+                    skus.get(row), brands.decode(brandCodes[row]),
+                    fromEpochNanos(createdAt[row]), fromEpochNanos(updatedAt[row]));
+        }
+        
+        private void shift(int from, int to, int length) {
+            if (length <= 0) {
+                return;
+            }
+            System.arraycopy(ids, from, ids, to, length);
+            System.arraycopy(prices, from, prices, to, length);
+            System.arraycopy(stock, from, stock, to, length);
+            System.arraycopy(categoryCodes, from, categoryCodes, to, length);
+            System.arraycopy(brandCodes, from, brandCodes, to, length);
+            System.arraycopy(createdAt, from, createdAt, to, length);
+            System.arraycopy(updatedAt, from, updatedAt, to, length);
+            names.shift(from, to, length);
+            descriptions.shift(from, to, length);
+            skus.shift(from, to, length);
+        }
+        
+        private void ensureCapacity(int required) {
+            if (required <= ids.length) {
+                return;
+            }
+            int capacity = Math.max(required, ids.length + (ids.length >> 1));
+            ids = Arrays.copyOf(ids, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            stock = Arrays.copyOf(stock, capacity);
+            categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+            brandCodes = Arrays.copyOf(brandCodes, capacity);
+            createdAt = Arrays.copyOf(createdAt, capacity);
+            updatedAt = Arrays.copyOf(updatedAt, capacity);
+            names.ensureCapacity(capacity);
+            descriptions.ensureCapacity(capacity);
+            skus.ensureCapacity(capacity);
+        }
+        
+        private static long toEpochNanos(LocalDateTime time) {
+            if (time == null) {
+                return NULL_TIME;
+            }
+            return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+        }
+        
+        private static LocalDateTime fromEpochNanos(long nanos) {
+            if (nanos == NULL_TIME) {
+                return null;
+            }
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+                    (int) Math.floorMod(nanos, 1_000_000_000L), ZoneOffset.UTC);
+        }
+    }
+    
+    /**
+     * A text column as UTF-8 bytes in one array, addressed by per-row offset and length; a null
+     * value has length -1. Replaced values leave their old bytes behind until the column has more
+     * garbage than live text, then it is compacted in place.
+     */
+    private static final class TextColumn {
+        
+        private byte[] data;
+        private int used;
+        private int live;
+        private int[] offsets;
+        private int[] lengths;
+        
+        TextColumn(int capacity, int bytesPerRow) {
+            data = new byte[Math.max(64, capacity * bytesPerRow)];
+            offsets = new int[capacity];
+            lengths = new int[capacity];
+            Arrays.fill(lengths, -1);
+        }
+        
+        String get(int row) {
+            int length = lengths[row];
+            return length < 0 ? null : new String(data, offsets[row], length, StandardCharsets.UTF_8);
+        }
+        
+        void set(int row, String value) {
+            clear(row);
+            if (value == null) {
+                lengths[row] = -1;
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (used + bytes.length > data.length) {
+                if (used - live > live) {
+                    compact();
+                }
+                if (used + bytes.length > data.length) {
+                    data = Arrays.copyOf(data, Math.max(used + bytes.length, data.length + (data.length >> 1)));
+                }
+            }
+            System.arraycopy(bytes, 0, data, used, bytes.length);
+            offsets[row] = used;
+            lengths[row] = bytes.length;
+            used += bytes.length;
+            live += bytes.length;
+        }
+        
+        // The row's bytes become garbage; shift() then moves the following rows over it
+        void clear(int row) {
+            if (lengths[row] > 0) {
+                live -= lengths[row];
+            }
+            lengths[row] = -1;
+        }
+        
+        // Same semantics as String.regionMatches(true, ...) over every start position
+        boolean containsIgnoreCase(int row, String part) {
+            int length = lengths[row];
+            if (length < 0) {
+                return false;
+            }
+            int offset = offsets[row];
+            if (isAscii(part) && isAscii(offset, length)) {
+                // ASCII on both sides: compare bytes, no String is built for the row
+                int last = offset + length - part.length();
+                for (int start = offset; start <= last; start++) {
+                    if (regionMatchesAscii(start, part)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            String value = new String(data, offset, length, StandardCharsets.UTF_8);
+            for (int start = 0; start <= value.length() - part.length(); start++) {
+                if (value.regionMatches(true, start, part, 0, part.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        // Unlinks a slot that does not own its text, e.g. one vacated or duplicated by shift()
+        void forget(int row) {
+            lengths[row] = -1;
+        }
+        
+        void shift(int from, int to, int length) {
+            System.arraycopy(offsets, from, offsets, to, length);
+            System.arraycopy(lengths, from, lengths, to, length);
+        }
+        
+        void ensureCapacity(int capacity) {
+            int previous = lengths.length;
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            Arrays.fill(lengths, previous, capacity, -1);
+        }
+        
+        // Rows keep their order in the array, so live bytes are moved down in offset order
+        private void compact() {
+            Integer[] rows = new Integer[offsets.length];
+            int count = 0;
+            for (int row = 0; row < offsets.length; row++) {
+                if (lengths[row] > 0) {
+                    rows[count++] = row;
+                }
+            }
+            Arrays.sort(rows, 0, count, (a, b) -> Integer.compare(offsets[a], offsets[b]));
+            int next = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                System.arraycopy(data, offsets[row], data, next, lengths[row]);
+                offsets[row] = next;
+                next += lengths[row];
+            }
+            used = next;
+            live = next;
+        }
+        
+        private boolean regionMatchesAscii(int start, String part) {
+            for (int i = 0; i < part.length(); i++) {
+                int a = data[start + i];
+                int b = part.charAt(i);
+                if (a != b && toLowerAscii(a) != toLowerAscii(b)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private boolean isAscii(int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (data[i] < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private static boolean isAscii(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private static int toLowerAscii(int c) {
+            return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+        }
+    }
+}
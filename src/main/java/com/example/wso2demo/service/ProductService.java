@@ -1,23 +1,84 @@
 package com.example.wso2demo.service;
 
+import com.example.wso2demo.model.DeltaPage;
+import com.example.wso2demo.model.MultiGetResult;
 import com.example.wso2demo.model.Product;
+import com.example.wso2demo.model.ProductSummary;
+import com.example.wso2demo.model.Suggestion;
 import com.example.wso2demo.repository.ProductRepository;
+import com.example.wso2demo.service.BulkImportService.UpsertResult;
 import jakarta.annotation.PostConstruct;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Predicate;
 
 @Service
-@Transactional
+@Transactional(readOnly = true)
 public class ProductService {
     
+    /**
+     * Columns a product import may carry; rows are matched on sku.
+     */
+    public static final List<String> IMPORT_COLUMNS = List.of("sku", "name", "description", "price", "category", "stock", "brand");
+    
+    // Concurrent stock updates can commit in another order than their timestamps were taken; never moving
+    // updated_at backwards lets in-memory views drop a state older than the one they hold
+    private static final String MONOTONIC_UPDATED_AT = "updated_at = CASE WHEN updated_at IS NULL OR updated_at < ? THEN ? ELSE updated_at END";
+    
     @Autowired
     private ProductRepository productRepository;
     
+    @Autowired
+    private SingleFlight singleFlight;
+    
+    @Autowired
+    private BatchFetcher batchFetcher;
+    
+    @Autowired
+    private OutboxService outboxService;
+    
+    @Autowired
+    private DeltaSyncService deltaSyncService;
+    
+    @Autowired
+    private WriteBehindService writeBehindService;
+    
+    @Autowired
+    private ProductCatalogSnapshot catalogSnapshot;
+    
+    @Autowired
+    private BitmapIndexService bitmapIndex;
+    
+    @Autowired
+    private ParallelScan parallelScan;
+    
+    @Autowired
+    private SuggestionIndex suggestionIndex;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private SecondLevelCacheService secondLevelCacheService;
+    
+    @Value("${app.import.batch-size:500}")
+    private int importBatchSize;
+    
     @PostConstruct
     public void init() {
         // Sample data will be loaded from MySQL script
@@ -29,47 +90,84 @@ public class ProductService {
     }
     
     public List<Product> getFilteredProducts(String category, String brand, Double minPrice, Double maxPrice, String search) {
-        List<Product> products = productRepository.findAll();
+        if (catalogSnapshot.isReady()) {
+            return catalogSnapshot.filter(category, brand, minPrice, maxPrice, search);
+        }
+        
+        List<Product> products;
+        if (bitmapIndex.isReady() && (hasText(category) || hasText(brand))) {
+            long[] ids = bitmapIndex.findIds("Product", productCriteria(listOf(category), listOf(brand)));
+            products = bitmapIndex.loadAll(ids, productRepository::findAllById, Product::getId);
+        } else {
+            products = productRepository.findAll();
+        }
+        
+        // All filters are fused into one predicate so the list is scanned once
+        Predicate<Product> filter = p -> true;
         
         if (category != null && !category.isEmpty()) {
-            products = products.stream()
-                    .filter(p -> p.getCategory() != null && p.getCategory().equalsIgnoreCase(category))
-                    .collect(Collectors.toList());
+            filter = filter.and(p -> p.getCategory() != null && p.getCategory().equalsIgnoreCase(category));
         }
         
         if (brand != null && !brand.isEmpty()) {
-            products = products.stream()
-                    .filter(p -> p.getBrand() != null && p.getBrand().equalsIgnoreCase(brand))
-                    .collect(Collectors.toList());
+            filter = filter.and(p -> p.getBrand() != null && p.getBrand().equalsIgnoreCase(brand));
         }
         
         if (minPrice != null) {
-            products = products.stream()
-                    .filter(p -> p.getPrice() >= minPrice)
-                    .collect(Collectors.toList());
+            filter = filter.and(p -> p.getPrice() >= minPrice);
         }
         
         if (maxPrice != null) {
-            products = products.stream()
-                    .filter(p -> p.getPrice() <= maxPrice)
-                    .collect(Collectors.toList());
+            filter = filter.and(p -> p.getPrice() <= maxPrice);
         }
         
         if (search != null && !search.isEmpty()) {
-            products = products.stream()
-                    .filter(p -> p.getName().toLowerCase().contains(search.toLowerCase()))
-                    .collect(Collectors.toList());
+            String needle = search.toLowerCase();
+            filter = filter.and(p -> p.getName().toLowerCase().contains(needle));
         }
         
-        return products;
+        return parallelScan.filter(products, filter);
+    }
+    
+    // Within an attribute any listed value matches, across attributes all must match
+    public long countProducts(List<String> categories, List<String> brands) {
+        if (bitmapIndex.isReady()) {
+            return bitmapIndex.count("Product", productCriteria(categories, brands));
+        }
+        return parallelScan.count(productRepository.findAll(),
+                p -> matchesAny(p.getCategory(), categories) && matchesAny(p.getBrand(), brands));
+    }
+    
+    public List<ProductSummary> getProductSummaries() {
+        return productRepository.findAllSummaries();
+    }
+    
+    public MultiGetResult<Long, Product> getProductsByIds(List<Long> ids) {
+        return batchFetcher.multiGet(ids, productRepository::findAllById, Product::getId);
+    }
+    
+    public MultiGetResult<String, Product> getProductsBySkus(List<String> skus) {
+        return batchFetcher.multiGet(skus, productRepository::findBySkuIn, Product::getSku);
     }
     
     public Optional<Product> getProductById(Long id) {
-        return productRepository.findById(id);
+        return singleFlight.execute("product.id", id, () -> productRepository.findById(id), ProductService::copyOf);
+    }
+    
+    public List<Suggestion> suggestProducts(String prefix, int limit) {
+        suggestionIndex.checkRequest(prefix, limit);
+        if (suggestionIndex.isReady()) {
+            return suggestionIndex.suggestProducts(prefix, limit);
+        }
+        // Without the index: the name search of getFilteredProducts, unranked
+        return getFilteredProducts(null, null, null, null, prefix.trim()).stream()
+                .limit(limit)
+                .map(p -> new Suggestion(p.getId(), p.getName(), p.getBrand(), 0))
+                .toList();
     }
     
     public Optional<Product> getProductBySku(String sku) {
-        return productRepository.findBySku(sku);
+        return singleFlight.execute("product.sku", sku, () -> productRepository.findBySku(sku), ProductService::copyOf);
     }
     
     public List<Product> getProductsByCategory(String category) {
@@ -81,14 +179,26 @@ public class ProductService {
     }
     
     public List<Product> getLowStockProducts(Integer threshold) {
+        if (catalogSnapshot.isReady()) {
+            return catalogSnapshot.stockBelow(threshold);
+        }
         return productRepository.findByStockLessThan(threshold);
     }
     
+    public DeltaPage<Product> getProductChanges(String since, int limit) {
+        return deltaSyncService.changesSince("Product", since, limit, productRepository::findChangesAfter,
+                productRepository::findAllById, Product::getUpdatedAt, Product::getId);
+    }
+    
+    @Transactional
     public Product createProduct(Product product) {
         product.setId(null); // Ensure new product
-        return productRepository.save(product);
+        Product created = productRepository.save(product);
+        outboxService.record("Product", created.getId(), OutboxService.CREATED, created);
+        return created;
     }
     
+    @Transactional
     public Optional<Product> updateProduct(Long id, Product updatedProduct) {
         return productRepository.findById(id)
                 .map(existingProduct -> {
@@ -99,18 +209,135 @@ public class ProductService {
                     existingProduct.setStock(updatedProduct.getStock());
                     existingProduct.setSku(updatedProduct.getSku());
                     existingProduct.setBrand(updatedProduct.getBrand());
-                    return productRepository.save(existingProduct);
+                    Product saved = productRepository.save(existingProduct);
+                    outboxService.record("Product", saved.getId(), OutboxService.UPDATED, saved);
+                    return saved;
                 });
     }
     
+    // Single UPDATE instead of read-modify-write, so concurrent adjustments cannot lose each other
+    @Transactional
+    public Optional<Product> adjustStock(Long id, int delta) {
+        if (!addStock(id, delta, LocalDateTime.now())) {
+            return Optional.empty();
+        }
+        return productRepository.findById(id)
+                .map(product -> {
+                    outboxService.record("Product", product.getId(), OutboxService.UPDATED, product);
+                    return product;
+                });
+    }
+    
+    /**
+     * Adds delta (possibly negative) to the stock in the caller's transaction. JDBC because a JPQL
+     * bulk update drops the whole products cache region; only this row is evicted. A refused
+     * UPDATE (e.g. out of range) leaves the caller's transaction usable, so write-behind can set
+     * that one update aside under a savepoint and commit the rest.
+     */
+    @Transactional(noRollbackFor = DataAccessException.class)
+    public boolean addStock(Long id, int delta, LocalDateTime now) {
+        Timestamp at = Timestamp.valueOf(now);
+        return stockUpdated(id, jdbcTemplate.update("UPDATE products SET stock = COALESCE(stock, 0) + ?, " + MONOTONIC_UPDATED_AT
+                + " WHERE id = ?", delta, at, at, id));
+    }
+    
+    // Only takes stock that is there, so concurrent reservations cannot oversell
+    @Transactional(noRollbackFor = DataAccessException.class)
+    public boolean reserveStock(Long id, int quantity, LocalDateTime now) {
+        Timestamp at = Timestamp.valueOf(now);
+        return stockUpdated(id, jdbcTemplate.update("UPDATE products SET stock = stock - ?, " + MONOTONIC_UPDATED_AT
+                + " WHERE id = ? AND stock >= ?", quantity, at, at, id, quantity));
+    }
+    
+    private boolean stockUpdated(Long id, int rows) {
+        if (rows == 0) {
+            return false;
+        }
+        // The UPDATE bypassed Hibernate, so a cached copy would otherwise be re-read and served stale
+        secondLevelCacheService.evict(Product.class, List.of(id));
+        return true;
+    }
+    
+    public boolean queueStockAdjustment(Long id, int delta) {
+        if (!productRepository.existsById(id)) {
+            return false;
+        }
+        writeBehindService.adjustStock(id, delta);
+        return true;
+    }
+    
+    @Transactional
     public boolean deleteProduct(Long id) {
-        if (productRepository.existsById(id)) {
-            productRepository.deleteById(id);
+        // One statement instead of exists + load + delete; JDBC because a JPQL bulk delete drops the whole cache region
+        if (jdbcTemplate.update("DELETE FROM products WHERE id = ?", id) > 0) {
+            secondLevelCacheService.evict(Product.class, List.of(id));
+            outboxService.record("Product", id, OutboxService.DELETED, null);
             return true;
         }
         return false;
     }
     
+    /**
+     * Inserts or updates the products by sku in one transaction. The SKUs must be distinct.
+     * Plain JDBC batches: IDENTITY ids keep Hibernate from batching the INSERTs.
+     */
+    @Transactional
+    public UpsertResult upsertProducts(List<Product> products) {
+        // Matched ignoring case, as MySQL compares SKUs
+        Map<String, Long> existing = new HashMap<>();
+        productRepository.findSummariesBySkuIn(products.stream().map(Product::getSku).toList())
+                .forEach(summary -> existing.put(summary.sku().toLowerCase(Locale.ROOT), summary.id()));
+        List<Product> inserts = new ArrayList<>();
+        Map<Long, Product> updates = new HashMap<>();
+        for (Product product : products) {
+            Long id = existing.get(product.getSku().toLowerCase(Locale.ROOT));
+            if (id != null) {
+                updates.put(id, product);
+            } else {
+                inserts.add(product);
+            }
+        }
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE products SET name = ?, description = ?, price = ?, category = ?, stock = ?, brand = ?, updated_at = ? WHERE id = ?",
+                    updates.entrySet(), importBatchSize, (ps, entry) -> {
+                        Product product = entry.getValue();
+                        ps.setString(1, product.getName());
+                        ps.setString(2, product.getDescription());
+                        ps.setDouble(3, product.getPrice());
+                        ps.setString(4, product.getCategory());
+                        ps.setObject(5, product.getStock(), Types.INTEGER);
+                        ps.setString(6, product.getBrand());
+                        ps.setTimestamp(7, now);
+                        ps.setLong(8, entry.getKey());
+                    });
+            // The UPDATE bypassed Hibernate, so cached copies would otherwise be re-read below and served stale
+            secondLevelCacheService.evict(Product.class, updates.keySet());
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO products (sku, name, description, price, category, stock, brand, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    inserts, importBatchSize, (ps, product) -> {
+                        ps.setString(1, product.getSku());
+                        ps.setString(2, product.getName());
+                        ps.setString(3, product.getDescription());
+                        ps.setDouble(4, product.getPrice());
+                        ps.setString(5, product.getCategory());
+                        ps.setObject(6, product.getStock(), Types.INTEGER);
+                        ps.setString(7, product.getBrand());
+                        ps.setTimestamp(8, now);
+                        ps.setTimestamp(9, now);
+                    });
+            // No cached entity to drop, but cached query results (by category, brand) now miss the new rows
+            secondLevelCacheService.evict(Product.class, List.of());
+        }
+        
+        productRepository.findBySkuIn(products.stream().map(Product::getSku).toList())
+                .forEach(product -> outboxService.record("Product", product.getId(),
+                        updates.containsKey(product.getId()) ? OutboxService.UPDATED : OutboxService.CREATED, product));
+        return new UpsertResult(inserts.size(), updates.size());
+    }
+    
     public List<String> getAllCategories() {
         return productRepository.findAllCategories();
     }
@@ -118,4 +345,33 @@ public class ProductService {
     public List<String> getAllBrands() {
         return productRepository.findAllBrands();
     }
+    
+    private Map<String, List<String>> productCriteria(List<String> categories, List<String> brands) {
+        Map<String, List<String>> criteria = new HashMap<>();
+        criteria.put("category", categories);
+        criteria.put("brand", brands);
+        return criteria;
+    }
+    
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
+    }
+    
+    private static List<String> listOf(String value) {
+        return hasText(value) ? List.of(value) : null;
+    }
+    
+    private static boolean matchesAny(String value, List<String> candidates) {
+        return candidates == null || candidates.isEmpty()
+                || (value != null && candidates.stream().anyMatch(value::equalsIgnoreCase));
+    }
+    
+    // Products have no lazy associations; a shallow copy detaches it from the loading session
+    private static Optional<Product> copyOf(Optional<Product> product) {
+        return product.map(source -> {
+            Product copy = new Product();
+            BeanUtils.copyProperties(source, copy);
+            return copy;
+        });
+    }
 }
@@ -0,0 +1,293 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.Order;
+import com.example.wso2demo.model.OrderItem;
+import com.example.wso2demo.model.Product;
+import com.example.wso2demo.model.QueryRequest;
+import com.example.wso2demo.model.User;
+import com.example.wso2demo.repository.OrderItemRepository;
+import com.example.wso2demo.repository.OrderRepository;
+import com.example.wso2demo.repository.ProductRepository;
+import com.example.wso2demo.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Resolves field-selection queries over products, users and orders. Each requested relation is
+ * loaded with one batched IN query for all parents at that level (a data loader), so a page of
+ * orders with items, products and users costs four queries regardless of its size. Roots are
+ * limited in the query itself and each relation refuses to load more than max-related-rows.
+ */
+@Service
+@Transactional(readOnly = true)
+public class QueryService {
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private OrderRepository orderRepository;
+    
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+    
+    @Autowired
+    private BatchFetcher batchFetcher;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Value("${app.query.default-limit:100}")
+    private int defaultLimit;
+    
+    @Value("${app.query.max-limit:1000}")
+    private int maxLimit;
+    
+    @Value("${app.query.max-depth:4}")
+    private int maxDepth;
+    
+    @Value("${app.query.max-related-rows:5000}")
+    private int maxRelatedRows;
+    
+    private final Map<String, EntityType> types = new HashMap<>();
+    
+    // Root names accepted in QueryRequest.entity
+    private final Map<String, String> roots = Map.of("products", "Product", "users", "User", "orders", "Order");
+    
+    @PostConstruct
+    public void init() {
+        EntityType product = register(new EntityType("Product", Product.class, productRepository));
+        product.where.put("category", (value, page) -> productRepository.findByCategory(String.valueOf(value), page));
+        product.where.put("brand", (value, page) -> productRepository.findByBrand(String.valueOf(value), page));
+        
+        EntityType user = register(new EntityType("User", User.class, userRepository));
+        user.where.put("country", (value, page) -> userRepository.findByCountry(String.valueOf(value), page));
+        user.where.put("status", (value, page) -> userRepository.findByStatus(String.valueOf(value), page));
+        user.relations.put("orders", new Relation<>("Order", true, User::getId, orderRepository::findByUserIdIn, Order::getUserId));
+        
+        EntityType order = register(new EntityType("Order", Order.class, orderRepository));
+        order.where.put("userId", (value, page) -> orderRepository.findByUserId(toLong(value), page));
+        order.where.put("status", (value, page) -> orderRepository.findByStatus(String.valueOf(value), page));
+        order.relations.put("items", new Relation<>("OrderItem", true, Order::getId, orderItemRepository::findByOrderIdIn, OrderItem::getOrderId));
+        // To-one relations return at most one row per key, which the parent limit already bounds
+        order.relations.put("user", new Relation<>("User", false, Order::getUserId, (ids, page) -> userRepository.findAllById(ids), User::getId));
+        
+        EntityType item = register(new EntityType("OrderItem", OrderItem.class, orderItemRepository));
+        item.relations.put("product", new Relation<>("Product", false, OrderItem::getProductId, (ids, page) -> productRepository.findAllById(ids), Product::getId));
+    }
+    
+    public List<Map<String, Object>> execute(QueryRequest request) {
+        String typeName = roots.get(request.getEntity());
+        if (typeName == null) {
+            throw new IllegalArgumentException("Unknown entity '" + request.getEntity() + "', expected one of " + roots.keySet());
+        }
+        // Relations are resolved with plain repository calls, which would only see shard 0
+        if (shardRouter.isEnabled() && !"Product".equals(typeName)) {
+            throw new IllegalArgumentException(request.getEntity() + " is sharded and cannot be queried here, use its REST endpoints");
+        }
+        EntityType type = types.get(typeName);
+        int limit = request.getLimit() != null ? request.getLimit() : defaultLimit;
+        if (limit < 1 || limit > maxLimit) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxLimit);
+        }
+        
+        Selection selection = parse(type, request.getFields(), 1);
+        List<?> entities = loadRoots(type, request, limit);
+        return resolve(type, entities, selection);
+    }
+    
+    private List<?> loadRoots(EntityType type, QueryRequest request, int limit) {
+        List<?> entities;
+        if (request.getIds() != null && !request.getIds().isEmpty()) {
+            batchFetcher.checkRequestSize(request.getIds().size());
+            List<Long> ids = request.getIds().stream().distinct().limit(limit).toList();
+            Map<Object, Object> byId = new HashMap<>();
+            batchFetcher.fetch(ids, type.repository::findAllById)
+                    .forEach(entity -> byId.put(type.read("id", entity), entity));
+            entities = ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+        } else if (request.getWhere() != null && !request.getWhere().isEmpty()) {
+            if (request.getWhere().size() > 1) {
+                throw new IllegalArgumentException("Only one where condition is supported, got " + request.getWhere().keySet());
+            }
+            Map.Entry<String, Object> condition = request.getWhere().entrySet().iterator().next();
+            BiFunction<Object, Pageable, List<?>> finder = type.where.get(condition.getKey());
+            if (finder == null) {
+                throw new IllegalArgumentException("Cannot filter " + request.getEntity() + " by '" + condition.getKey()
+                        + "', expected one of " + type.where.keySet());
+            }
+            entities = finder.apply(condition.getValue(), PageRequest.of(0, limit, Sort.by("id")));
+        } else {
+            entities = type.repository.findAll(PageRequest.of(0, limit, Sort.by("id"))).getContent();
+        }
+        return entities;
+    }
+    
+    private Selection parse(EntityType type, List<Object> fields, int depth) {
+        Selection selection = new Selection(new ArrayList<>(), new LinkedHashMap<>());
+        if (fields == null || fields.isEmpty()) {
+            selection.fields().addAll(type.fields.keySet());
+            return selection;
+        }
+        for (Object field : fields) {
+            if (field instanceof String name) {
+                if (type.fields.containsKey(name)) {
+                    selection.fields().add(name);
+                } else {
+                    selection.relations().put(name, parseRelation(type, name, null, depth));
+                }
+            } else if (field instanceof Map<?, ?> nested) {
+                for (Map.Entry<?, ?> entry : nested.entrySet()) {
+                    if (!(entry.getValue() instanceof List<?> subFields)) {
+                        throw new IllegalArgumentException("Fields of relation '" + entry.getKey() + "' must be a list");
+                    }
+                    String name = String.valueOf(entry.getKey());
+                    selection.relations().put(name, parseRelation(type, name, new ArrayList<>(subFields), depth));
+                }
+            } else {
+                throw new IllegalArgumentException("Fields must be names or {relation: [fields]} objects, got " + field);
+            }
+        }
+        return selection;
+    }
+    
+    private Selection parseRelation(EntityType type, String name, List<Object> fields, int depth) {
+        Relation<?, ?> relation = type.relations.get(name);
+        if (relation == null) {
+            throw new IllegalArgumentException("Unknown field '" + name + "' on " + type.name
+                    + ", expected one of " + type.fields.keySet() + " or relations " + type.relations.keySet());
+        }
+        if (depth >= maxDepth) {
+            throw new IllegalArgumentException("Selection is nested deeper than " + maxDepth + " levels");
+        }
+        return parse(types.get(relation.target()), fields, depth + 1);
+    }
+    
+    private List<Map<String, Object>> resolve(EntityType type, List<?> entities, Selection selection) {
+        List<Map<String, Object>> rows = new ArrayList<>(entities.size());
+        for (Object entity : entities) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            selection.fields().forEach(field -> row.put(field, type.read(field, entity)));
+            rows.add(row);
+        }
+        
+        selection.relations().forEach((name, childSelection) -> {
+            Relation<?, ?> relation = type.relations.get(name);
+            List<Long> keys = entities.stream().map(relation::parentKey).filter(Objects::nonNull).distinct().toList();
+            List<?> children = keys.isEmpty() ? List.of() : loadRelated(name, relation, keys);
+            List<Map<String, Object>> childRows = resolve(types.get(relation.target()), children, childSelection);
+            
+            Map<Long, List<Map<String, Object>>> rowsByKey = new HashMap<>();
+            for (int i = 0; i < children.size(); i++) {
+                rowsByKey.computeIfAbsent(relation.childKey(children.get(i)), k -> new ArrayList<>()).add(childRows.get(i));
+            }
+            for (int i = 0; i < entities.size(); i++) {
+                List<Map<String, Object>> matched = rowsByKey.getOrDefault(relation.parentKey(entities.get(i)), List.of());
+                rows.get(i).put(name, relation.many() ? matched : (matched.isEmpty() ? null : matched.get(0)));
+            }
+        });
+        return rows;
+    }
+    
+    // Each chunk reads one row past the cap, so an oversized relation is refused without loading it whole
+    private <C> List<C> loadRelated(String name, Relation<?, C> relation, List<Long> keys) {
+        Pageable page = PageRequest.of(0, maxRelatedRows + 1, Sort.by("id"));
+        List<C> children = batchFetcher.fetch(keys, chunk -> relation.loader().apply(chunk, page));
+        if (children.size() > maxRelatedRows) {
+            throw new IllegalArgumentException("Relation '" + name + "' matches more than " + maxRelatedRows
+                    + " rows, lower the limit or narrow the where condition");
+        }
+        return children;
+    }
+    
+    private EntityType register(EntityType type) {
+        types.put(type.name, type);
+        return type;
+    }
+    
+    private static Long toLong(Object value) {
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        try {
+            return Long.valueOf(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number, got " + value);
+        }
+    }
+    
+    private record Selection(List<String> fields, Map<String, Selection> relations) {
+    }
+    
+    private record Relation<P, C>(String target,
+                                  boolean many,
+                                  Function<P, Long> parentKeyFn,
+                                  BiFunction<List<Long>, Pageable, List<C>> loader,
+                                  Function<C, Long> childKeyFn) {
+        
+        @SuppressWarnings("unchecked")
+        Long parentKey(Object parent) {
+            return parentKeyFn.apply((P) parent);
+        }
+        
+        @SuppressWarnings("unchecked")
+        Long childKey(Object child) {
+            return childKeyFn.apply((C) child);
+        }
+    }
+    
+    private static final class EntityType {
+        
+        private final String name;
+        private final JpaRepository<?, Long> repository;
+        // Scalar properties only; collections are reachable through relations so they are never lazily loaded by accident
+        private final Map<String, PropertyDescriptor> fields = new LinkedHashMap<>();
+        private final Map<String, Relation<?, ?>> relations = new LinkedHashMap<>();
+        private final Map<String, BiFunction<Object, Pageable, List<?>>> where = new LinkedHashMap<>();
+        
+        EntityType(String name, Class<?> javaType, JpaRepository<?, Long> repository) {
+            this.name = name;
+            this.repository = repository;
+            // Declaration order, so unselected queries list fields the way the entity JSON does
+            for (Field field : javaType.getDeclaredFields()) {
+                PropertyDescriptor property = BeanUtils.getPropertyDescriptor(javaType, field.getName());
+                if (property != null && property.getReadMethod() != null && !Modifier.isStatic(field.getModifiers())
+                        && !Collection.class.isAssignableFrom(property.getPropertyType())) {
+                    fields.put(property.getName(), property);
+                }
+            }
+        }
+        
+        Object read(String field, Object entity) {
+            try {
+                return fields.get(field).getReadMethod().invoke(entity);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Could not read " + name + "." + field, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.wso2demo.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket keyed by client ID and endpoint group.
+ * Each bucket is a single AtomicLong holding the "theoretical arrival time" (GCRA),
+ * so acquiring a token is one CAS and buckets never share a lock.
+ */
+@Service
+public class RateLimiterService {
+    
+    @Value("${app.rate-limit.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${app.rate-limit.read.requests-per-second:50}")
+    private double readRequestsPerSecond;
+    
+    @Value("${app.rate-limit.read.burst:100}")
+    private int readBurst;
+    
+    @Value("${app.rate-limit.write.requests-per-second:10}")
+    private double writeRequestsPerSecond;
+    
+    @Value("${app.rate-limit.write.burst:20}")
+    private int writeBurst;
+    
+    @Value("${app.rate-limit.max-tracked-keys:10000}")
+    private int maxTrackedKeys;
+    
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    
+    /**
+     * Takes one token from the bucket of the given client and endpoint group.
+     *
+     * @return 0 if the request is allowed, otherwise the nanoseconds until a token is available
+     */
+    public long tryAcquire(String clientId, String group, boolean write) {
+        if (!enabled) {
+            return 0;
+        }
+        
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / (write ? writeRequestsPerSecond : readRequestsPerSecond));
+        long tolerance = interval * ((write ? writeBurst : readBurst) - 1);
+        long now = System.nanoTime();
+        
+        AtomicLong bucket = bucketFor(clientId + "|" + group, now);
+        while (true) {
+            long arrival = bucket.get();
+            long base = Math.max(arrival, now);
+            if (base - now > tolerance) {
+                return base - now - tolerance;
+            }
+            if (bucket.compareAndSet(arrival, base + interval)) {
+                return 0;
+            }
+        }
+    }
+    
+    public int getTrackedKeys() {
+        return buckets.size();
+    }
+    
+    private AtomicLong bucketFor(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxTrackedKeys) {
+            evictIdleBuckets(now);
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+    
+    // A bucket whose arrival time is in the past is full again and equivalent to a new one
+    private void evictIdleBuckets(long now) {
+        if (sweeping.compareAndSet(false, true)) {
+            try {
+                buckets.entrySet().removeIf(entry -> entry.getValue().get() <= now);
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.config.ShardRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves one virtual bucket (the users hashing to it with their orders and items) to another
+ * shard. The source's fence for the bucket is taken first: that waits for write transactions
+ * still running there and refuses any later one, whatever bucket map the writing instance holds.
+ * Rows are then copied keeping their ids, the target is given the bucket under a new epoch and
+ * the bucket map is switched. The source rows are deleted after a grace period, for instances
+ * still reading with the old map. Fan-out reads ignore rows on a shard that does not own their
+ * bucket, so the copies are never returned twice. A move that fails before the switch leaves the
+ * bucket on its old shard and can simply be retried.
+ */
+@Service
+public class ReshardingService {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReshardingService.class);
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private ObjectProvider<ShardRoutingDataSource> shardRoutingDataSource;
+    
+    @Value("${app.sharding.move-batch-size:500}")
+    private int batchSize;
+    
+    // Reads only: instances that have not refreshed their bucket map yet keep reading the source this long
+    @Value("${app.sharding.source-grace-ms:10000}")
+    private long sourceGraceMs;
+    
+    public synchronized Map<String, Integer> moveBucket(int bucket, int targetShard) {
+        if (!shardRouter.isEnabled()) {
+            throw new IllegalStateException("Sharding is not enabled");
+        }
+        if (bucket < 0 || bucket >= shardRouter.getBucketCount()) {
+            throw new IllegalArgumentException("Bucket must be between 0 and " + (shardRouter.getBucketCount() - 1));
+        }
+        if (targetShard < 0 || targetShard >= shardRouter.getShardCount()) {
+            throw new IllegalArgumentException("Target shard must be between 0 and " + (shardRouter.getShardCount() - 1));
+        }
+        int sourceShard = shardRouter.shardOfBucket(bucket);
+        if (sourceShard == targetShard) {
+            throw new IllegalArgumentException("Bucket " + bucket + " is already on shard " + targetShard);
+        }
+        
+        ShardRoutingDataSource routing = shardRoutingDataSource.getObject();
+        Shard source = new Shard(routing.getShard(sourceShard));
+        Shard target = new Shard(routing.getShard(targetShard));
+        Map<String, Integer> moved = new LinkedHashMap<>();
+        moved.put("users", 0);
+        moved.put("orders", 0);
+        moved.put("orderItems", 0);
+        
+        log.info("Moving bucket {} from shard {} to shard {}", bucket, sourceShard, targetShard);
+        long epoch = shardRouter.epochOfBucket(bucket) + 1;
+        shardRouter.markMoving(bucket, true);
+        List<List<Long>> batches;
+        try {
+            // Blocks until write transactions holding the fence on the source have committed
+            source.transaction.executeWithoutResult(status -> fence(source, bucket, shardRouter.epochOfBucket(bucket), false));
+            batches = userBatches(source, bucket);
+            for (List<Long> userIds : batches) {
+                copy(source, target, userIds, moved);
+            }
+            target.transaction.executeWithoutResult(status -> fence(target, bucket, epoch, true));
+            shardRouter.assignBucket(bucket, targetShard, epoch);
+        } catch (RuntimeException e) {
+            restore(source, target, bucket);
+            throw e;
+        }
+        
+        // Writes are fenced, but instances that have not refreshed their bucket map yet still read the source
+        try {
+            Thread.sleep(sourceGraceMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Bucket {} moved to shard {}; interrupted before removing it from shard {}", bucket, targetShard, sourceShard);
+            return moved;
+        }
+        
+        // The bucket now reads from the target; leftovers on the source are invisible, so a failure here only wastes space
+        try {
+            for (List<Long> userIds : batches) {
+                source.transaction.executeWithoutResult(status -> delete(source, userIds));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Bucket {} moved to shard {}, but removing it from shard {} failed: {}",
+                    bucket, targetShard, sourceShard, e.getMessage());
+        }
+        log.info("Moved bucket {} to shard {}: {}", bucket, targetShard, moved);
+        return moved;
+    }
+    
+    // Keyset scan over the source's users, keeping those hashing to the bucket
+    private List<List<Long>> userBatches(Shard source, int bucket) {
+        List<List<Long>> batches = new ArrayList<>();
+        List<Long> batch = new ArrayList<>();
+        long afterId = 0;
+        List<Long> page;
+        do {
+            page = source.jdbc.queryForList("SELECT id FROM users WHERE id > :afterId ORDER BY id LIMIT :limit",
+                    new MapSqlParameterSource("afterId", afterId).addValue("limit", batchSize), Long.class);
+            for (Long userId : page) {
+                if (shardRouter.bucketOf(userId) == bucket) {
+                    batch.add(userId);
+                    if (batch.size() == batchSize) {
+                        batches.add(batch);
+                        batch = new ArrayList<>();
+                    }
+                }
+                afterId = userId;
+            }
+        } while (page.size() == batchSize);
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+    
+    private void copy(Shard source, Shard target, List<Long> userIds, Map<String, Integer> moved) {
+        MapSqlParameterSource users = new MapSqlParameterSource("ids", userIds);
+        List<Map<String, Object>> userRows = source.jdbc.queryForList("SELECT * FROM users WHERE id IN (:ids)", users);
+        List<Map<String, Object>> orderRows = source.jdbc.queryForList("SELECT * FROM orders WHERE user_id IN (:ids)", users);
+        List<Long> orderIds = orderRows.stream().map(row -> ((Number) row.get("id")).longValue()).toList();
+        List<Map<String, Object>> itemRows = orderIds.isEmpty() ? List.of()
+                : source.jdbc.queryForList("SELECT * FROM order_items WHERE order_id IN (:ids)",
+                        new MapSqlParameterSource("ids", orderIds));
+        
+        target.transaction.executeWithoutResult(status -> {
+            // Rows of an earlier attempt that failed before the switch are replaced
+            delete(target, userIds);
+            insert(target, "users", userRows);
+            insert(target, "orders", orderRows);
+            insert(target, "order_items", itemRows);
+        });
+        moved.merge("users", userRows.size(), Integer::sum);
+        moved.merge("orders", orderRows.size(), Integer::sum);
+        moved.merge("orderItems", itemRows.size(), Integer::sum);
+    }
+    
+    private void fence(Shard shard, int bucket, long epoch, boolean owned) {
+        MapSqlParameterSource fence = new MapSqlParameterSource("bucket", bucket)
+                .addValue("epoch", epoch)
+                .addValue("owned", owned);
+        if (shard.jdbc.update("UPDATE bucket_fences SET epoch = :epoch, owned = :owned WHERE bucket = :bucket", fence) == 0) {
+            shard.jdbc.update("INSERT INTO bucket_fences (bucket, epoch, owned) VALUES (:bucket, :epoch, :owned)", fence);
+        }
+    }
+    
+    // Back to the bucket's placement before the move; the target's copies stay invisible and are replaced by a retry
+    private void restore(Shard source, Shard target, int bucket) {
+        try {
+            target.transaction.executeWithoutResult(status -> fence(target, bucket, shardRouter.epochOfBucket(bucket), false));
+            source.transaction.executeWithoutResult(status -> fence(source, bucket, shardRouter.epochOfBucket(bucket), true));
+        } finally {
+            shardRouter.markMoving(bucket, false);
+        }
+    }
+    
+    private void delete(Shard shard, List<Long> userIds) {
+        MapSqlParameterSource users = new MapSqlParameterSource("ids", userIds);
+        shard.jdbc.update("DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE user_id IN (:ids))", users);
+        shard.jdbc.update("DELETE FROM orders WHERE user_id IN (:ids)", users);
+        shard.jdbc.update("DELETE FROM users WHERE id IN (:ids)", users);
+    }
+    
+    private void insert(Shard shard, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + String.join(", ", columns.stream().map(column -> ":" + column).toList()) + ")";
+        shard.jdbc.batchUpdate(sql, rows.stream().map(MapSqlParameterSource::new).toArray(MapSqlParameterSource[]::new));
+    }
+    
+    // Direct access to one shard's pool, bypassing the routing DataSource and the JPA transaction
+    private static final class Shard {
+        private final NamedParameterJdbcTemplate jdbc;
+        private final TransactionTemplate transaction;
+        
+        private Shard(DataSource dataSource) {
+            this.jdbc = new NamedParameterJdbcTemplate(dataSource);
+            this.transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        }
+    }
+}
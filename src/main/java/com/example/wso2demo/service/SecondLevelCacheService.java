@@ -0,0 +1,112 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.Product;
+import com.example.wso2demo.model.User;
+import com.example.wso2demo.repository.ProductRepository;
+import com.example.wso2demo.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Eviction and statistics for the Hibernate second-level cache. Writes through JPA keep the
+ * cache current on their own (bulk JPQL updates drop the whole entity region); writes that go
+ * around Hibernate, such as JDBC batch updates, must evict what they changed here.
+ */
+@Service
+public class SecondLevelCacheService {
+    
+    private static final Map<Class<?>, String> QUERY_REGIONS = Map.of(
+            Product.class, ProductRepository.QUERY_CACHE_REGION,
+            User.class, UserRepository.QUERY_CACHE_REGION
+    );
+    
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    
+    @Value("${app.second-level-cache.enabled:false}")
+    private boolean enabled;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    // Drops the given rows and the cached query results over their table
+    public void evict(Class<?> entityType, Collection<?> ids) {
+        if (!enabled) {
+            return;
+        }
+        Cache cache = cache();
+        ids.forEach(id -> cache.evictEntityData(entityType, id));
+        String queryRegion = QUERY_REGIONS.get(entityType);
+        if (queryRegion != null) {
+            cache.evictQueryRegion(queryRegion);
+        }
+    }
+    
+    public void evictRegion(String region) {
+        if (!enabled) {
+            throw new IllegalStateException("Second-level cache is not enabled");
+        }
+        if (!getRegionNames().contains(region)) {
+            throw new IllegalArgumentException("Unknown cache region " + region);
+        }
+        cache().evictRegion(region);
+    }
+    
+    public void evictAll() {
+        if (enabled) {
+            cache().evictAll();
+        }
+    }
+    
+    public Set<String> getRegionNames() {
+        return new TreeSet<>(List.of(statistics().getSecondLevelCacheRegionNames()));
+    }
+    
+    public Map<String, Map<String, Number>> getRegionStatistics() {
+        Map<String, Map<String, Number>> regions = new LinkedHashMap<>();
+        if (!enabled) {
+            return regions;
+        }
+        Statistics statistics = statistics();
+        for (String region : getRegionNames()) {
+            CacheRegionStatistics stats = statistics.getCacheRegionStatistics(region);
+            if (stats == null) {
+                continue;
+            }
+            long lookups = stats.getHitCount() + stats.getMissCount();
+            Map<String, Number> values = new LinkedHashMap<>();
+            values.put("hits", stats.getHitCount());
+            values.put("misses", stats.getMissCount());
+            values.put("puts", stats.getPutCount());
+            values.put("hitRatio", lookups == 0 ? 0.0 : (double) stats.getHitCount() / lookups);
+            // JCache does not report region sizes, Hibernate then returns a negative marker
+            if (stats.getElementCountInMemory() >= 0) {
+                values.put("entries", stats.getElementCountInMemory());
+            }
+            regions.put(region, values);
+        }
+        return regions;
+    }
+    
+    private Cache cache() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    }
+    
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+}
@@ -0,0 +1,476 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.config.ShardRoutingDataSource;
+import com.example.wso2demo.model.BucketFence;
+import com.example.wso2demo.model.ShardBucket;
+import com.example.wso2demo.repository.BucketFenceRepository;
+import com.example.wso2demo.repository.ShardBucketRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Places users, and with them their orders and order items, on shards: a user id hashes to one of
+ * a fixed number of virtual buckets and the global shard_buckets table maps buckets to shards, so
+ * resharding moves whole buckets instead of rehashing every user. Work for one user runs in its
+ * own transaction on that user's shard; cross-shard reads fan out in parallel and are merged.
+ * Writes are fenced on the shard itself: each shard's bucket_fences row says whether it owns the
+ * bucket and since which epoch, so an instance whose bucket map is stale is refused instead of
+ * writing to a shard the bucket has left. With sharding disabled every method simply runs the
+ * work in the caller's transaction.
+ */
+@Service
+public class ShardRouter {
+    
+    private static final Logger log = LoggerFactory.getLogger(ShardRouter.class);
+    
+    @Autowired
+    private ObjectProvider<ShardRoutingDataSource> shardRoutingDataSource;
+    
+    @Autowired
+    private ShardBucketRepository shardBucketRepository;
+    
+    @Autowired
+    private BucketFenceRepository bucketFenceRepository;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Value("${app.sharding.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.sharding.buckets:256}")
+    private int bucketCount;
+    
+    @Value("${app.sharding.bucket-refresh-ms:5000}")
+    private long bucketRefreshMs;
+    
+    private int shardCount = 1;
+    
+    private volatile int[] bucketShards = new int[0];
+    
+    private volatile long[] bucketEpochs = new long[0];
+    
+    private volatile Set<Integer> movingBuckets = Set.of();
+    
+    private TransactionTemplate readTransaction;
+    
+    private TransactionTemplate writeTransaction;
+    
+    private ExecutorService fanOutPool;
+    
+    private ScheduledExecutorService refreshScheduler;
+    
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        ShardRoutingDataSource routing = shardRoutingDataSource.getIfAvailable();
+        if (routing == null) {
+            throw new IllegalStateException("app.sharding.enabled is set but no ShardRoutingDataSource is configured");
+        }
+        shardCount = routing.getShardCount();
+        
+        // Each unit of shard work gets its own transaction, bound to the connection of that shard
+        readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        readTransaction.setReadOnly(true);
+        writeTransaction = new TransactionTemplate(transactionManager);
+        writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        fanOutPool = Executors.newFixedThreadPool(shardCount * 2, runnable -> {
+            Thread thread = new Thread(runnable, "shard-fan-out-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        loadBuckets(true);
+        createFences();
+        
+        // Its own thread, so the refresh is never held up behind the other scheduled jobs
+        refreshScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-bucket-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refreshScheduler.scheduleWithFixedDelay(this::refreshBuckets, bucketRefreshMs, bucketRefreshMs, TimeUnit.MILLISECONDS);
+        log.info("Sharding enabled: {} shards, {} buckets", shardCount, bucketCount);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (fanOutPool != null) {
+            fanOutPool.shutdown();
+        }
+        if (refreshScheduler != null) {
+            refreshScheduler.shutdownNow();
+        }
+    }
+    
+    // Picks up bucket moves done by other instances
+    public void refreshBuckets() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            loadBuckets(false);
+        } catch (RuntimeException e) {
+            log.warn("Shard bucket refresh failed, keeping the previous map: {}", e.getMessage());
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public int getShardCount() {
+        return shardCount;
+    }
+    
+    public int getBucketCount() {
+        return bucketCount;
+    }
+    
+    public int bucketOf(Long userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("User id is required to pick a shard");
+        }
+        // murmur3 finalizer, so consecutive ids spread evenly over the buckets
+        long h = userId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) Math.floorMod(h, (long) bucketCount);
+    }
+    
+    public int shardOf(Long userId) {
+        return enabled ? shardOfBucket(bucketOf(userId)) : ShardRoutingDataSource.GLOBAL_SHARD;
+    }
+    
+    public int shardOfBucket(int bucket) {
+        return bucketShards[bucket];
+    }
+    
+    public long epochOfBucket(int bucket) {
+        return bucketEpochs[bucket];
+    }
+    
+    public Set<Integer> getMovingBuckets() {
+        return movingBuckets;
+    }
+    
+    // Shard -> number of buckets it owns
+    public Map<Integer, Integer> getBucketsPerShard() {
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            counts.put(shard, 0);
+        }
+        for (int shard : bucketShards) {
+            counts.merge(shard, 1, Integer::sum);
+        }
+        return counts;
+    }
+    
+    public <T> T readForUser(Long userId, Supplier<T> work) {
+        return enabled ? onShard(shardOf(userId), true, work) : work.get();
+    }
+    
+    public <T> T writeForUser(Long userId, Supplier<T> work) {
+        if (!enabled) {
+            return work.get();
+        }
+        return onShard(shardOf(userId), false, () -> {
+            checkWritable(userId);
+            return work.get();
+        });
+    }
+    
+    /**
+     * Refuses writes for the user while its bucket is being moved, as the copy on the target shard
+     * would miss them. Called inside a shard write transaction it also checks and share-locks that
+     * shard's fence for the bucket, so the answer holds until the transaction ends.
+     */
+    public void checkWritable(Long userId) {
+        checkWritable(List.of(userId));
+    }
+    
+    public void checkWritable(Collection<Long> userIds) {
+        if (!enabled) {
+            return;
+        }
+        Set<Integer> buckets = new TreeSet<>();
+        for (Long userId : userIds) {
+            int bucket = bucketOf(userId);
+            if (movingBuckets.contains(bucket)) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Shard bucket " + bucket + " is being moved, retry shortly");
+            }
+            buckets.add(bucket);
+        }
+        Integer shard = ShardRoutingDataSource.currentShard();
+        if (shard != null && !buckets.isEmpty() && TransactionSynchronizationManager.isActualTransactionActive()) {
+            checkFences(shard, buckets);
+        }
+    }
+    
+    private void checkFences(int shard, Set<Integer> buckets) {
+        Map<Integer, BucketFence> fences = new HashMap<>();
+        bucketFenceRepository.lockShared(buckets).forEach(fence -> fences.put(fence.getBucket(), fence));
+        for (int bucket : buckets) {
+            BucketFence fence = fences.get(bucket);
+            if (fence == null || !fence.isOwned() || fence.getEpoch() != bucketEpochs[bucket] || bucketShards[bucket] != shard) {
+                // This instance's map is behind a move; fetch the new one now rather than at the next refresh
+                refreshScheduler.execute(this::refreshBuckets);
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Shard bucket " + bucket + " has moved, retry shortly");
+            }
+        }
+    }
+    
+    public <T> T onShard(int shard, boolean readOnly, Supplier<T> work) {
+        if (!enabled) {
+            return work.get();
+        }
+        Integer previous = ShardRoutingDataSource.currentShard();
+        ShardRoutingDataSource.useShard(shard);
+        try {
+            return (readOnly ? readTransaction : writeTransaction).execute(status -> work.get());
+        } finally {
+            ShardRoutingDataSource.useShard(previous);
+        }
+    }
+    
+    /**
+     * Runs the query on every shard in parallel and concatenates the results in shard order.
+     */
+    public <T> List<T> fanOut(Supplier<List<T>> work) {
+        return fanOut(work, null);
+    }
+    
+    /**
+     * As {@link #fanOut(Supplier)}, keeping only rows whose user the bucket map places on the shard
+     * they came from, so rows left behind or already copied by a bucket move are not returned twice.
+     */
+    public <T> List<T> fanOut(Supplier<List<T>> work, Function<T, Long> userId) {
+        if (!enabled) {
+            return work.get();
+        }
+        List<T> merged = new ArrayList<>();
+        List<List<T>> perShard = onAllShards(work);
+        for (int shard = 0; shard < perShard.size(); shard++) {
+            for (T row : perShard.get(shard)) {
+                if (userId == null || shardOf(userId.apply(row)) == shard) {
+                    merged.add(row);
+                }
+            }
+        }
+        return merged;
+    }
+    
+    // Shards return their part already ordered; the merged list is ordered again only when sharded
+    public <T> List<T> fanOutSorted(Supplier<List<T>> work, Function<T, Long> userId, Comparator<? super T> order) {
+        if (!enabled) {
+            return work.get();
+        }
+        List<T> merged = fanOut(work, userId);
+        merged.sort(order);
+        return merged;
+    }
+    
+    public <T extends Comparable<T>> List<T> fanOutDistinct(Supplier<List<T>> work) {
+        if (!enabled) {
+            return work.get();
+        }
+        return new ArrayList<>(new TreeSet<>(fanOut(work)));
+    }
+    
+    /**
+     * Splits the user ids by shard and runs the query once per shard with that shard's ids, in parallel.
+     */
+    public <T> List<T> forUsers(Collection<Long> userIds, Function<List<Long>, List<T>> query) {
+        if (!enabled) {
+            return query.apply(new ArrayList<>(userIds));
+        }
+        Map<Integer, List<Long>> byShard = new LinkedHashMap<>();
+        for (Long userId : userIds) {
+            byShard.computeIfAbsent(shardOf(userId), shard -> new ArrayList<>()).add(userId);
+        }
+        List<Future<List<T>>> futures = new ArrayList<>();
+        byShard.forEach((shard, ids) -> futures.add(fanOutPool.submit(() -> onShard(shard, true, () -> query.apply(ids)))));
+        List<T> merged = new ArrayList<>();
+        futures.forEach(future -> merged.addAll(await(future)));
+        return merged;
+    }
+    
+    /**
+     * The shard holding a row only known by its own id (e.g. an order id), found by asking every shard.
+     */
+    public Optional<Integer> locate(BooleanSupplier present) {
+        if (!enabled) {
+            return Optional.of(ShardRoutingDataSource.GLOBAL_SHARD);
+        }
+        List<Boolean> found = onAllShards(() -> present.getAsBoolean());
+        for (int shard = 0; shard < found.size(); shard++) {
+            if (found.get(shard)) {
+                return Optional.of(shard);
+            }
+        }
+        return Optional.empty();
+    }
+    
+    // Housekeeping that has to run against each shard's own tables
+    public <T> List<T> onEachShard(Supplier<T> work) {
+        if (!enabled) {
+            return List.of(work.get());
+        }
+        List<T> results = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            results.add(onShard(shard, false, work));
+        }
+        return results;
+    }
+    
+    void markMoving(int bucket, boolean moving) {
+        updateBucket(bucket, shardOfBucket(bucket), moving, epochOfBucket(bucket));
+    }
+    
+    void assignBucket(int bucket, int shard, long epoch) {
+        updateBucket(bucket, shard, false, epoch);
+    }
+    
+    private void updateBucket(int bucket, int shard, boolean moving, long epoch) {
+        onShard(ShardRoutingDataSource.GLOBAL_SHARD, false,
+                () -> shardBucketRepository.save(new ShardBucket(bucket, shard, moving, epoch)));
+        // The change is made; a failed reload only leaves this instance to pick it up at the next refresh
+        refreshBuckets();
+    }
+    
+    private <T> List<T> onAllShards(Supplier<T> work) {
+        if (shardCount == 1) {
+            return List.of(onShard(0, true, work));
+        }
+        List<Future<T>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int target = shard;
+            futures.add(fanOutPool.submit(() -> onShard(target, true, work)));
+        }
+        List<T> results = new ArrayList<>(shardCount);
+        futures.forEach(future -> results.add(await(future)));
+        return results;
+    }
+    
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a shard", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Shard query failed", e.getCause());
+        }
+    }
+    
+    private synchronized void loadBuckets(boolean initialize) {
+        List<ShardBucket> buckets = onShard(ShardRoutingDataSource.GLOBAL_SHARD, true, shardBucketRepository::findAll);
+        if (buckets.isEmpty() && initialize) {
+            buckets = createBuckets();
+        }
+        if (buckets.size() != bucketCount) {
+            throw new IllegalStateException("shard_buckets has " + buckets.size() + " buckets but app.sharding.buckets is "
+                    + bucketCount + "; the bucket count cannot change once users are placed");
+        }
+        int[] shards = new int[bucketCount];
+        long[] epochs = new long[bucketCount];
+        Set<Integer> moving = new HashSet<>();
+        for (ShardBucket bucket : buckets) {
+            if (bucket.getShard() < 0 || bucket.getShard() >= shardCount) {
+                throw new IllegalStateException("Bucket " + bucket.getBucket() + " is placed on shard " + bucket.getShard()
+                        + " but only " + shardCount + " shards are configured");
+            }
+            shards[bucket.getBucket()] = bucket.getShard();
+            epochs[bucket.getBucket()] = bucket.getEpoch();
+            if (bucket.isMoving()) {
+                moving.add(bucket.getBucket());
+            }
+        }
+        bucketShards = shards;
+        bucketEpochs = epochs;
+        movingBuckets = Set.copyOf(moving);
+    }
+    
+    // First start: spread the buckets round-robin; another instance may have won the race
+    private List<ShardBucket> createBuckets() {
+        List<ShardBucket> buckets = new ArrayList<>(bucketCount);
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            buckets.add(new ShardBucket(bucket, bucket % shardCount, false, 0));
+        }
+        try {
+            return onShard(ShardRoutingDataSource.GLOBAL_SHARD, false, () -> shardBucketRepository.saveAll(buckets));
+        } catch (DataIntegrityViolationException e) {
+            return onShard(ShardRoutingDataSource.GLOBAL_SHARD, true, shardBucketRepository::findAll);
+        }
+    }
+    
+    // Every shard needs a fence row per bucket before writers can lock it; missing ones follow the bucket map
+    private void createFences() {
+        for (int shard = 0; shard < shardCount; shard++) {
+            int owner = shard;
+            try {
+                onShard(shard, false, () -> {
+                    Set<Integer> present = new HashSet<>();
+                    bucketFenceRepository.findAll().forEach(fence -> present.add(fence.getBucket()));
+                    List<BucketFence> missing = new ArrayList<>();
+                    for (int bucket = 0; bucket < bucketCount; bucket++) {
+                        if (!present.contains(bucket)) {
+                            missing.add(new BucketFence(bucket, bucketEpochs[bucket], bucketShards[bucket] == owner));
+                        }
+                    }
+                    return bucketFenceRepository.saveAll(missing);
+                });
+            } catch (DataIntegrityViolationException e) {
+                // Another instance starting at the same time created them
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.config.ReadWriteRoutingDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collapses concurrent identical lookups into one database fetch. The first caller for a key
+ * runs the loader, callers arriving while it is in flight wait for and share its result.
+ * Nothing is retained once the fetch completes, so this is not a cache: a caller arriving
+ * after completion always triggers a fresh load.
+ * <p>
+ * Callers only share a fetch with callers whose reads go to the same place, so one that must
+ * read its own writes from the primary never gets a result read from a replica. A caller waits
+ * for the fetch in flight up to the join timeout, then runs the loader itself, so a stuck
+ * query holds up only the caller that started it.
+ * <p>
+ * Loaded entities belong to the loading thread's session, so they are never handed out
+ * shared: the leader publishes a detached copy and every waiting caller gets its own copy
+ * of that, with lazy associations the copy function needs already initialized by the leader.
+ */
+@Component
+public class SingleFlight {
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${app.single-flight.join-timeout-ms:1000}")
+    private long joinTimeoutMs;
+    
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    
+    private final LongAdder executed = new LongAdder();
+    
+    private final LongAdder coalesced = new LongAdder();
+    
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("singleflight.coalescing.ratio", this, SingleFlight::getCoalescingRatio)
+                .description("Share of lookups that were served by another caller's in-flight fetch")
+                .register(meterRegistry);
+        Gauge.builder("singleflight.in_flight", inFlight, ConcurrentHashMap::size)
+                .description("Distinct keys currently being fetched")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Runs loader, or waits for the identical load already running. copy must return a value
+     * sharing no mutable state or session-bound entity with its argument.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String namespace, Object key, Supplier<T> loader, UnaryOperator<T> copy) {
+        String target = ReadWriteRoutingDataSource.readsFromPrimary() ? ReadWriteRoutingDataSource.PRIMARY : "replica";
+        String flightKey = namespace + ":" + target + ":" + key;
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, created);
+        
+        if (existing != null) {
+            try {
+                T shared = (T) existing.get(joinTimeoutMs, TimeUnit.MILLISECONDS);
+                coalesced.increment();
+                meterRegistry.counter("singleflight.calls", "name", namespace, "outcome", "coalesced").increment();
+                return copy.apply(shared);
+            } catch (TimeoutException e) {
+                // The leader is stuck; this caller's own fetch is not held up by it
+                executed.increment();
+                meterRegistry.counter("singleflight.calls", "name", namespace, "outcome", "join_timeout").increment();
+                return loader.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for " + flightKey, e);
+            }
+        }
+        
+        executed.increment();
+        meterRegistry.counter("singleflight.calls", "name", namespace, "outcome", "executed").increment();
+        try {
+            T result = loader.get();
+            // Copied on the leader's thread, while its session can still initialize what the copy touches
+            created.complete(copy.apply(result));
+            return result;
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, created);
+        }
+    }
+    
+    public double getCoalescingRatio() {
+        long shared = coalesced.sum();
+        long total = shared + executed.sum();
+        return total == 0 ? 0.0 : (double) shared / total;
+    }
+}
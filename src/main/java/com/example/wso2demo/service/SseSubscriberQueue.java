@@ -0,0 +1,115 @@
+package com.example.wso2demo.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One Server-Sent Events subscriber's outgoing events: producers only offer to a bounded queue,
+ * the blocking emitter sends run on a shared sender pool, at most one at a time per subscriber.
+ * A slow client therefore only delays itself. A subscriber whose queue is full has fallen behind
+ * and is disconnected; clients resume from the last event id they received.
+ */
+public class SseSubscriberQueue {
+    
+    private final SseEmitter emitter;
+    
+    private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+    
+    private final Executor sender;
+    
+    private final Runnable onClose;
+    
+    private final AtomicBoolean draining = new AtomicBoolean();
+    
+    private final AtomicBoolean closed = new AtomicBoolean();
+    
+    public SseSubscriberQueue(SseEmitter emitter, int capacity, Executor sender, Runnable onClose) {
+        this.emitter = emitter;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.sender = sender;
+        this.onClose = onClose;
+        emitter.onCompletion(this::closed);
+        emitter.onTimeout(this::closed);
+        emitter.onError(error -> closed());
+    }
+    
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+    
+    /**
+     * Queues the event for sending. Returns false, disconnecting the subscriber, when its queue
+     * is full; also false once it is closed.
+     */
+    public boolean offer(SseEmitter.SseEventBuilder event) {
+        if (closed.get()) {
+            return false;
+        }
+        if (!queue.offer(event)) {
+            close(new IOException("Subscriber fell behind by " + queue.size() + " events"));
+            return false;
+        }
+        drain();
+        return true;
+    }
+    
+    // Nothing queued or being sent; producers pace catch-up reads on this
+    public boolean isIdle() {
+        return queue.isEmpty() && !draining.get();
+    }
+    
+    public boolean isClosed() {
+        return closed.get();
+    }
+    
+    public void close(Throwable error) {
+        if (closed()) {
+            emitter.completeWithError(error);
+        }
+    }
+    
+    private void drain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sender.execute(this::sendQueued);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            close(e);
+        }
+    }
+    
+    private void sendQueued() {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while (!closed.get() && (event = queue.poll()) != null) {
+                emitter.send(event);
+            }
+        } catch (IOException | IllegalStateException e) {
+            close(e);
+        } finally {
+            draining.set(false);
+        }
+        // An event offered after the last poll but before draining was reset would otherwise wait for the next offer
+        if (!closed.get() && !queue.isEmpty()) {
+            drain();
+        }
+    }
+    
+    // True for the call that closed it
+    private boolean closed() {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        queue.clear();
+        onClose.run();
+        return true;
+    }
+}
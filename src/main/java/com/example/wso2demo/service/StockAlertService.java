@@ -0,0 +1,367 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.EntityChangedEvent;
+import com.example.wso2demo.model.Product;
+import com.example.wso2demo.model.ProductStockLevel;
+import com.example.wso2demo.model.StockAlert;
+import com.example.wso2demo.repository.ProductRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes low-stock alerts to Server-Sent Events subscribers instead of having dashboards poll
+ * /products/low-stock. Each subscription is a threshold over all products, some categories or
+ * some SKUs; subscriptions are indexed by scope and threshold, so a committed stock change only
+ * looks at the thresholds between its old and new value.
+ * <p>
+ * Changes arrive from the Product events every stock write path records. Writes made by other
+ * instances are picked up by an interval reconcile over a stock projection of the products.
+ * Alerts wait in a bounded per-subscriber queue and are sent from a small sender pool, so the
+ * scheduler never blocks on a client; a subscriber that lets its queue fill up is disconnected.
+ */
+@Service
+public class StockAlertService {
+    
+    private static final Logger log = LoggerFactory.getLogger(StockAlertService.class);
+    
+    private static final String ALL_PRODUCTS = "*";
+    
+    // Pushes a subscriber may have waiting to be sent before it counts as fallen behind
+    private static final int QUEUED_PUSHES = 8;
+    
+    private static final class Subscriber {
+        private final int threshold;
+        private final List<String> scopes;
+        // Alerts raised since the last push
+        private final BlockingQueue<StockAlert> pending;
+        private SseSubscriberQueue events;
+        
+        private Subscriber(int threshold, List<String> scopes, int capacity) {
+            this.threshold = threshold;
+            this.scopes = scopes;
+            this.pending = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+    
+    // What alerts need of a product; the latest one seen per product is the "old" side of every crossing
+    private record StockState(Long productId, String sku, String name, String category, Integer stock, LocalDateTime updatedAt) {
+        
+        static StockState of(Product product) {
+            return new StockState(product.getId(), product.getSku(), product.getName(), product.getCategory(),
+                    product.getStock(), product.getUpdatedAt());
+        }
+        
+        static StockState of(ProductStockLevel level) {
+            return new StockState(level.id(), level.sku(), level.name(), level.category(), level.stock(), level.updatedAt());
+        }
+        
+        List<String> scopes() {
+            List<String> scopes = new ArrayList<>(3);
+            scopes.add(ALL_PRODUCTS);
+            if (category != null) {
+                scopes.add(scope("category", category));
+            }
+            if (sku != null) {
+                scopes.add(scope("sku", sku));
+            }
+            return scopes;
+        }
+        
+        StockAlert alert(String type, Integer previousStock, int threshold) {
+            return new StockAlert(type, productId, sku, name, category, stock, previousStock, threshold, updatedAt);
+        }
+    }
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${app.stock-alerts.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.stock-alerts.max-subscribers:100}")
+    private int maxSubscribers;
+    
+    @Value("${app.stock-alerts.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+    
+    @Value("${app.stock-alerts.keepalive-ms:15000}")
+    private long keepaliveMs;
+    
+    @Value("${app.stock-alerts.load-page-size:5000}")
+    private int loadPageSize;
+    
+    @Value("${app.stock-alerts.subscriber-queue-size:1000}")
+    private int subscriberQueueSize;
+    
+    @Value("${app.stock-alerts.sender-threads:2}")
+    private int senderThreads;
+    
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    // Guarded by lock: scope ("*", "category:<name>", "sku:<sku>") -> threshold -> subscribers
+    private final Map<String, NavigableMap<Integer, List<Subscriber>>> thresholds = new HashMap<>();
+    
+    // Guarded by lock
+    private final Map<Long, StockState> stockByProduct = new HashMap<>();
+    
+    private volatile boolean ready;
+    
+    private ExecutorService senderPool;
+    
+    private long lastSendMillis = System.currentTimeMillis();
+    
+    @PostConstruct
+    public void init() {
+        Gauge.builder("stock.alerts.subscribers", subscribers, List::size)
+                .description("Open low-stock alert streams")
+                .register(meterRegistry);
+        AtomicInteger threadCount = new AtomicInteger();
+        senderPool = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "stock-alert-send-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        senderPool.shutdownNow();
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (enabled) {
+            reconcile();
+        }
+    }
+    
+    public SseEmitter subscribe(int threshold, List<String> categories, List<String> skus) {
+        if (!enabled || !ready) {
+            throw new IllegalStateException("Low-stock alerts are not enabled");
+        }
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold must be at least 1");
+        }
+        if (subscribers.size() >= maxSubscribers) {
+            throw new IllegalStateException("Too many low-stock alert subscribers");
+        }
+        List<String> scopes = new ArrayList<>();
+        if (categories != null) {
+            categories.stream().filter(c -> !c.isBlank()).forEach(c -> scopes.add(scope("category", c)));
+        }
+        if (skus != null) {
+            skus.stream().filter(s -> !s.isBlank()).forEach(s -> scopes.add(scope("sku", s)));
+        }
+        if (scopes.isEmpty()) {
+            scopes.add(ALL_PRODUCTS);
+        }
+        
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        Subscriber subscriber = new Subscriber(threshold, List.copyOf(scopes), subscriberQueueSize);
+        subscriber.events = new SseSubscriberQueue(emitter, QUEUED_PUSHES, senderPool, () -> unsubscribe(subscriber));
+        
+        // The snapshot comes from the same state crossings are computed against, and is taken together
+        // with the registration, so the stream neither misses nor repeats a crossing. It is queued as
+        // one event ahead of any later alert, however many products are already low.
+        lock.lock();
+        try {
+            List<StockAlert> snapshot = new ArrayList<>();
+            for (StockState state : stockByProduct.values()) {
+                if (state.stock() != null && state.stock() < threshold
+                        && state.scopes().stream().anyMatch(subscriber.scopes::contains)) {
+                    snapshot.add(state.alert(StockAlert.LOW_STOCK, null, threshold));
+                }
+            }
+            if (!snapshot.isEmpty()) {
+                subscriber.events.offer(SseEmitter.event().name("stock-alerts").data(snapshot));
+            }
+            for (String scope : subscriber.scopes) {
+                thresholds.computeIfAbsent(scope, key -> new TreeMap<>())
+                        .computeIfAbsent(threshold, key -> new ArrayList<>())
+                        .add(subscriber);
+            }
+        } finally {
+            lock.unlock();
+        }
+        subscribers.add(subscriber);
+        return emitter;
+    }
+    
+    private void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        lock.lock();
+        try {
+            for (String scope : subscriber.scopes) {
+                NavigableMap<Integer, List<Subscriber>> byThreshold = thresholds.get(scope);
+                if (byThreshold == null) {
+                    continue;
+                }
+                List<Subscriber> atThreshold = byThreshold.get(subscriber.threshold);
+                if (atThreshold != null) {
+                    atThreshold.remove(subscriber);
+                    if (atThreshold.isEmpty()) {
+                        byThreshold.remove(subscriber.threshold);
+                    }
+                }
+                if (byThreshold.isEmpty()) {
+                    thresholds.remove(scope);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (!enabled || !"Product".equals(event.getAggregateType())) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (OutboxService.DELETED.equals(event.getEventType())) {
+                stockByProduct.remove(event.getAggregateId());
+            } else {
+                observe(StockState.of((Product) event.getState()));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Re-reads every product's stock (a projection, not the entities) and raises alerts for what
+     * changed unseen, typically writes made through another instance.
+     */
+    @Scheduled(fixedDelayString = "${app.stock-alerts.reconcile-interval-ms:60000}",
+               initialDelayString = "${app.stock-alerts.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long afterId = 0;
+            List<ProductStockLevel> page;
+            do {
+                page = productRepository.findStockLevelsAfter(afterId, PageRequest.of(0, loadPageSize));
+                lock.lock();
+                try {
+                    page.forEach(level -> observe(StockState.of(level)));
+                } finally {
+                    lock.unlock();
+                }
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).id();
+                }
+            } while (page.size() == loadPageSize);
+            ready = true;
+        } catch (RuntimeException e) {
+            log.warn("Stock alert reconcile failed: {}", e.getMessage());
+        }
+    }
+    
+    // Caller holds lock
+    private void observe(StockState current) {
+        StockState previous = stockByProduct.get(current.productId());
+        // Commits of concurrent transactions can be observed out of order; an older state is ignored
+        if (previous != null && previous.updatedAt() != null && current.updatedAt() != null
+                && current.updatedAt().isBefore(previous.updatedAt())) {
+            return;
+        }
+        stockByProduct.put(current.productId(), current);
+        
+        // A product without a stock value is never low, as in "stock < threshold"
+        long before = previous != null && previous.stock() != null ? previous.stock() : Long.MAX_VALUE;
+        long after = current.stock() != null ? current.stock() : Long.MAX_VALUE;
+        if (before == after || thresholds.isEmpty()) {
+            return;
+        }
+        // Dropping crosses the thresholds t with after < t <= before, rising those with before < t <= after
+        String type = after < before ? StockAlert.LOW_STOCK : StockAlert.RESTOCKED;
+        long low = Math.min(before, after);
+        long high = Math.max(before, after);
+        Integer previousStock = previous != null ? previous.stock() : null;
+        // A subscriber listening on several scopes of the product (its category and its SKU) is told once
+        Set<Subscriber> notified = new HashSet<>();
+        List<Subscriber> lagging = new ArrayList<>();
+        for (String scope : current.scopes()) {
+            NavigableMap<Integer, List<Subscriber>> byThreshold = thresholds.get(scope);
+            if (byThreshold == null) {
+                continue;
+            }
+            byThreshold.subMap((int) Math.min(low, Integer.MAX_VALUE), false, (int) Math.min(high, Integer.MAX_VALUE), true)
+                    .forEach((threshold, atThreshold) -> atThreshold.stream()
+                            .filter(notified::add)
+                            .filter(subscriber -> !subscriber.pending.offer(current.alert(type, previousStock, threshold)))
+                            .forEach(lagging::add));
+        }
+        // Closed once the index is no longer being walked, closing unsubscribes
+        lagging.forEach(subscriber -> subscriber.events.close(
+                new IOException("Subscriber fell behind by " + subscriber.pending.size() + " alerts")));
+    }
+    
+    // Only queues; the blocking sends happen on the sender pool
+    @Scheduled(fixedDelayString = "${app.stock-alerts.push-interval-ms:250}")
+    public void push() {
+        boolean sent = false;
+        for (Subscriber subscriber : subscribers) {
+            List<StockAlert> batch = new ArrayList<>();
+            subscriber.pending.drainTo(batch);
+            if (!batch.isEmpty()) {
+                sent |= subscriber.events.offer(SseEmitter.event().name("stock-alerts").data(batch));
+            }
+        }
+        if (sent) {
+            lastSendMillis = System.currentTimeMillis();
+        } else if (System.currentTimeMillis() - lastSendMillis > keepaliveMs) {
+            // A subscriber with alerts still queued is not idle and needs none
+            subscribers.stream()
+                    .filter(subscriber -> subscriber.events.isIdle())
+                    .forEach(subscriber -> subscriber.events.offer(SseEmitter.event().comment("keepalive")));
+            lastSendMillis = System.currentTimeMillis();
+        }
+    }
+    
+    // Case-insensitive, as the category filters and MySQL compare
+    private static String scope(String kind, String value) {
+        return kind + ":" + value.trim().toLowerCase(Locale.ROOT);
+    }
+}
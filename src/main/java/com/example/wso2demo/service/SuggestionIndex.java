@@ -0,0 +1,324 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.EntityChangedEvent;
+import com.example.wso2demo.model.Order;
+import com.example.wso2demo.model.OrderItem;
+import com.example.wso2demo.model.Popularity;
+import com.example.wso2demo.model.Product;
+import com.example.wso2demo.model.Suggestion;
+import com.example.wso2demo.model.User;
+import com.example.wso2demo.model.UserSummary;
+import com.example.wso2demo.repository.OrderItemRepository;
+import com.example.wso2demo.repository.OrderRepository;
+import com.example.wso2demo.repository.ProductRepository;
+import com.example.wso2demo.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Typeahead over user full names/usernames and product names, served from in-memory prefix
+ * indexes instead of a LIKE '%x%' scan per keystroke. Results are ranked by popularity:
+ * orders placed for users, units sold for products.
+ * <p>
+ * The indexes are loaded at startup, kept current from committed local writes (new orders
+ * bump popularity) and reloaded on an interval to pick up other instances' writes.
+ */
+@Service
+public class SuggestionIndex {
+    
+    private static final Logger log = LoggerFactory.getLogger(SuggestionIndex.class);
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    @Autowired
+    private OrderRepository orderRepository;
+    
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${app.suggest.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.suggest.load-page-size:5000}")
+    private int loadPageSize;
+    
+    @Value("${app.suggest.max-limit:50}")
+    private int maxLimit;
+    
+    private record Indexes(PrefixIndex users, PrefixIndex products) {
+    }
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    
+    // Guarded by lock
+    private Indexes indexes;
+    
+    // Guarded by lock; non-null while a reload runs, so writes committed meanwhile are re-applied to the new indexes
+    private List<Consumer<Indexes>> changesDuringReload;
+    
+    private volatile boolean ready;
+    
+    private Timer userLatency;
+    
+    private Timer productLatency;
+    
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("suggest.index.entries", this, index -> index.getEntryCount(Indexes::users))
+                .tag("index", "users")
+                .description("Users held in the typeahead index")
+                .register(meterRegistry);
+        Gauge.builder("suggest.index.entries", this, index -> index.getEntryCount(Indexes::products))
+                .tag("index", "products")
+                .description("Products held in the typeahead index")
+                .register(meterRegistry);
+        userLatency = Timer.builder("suggest.latency").tag("index", "users").register(meterRegistry);
+        productLatency = Timer.builder("suggest.latency").tag("index", "products").register(meterRegistry);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (enabled) {
+            reload();
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${app.suggest.reload-interval-ms:300000}",
+               initialDelayString = "${app.suggest.reload-interval-ms:300000}")
+    public void scheduledReload() {
+        if (enabled) {
+            reload();
+        }
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    public void reload() {
+        if (!reloadLock.tryLock()) {
+            return;
+        }
+        try {
+            doReload();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+    
+    private void doReload() {
+        lock.writeLock().lock();
+        try {
+            changesDuringReload = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        Indexes fresh;
+        try {
+            fresh = new Indexes(loadUsers(), loadProducts());
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changesDuringReload = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("Suggestion index reload failed, keeping previous indexes: {}", e.getMessage());
+            return;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            changesDuringReload.forEach(change -> change.accept(fresh));
+            changesDuringReload = null;
+            indexes = fresh;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Suggestion index loaded with {} users and {} products", fresh.users().size(), fresh.products().size());
+    }
+    
+    private PrefixIndex loadUsers() {
+        Map<Long, Long> orders = popularity(shardRouter.fanOut(orderRepository::countOrdersByUser));
+        PrefixIndex users = new PrefixIndex(getEntryCount(Indexes::users));
+        // Shards are visited one after the other, so the index is only filled by this thread
+        shardRouter.onEachShard(() -> {
+            int loaded = 0;
+            long afterId = 0;
+            List<UserSummary> page;
+            do {
+                page = userRepository.findSummariesAfter(afterId, PageRequest.of(0, loadPageSize));
+                for (UserSummary user : page) {
+                    users.load(user.id(), user.fullName(), user.username(), orders.getOrDefault(user.id(), 0L),
+                            user.fullName(), user.username());
+                }
+                loaded += page.size();
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).id();
+                }
+            } while (page.size() == loadPageSize);
+            return loaded;
+        });
+        users.finishLoad();
+        return users;
+    }
+    
+    private PrefixIndex loadProducts() {
+        // Order items live on the ordering user's shard, products are not sharded
+        Map<Long, Long> unitsSold = popularity(shardRouter.fanOut(orderItemRepository::sumQuantityByProduct));
+        PrefixIndex products = new PrefixIndex(getEntryCount(Indexes::products));
+        long afterId = 0;
+        List<Product> page;
+        do {
+            page = productRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, loadPageSize));
+            for (Product product : page) {
+                products.load(product.getId(), product.getName(), product.getBrand(),
+                        unitsSold.getOrDefault(product.getId(), 0L), product.getName());
+            }
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == loadPageSize);
+        products.finishLoad();
+        return products;
+    }
+    
+    private static Map<Long, Long> popularity(List<Popularity> counts) {
+        Map<Long, Long> byId = new HashMap<>();
+        for (Popularity count : counts) {
+            if (count.id() != null && count.count() != null) {
+                byId.merge(count.id(), count.count(), Long::sum);
+            }
+        }
+        return byId;
+    }
+    
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        boolean deleted = OutboxService.DELETED.equals(event.getEventType());
+        long id = event.getAggregateId();
+        Consumer<Indexes> change;
+        switch (event.getAggregateType()) {
+            case "User" -> {
+                User user = (User) event.getState();
+                change = deleted ? target -> target.users().remove(id)
+                        : target -> target.users().put(id, user.getFullName(), user.getUsername(), null,
+                                user.getFullName(), user.getUsername());
+            }
+            case "Product" -> {
+                Product product = (Product) event.getState();
+                change = deleted ? target -> target.products().remove(id)
+                        : target -> target.products().put(id, product.getName(), product.getBrand(), null, product.getName());
+            }
+            case "Order" -> {
+                if (!OutboxService.CREATED.equals(event.getEventType())) {
+                    return;
+                }
+                Order order = (Order) event.getState();
+                List<OrderItem> items = Hibernate.isInitialized(order.getItems()) ? List.copyOf(order.getItems()) : List.of();
+                change = target -> {
+                    target.users().addPopularity(order.getUserId(), 1);
+                    for (OrderItem item : items) {
+                        if (item.getQuantity() != null) {
+                            target.products().addPopularity(item.getProductId(), item.getQuantity());
+                        }
+                    }
+                };
+            }
+            default -> {
+                return;
+            }
+        }
+        
+        lock.writeLock().lock();
+        try {
+            if (indexes != null) {
+                change.accept(indexes);
+            }
+            if (changesDuringReload != null) {
+                changesDuringReload.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void checkRequest(String prefix, int limit) {
+        if (prefix == null || prefix.isBlank()) {
+            throw new IllegalArgumentException("A prefix (q) is required");
+        }
+        if (limit < 1 || limit > maxLimit) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxLimit);
+        }
+    }
+    
+    public List<Suggestion> suggestUsers(String prefix, int limit) {
+        return suggest(Indexes::users, userLatency, prefix, limit);
+    }
+    
+    public List<Suggestion> suggestProducts(String prefix, int limit) {
+        return suggest(Indexes::products, productLatency, prefix, limit);
+    }
+    
+    private List<Suggestion> suggest(Function<Indexes, PrefixIndex> index, Timer latency, String prefix, int limit) {
+        checkRequest(prefix, limit);
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            return index.apply(indexes).suggest(prefix, limit);
+        } finally {
+            lock.readLock().unlock();
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    private int getEntryCount(Function<Indexes, PrefixIndex> index) {
+        lock.readLock().lock();
+        try {
+            return indexes != null ? index.apply(indexes).size() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
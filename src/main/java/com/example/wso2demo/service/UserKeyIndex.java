@@ -0,0 +1,261 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.ChangeEvent;
+import com.example.wso2demo.model.ChangesRelayedEvent;
+import com.example.wso2demo.model.EntityChangedEvent;
+import com.example.wso2demo.model.User;
+import com.example.wso2demo.model.UserKeys;
+import com.example.wso2demo.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory membership filters over usernames and emails, so availability checks and lookups
+ * of names that do not exist are answered without a query. "Maybe" answers are confirmed
+ * against the database by the caller.
+ * <p>
+ * The filters are loaded at startup, kept current from committed local writes and from the
+ * change relay, which also carries the writes of other instances, and reloaded on an interval.
+ * Keys freed by a rename or delete stay "maybe" until the next reload, which only costs a lookup.
+ * A user created elsewhere is missed for about one relay interval, so createUser still relies on
+ * the unique constraints.
+ */
+@Service
+public class UserKeyIndex {
+    
+    private static final Logger log = LoggerFactory.getLogger(UserKeyIndex.class);
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${app.user-key-index.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.user-key-index.load-page-size:5000}")
+    private int loadPageSize;
+    
+    private record Filters(KeyMembershipFilter usernames, KeyMembershipFilter emails) {
+        
+        void add(String username, String email) {
+            usernames.add(username);
+            emails.add(email);
+        }
+    }
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    
+    // Guarded by lock
+    private Filters filters;
+    
+    // Guarded by lock; non-null while a reload runs, so writes committed meanwhile are re-applied to the new filters
+    private List<Consumer<Filters>> changesDuringReload;
+    
+    private volatile boolean ready;
+    
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("user.key.index.keys", this, index -> index.getKeyCount(true))
+                .tag("key", "username")
+                .description("Usernames held in the in-memory membership filter")
+                .register(meterRegistry);
+        Gauge.builder("user.key.index.keys", this, index -> index.getKeyCount(false))
+                .tag("key", "email")
+                .description("Emails held in the in-memory membership filter")
+                .register(meterRegistry);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (enabled) {
+            reload();
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${app.user-key-index.reload-interval-ms:300000}",
+               initialDelayString = "${app.user-key-index.reload-interval-ms:300000}")
+    public void scheduledReload() {
+        if (enabled) {
+            reload();
+        }
+    }
+    
+    public void reload() {
+        if (!reloadLock.tryLock()) {
+            return;
+        }
+        try {
+            doReload();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+    
+    private void doReload() {
+        lock.writeLock().lock();
+        try {
+            changesDuringReload = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        Filters fresh;
+        try {
+            int expected = (int) shardRouter.fanOut(() -> List.of(userRepository.count())).stream().mapToLong(Long::longValue).sum();
+            fresh = new Filters(new KeyMembershipFilter(expected), new KeyMembershipFilter(expected));
+            // Shards are visited one after the other, so the filters are only filled by this thread
+            shardRouter.onEachShard(() -> {
+                int loaded = 0;
+                long afterId = 0;
+                List<UserKeys> page;
+                do {
+                    page = userRepository.findKeysAfter(afterId, PageRequest.of(0, loadPageSize));
+                    for (UserKeys keys : page) {
+                        fresh.add(keys.username(), keys.email());
+                    }
+                    loaded += page.size();
+                    if (!page.isEmpty()) {
+                        afterId = page.get(page.size() - 1).id();
+                    }
+                } while (page.size() == loadPageSize);
+                return loaded;
+            });
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changesDuringReload = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("User key index reload failed, keeping previous filters: {}", e.getMessage());
+            return;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            changesDuringReload.forEach(change -> change.accept(fresh));
+            changesDuringReload = null;
+            filters = fresh;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("User key index loaded with {} usernames and {} emails", fresh.usernames().size(), fresh.emails().size());
+    }
+    
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (!enabled || !"User".equals(event.getAggregateType()) || OutboxService.DELETED.equals(event.getEventType())) {
+            return;
+        }
+        User user = (User) event.getState();
+        apply(target -> target.add(user.getUsername(), user.getEmail()));
+    }
+    
+    // Writes committed by any instance, this one's included again, which adding twice makes harmless
+    @EventListener
+    public void onChangesRelayed(ChangesRelayedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        List<JsonNode> users = new ArrayList<>();
+        for (ChangeEvent change : event.getChanges()) {
+            if (!"User".equals(change.getAggregateType()) || change.getPayload() == null
+                    || OutboxService.DELETED.equals(change.getEventType())) {
+                continue;
+            }
+            try {
+                users.add(objectMapper.readTree(change.getPayload()));
+            } catch (JsonProcessingException e) {
+                log.warn("Skipping unreadable payload of user {} change {}: {}", change.getAggregateId(), change.getSequence(), e.getMessage());
+            }
+        }
+        if (!users.isEmpty()) {
+            apply(target -> users.forEach(user -> target.add(user.path("username").textValue(), user.path("email").textValue())));
+        }
+    }
+    
+    private void apply(Consumer<Filters> change) {
+        lock.writeLock().lock();
+        try {
+            if (filters != null) {
+                change.accept(filters);
+            }
+            if (changesDuringReload != null) {
+                changesDuringReload.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * False only when no user can have this username; true when one may (or the index is not loaded).
+     */
+    public boolean mightHaveUsername(String username) {
+        return mightContain(username, true);
+    }
+    
+    /**
+     * False only when no user can have this email; true when one may (or the index is not loaded).
+     */
+    public boolean mightHaveEmail(String email) {
+        return mightContain(email, false);
+    }
+    
+    private boolean mightContain(String key, boolean username) {
+        if (!enabled || !ready) {
+            return true;
+        }
+        boolean maybe;
+        lock.readLock().lock();
+        try {
+            maybe = (username ? filters.usernames() : filters.emails()).mightContain(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+        meterRegistry.counter("user.key.index.lookups", "key", username ? "username" : "email",
+                "result", maybe ? "maybe" : "absent").increment();
+        return maybe;
+    }
+    
+    private int getKeyCount(boolean username) {
+        lock.readLock().lock();
+        try {
+            return filters == null ? 0 : (username ? filters.usernames() : filters.emails()).size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
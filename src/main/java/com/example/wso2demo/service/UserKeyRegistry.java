@@ -0,0 +1,218 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.config.ShardRoutingDataSource;
+import com.example.wso2demo.model.User;
+import com.example.wso2demo.model.UserKeys;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Keeps usernames and emails unique across shards: with sharding, the unique constraints of the
+ * users table only cover one shard, so every key is first claimed in the global user_keys table,
+ * whose constraints span them all. Claims are made in their own transaction on shard 0 from
+ * within the user's shard transaction and given back if that transaction rolls back.
+ * With sharding disabled the users table enforces this itself and every method does nothing.
+ */
+@Service
+public class UserKeyRegistry {
+    
+    private static final Logger log = LoggerFactory.getLogger(UserKeyRegistry.class);
+    
+    private static final String INSERT = "INSERT INTO user_keys (user_id, username, email) VALUES (?, ?, ?)";
+    
+    private static final String UPDATE = "UPDATE user_keys SET username = ?, email = ? WHERE user_id = ?";
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private ObjectProvider<ShardRoutingDataSource> shardRoutingDataSource;
+    
+    @Value("${app.user-key-index.load-page-size:5000}")
+    private int pageSize;
+    
+    private JdbcTemplate jdbc;
+    
+    private TransactionTemplate transaction;
+    
+    @PostConstruct
+    public void init() {
+        if (!shardRouter.isEnabled()) {
+            return;
+        }
+        // Straight to shard 0's pool, so a claim commits on its own whatever shard the caller is on
+        DataSource global = shardRoutingDataSource.getObject().getShard(ShardRoutingDataSource.GLOBAL_SHARD);
+        jdbc = new JdbcTemplate(global);
+        transaction = new TransactionTemplate(new DataSourceTransactionManager(global));
+    }
+    
+    /**
+     * Claims the keys of new users; none are claimed if any is taken (DuplicateKeyException).
+     */
+    public void claim(List<User> users) {
+        if (!shardRouter.isEnabled() || users.isEmpty()) {
+            return;
+        }
+        transaction.executeWithoutResult(status -> jdbc.batchUpdate(INSERT, users, users.size(), (ps, user) -> {
+            ps.setLong(1, user.getId());
+            ps.setString(2, user.getUsername());
+            ps.setString(3, user.getEmail());
+        }));
+        onRollback(() -> release(users.stream().map(User::getId).toList()));
+    }
+    
+    /**
+     * Moves existing users to new keys; previous holds each one's current keys, by user id.
+     */
+    public void rename(List<User> users, Map<Long, UserKeys> previous) {
+        if (!shardRouter.isEnabled()) {
+            return;
+        }
+        List<User> renamed = users.stream().filter(user -> changed(user, previous.get(user.getId()))).toList();
+        if (renamed.isEmpty()) {
+            return;
+        }
+        transaction.executeWithoutResult(status -> renamed.forEach(user -> put(user.getId(), user.getUsername(), user.getEmail())));
+        onRollback(() -> transaction.executeWithoutResult(status -> renamed.forEach(user -> {
+            UserKeys keys = previous.get(user.getId());
+            put(keys.id(), keys.username(), keys.email());
+        })));
+    }
+    
+    // For deletes: the keys are given back once the shard transaction removing the users commits
+    public void releaseAfterCommit(List<Long> userIds) {
+        if (!shardRouter.isEnabled() || userIds.isEmpty()) {
+            return;
+        }
+        afterCompletion(true, () -> release(userIds));
+    }
+    
+    private void release(List<Long> userIds) {
+        new NamedParameterJdbcTemplate(jdbc).update("DELETE FROM user_keys WHERE user_id IN (:ids)",
+                new MapSqlParameterSource("ids", userIds));
+    }
+    
+    public boolean hasUsername(String username) {
+        return has("username", username);
+    }
+    
+    public boolean hasEmail(String email) {
+        return has("email", email);
+    }
+    
+    /**
+     * Claims the keys of users that have none yet, such as those created before sharding was
+     * enabled. Users sharing a key on different shards are logged; their keys stay unclaimed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void fillMissing() {
+        if (!shardRouter.isEnabled()) {
+            return;
+        }
+        ShardRoutingDataSource routing = shardRoutingDataSource.getObject();
+        NamedParameterJdbcTemplate claims = new NamedParameterJdbcTemplate(jdbc);
+        int claimed = 0;
+        for (int shard = 0; shard < routing.getShardCount(); shard++) {
+            JdbcTemplate users = new JdbcTemplate(routing.getShard(shard));
+            long afterId = 0;
+            List<User> page;
+            do {
+                page = users.query("SELECT id, username, email FROM users WHERE id > ? ORDER BY id LIMIT ?", (rs, rowNum) -> {
+                    User user = new User();
+                    user.setId(rs.getLong("id"));
+                    user.setUsername(rs.getString("username"));
+                    user.setEmail(rs.getString("email"));
+                    return user;
+                }, afterId, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                Set<Long> known = new HashSet<>(claims.queryForList("SELECT user_id FROM user_keys WHERE user_id IN (:ids)",
+                        new MapSqlParameterSource("ids", page.stream().map(User::getId).toList()), Long.class));
+                for (User user : page) {
+                    if (known.contains(user.getId())) {
+                        continue;
+                    }
+                    try {
+                        jdbc.update(INSERT, user.getId(), user.getUsername(), user.getEmail());
+                        claimed++;
+                    } catch (DuplicateKeyException e) {
+                        log.warn("User {} on shard {} shares its username or email with another user; its keys are not claimed",
+                                user.getId(), shard);
+                    }
+                }
+                afterId = page.get(page.size() - 1).getId();
+            } while (page.size() == pageSize);
+        }
+        if (claimed > 0) {
+            log.info("Claimed the keys of {} users in user_keys", claimed);
+        }
+    }
+    
+    // A user whose keys were never claimed (see fillMissing) gets them now
+    private void put(Long userId, String username, String email) {
+        if (jdbc.update(UPDATE, username, email, userId) == 0) {
+            jdbc.update(INSERT, userId, username, email);
+        }
+    }
+    
+    private boolean has(String column, String key) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(
+                "SELECT COUNT(*) > 0 FROM user_keys WHERE " + column + " = ?", Boolean.class, key));
+    }
+    
+    // The claim has committed; if the shard transaction it was made for does not, it is undone
+    private static void onRollback(Runnable undo) {
+        afterCompletion(false, undo);
+    }
+    
+    private static void afterCompletion(boolean onCommit, Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (onCommit) {
+                action.run();
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if ((status == STATUS_COMMITTED) != onCommit) {
+                    return;
+                }
+                try {
+                    action.run();
+                } catch (DataAccessException e) {
+                    log.warn("Could not update user_keys after a {} user write, the keys involved stay claimed: {}",
+                            onCommit ? "committed" : "rolled back", e.getMessage());
+                }
+            }
+        });
+    }
+    
+    private static boolean changed(User user, UserKeys previous) {
+        return !Objects.equals(user.getUsername(), previous.username()) || !Objects.equals(user.getEmail(), previous.email());
+    }
+}
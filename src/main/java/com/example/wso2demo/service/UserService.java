@@ -1,22 +1,92 @@
 package com.example.wso2demo.service;
 
+import com.example.wso2demo.model.DeltaPage;
+import com.example.wso2demo.model.MultiGetResult;
+import com.example.wso2demo.model.Suggestion;
 import com.example.wso2demo.model.User;
+import com.example.wso2demo.model.UserAvailability;
+import com.example.wso2demo.model.UserKeys;
+import com.example.wso2demo.model.UserSummary;
 import com.example.wso2demo.repository.UserRepository;
+import com.example.wso2demo.service.BulkImportService.UpsertResult;
 import jakarta.annotation.PostConstruct;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Service
-@Transactional
+@Transactional(readOnly = true)
 public class UserService {
     
+    /**
+     * Columns a user import may carry; rows are matched on username.
+     */
+    public static final List<String> IMPORT_COLUMNS = List.of("username", "email", "fullName", "phone", "address", "city", "country", "status");
+    
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private SingleFlight singleFlight;
+    
+    @Autowired
+    private BatchFetcher batchFetcher;
+    
+    @Autowired
+    private OutboxService outboxService;
+    
+    @Autowired
+    private DeltaSyncService deltaSyncService;
+    
+    @Autowired
+    private BitmapIndexService bitmapIndex;
+    
+    @Autowired
+    private ParallelScan parallelScan;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private IdAllocator idAllocator;
+    
+    @Autowired
+    private UserKeyIndex userKeyIndex;
+    
+    @Autowired
+    private UserKeyRegistry userKeyRegistry;
+    
+    @Autowired
+    private SuggestionIndex suggestionIndex;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private SecondLevelCacheService secondLevelCacheService;
+    
+    @Value("${app.import.batch-size:500}")
+    private int importBatchSize;
+    
     @PostConstruct
     public void init() {
         // Sample data is loaded from complete-mysql-setup.sql script
@@ -24,73 +94,139 @@ public class UserService {
     }
     
     public List<User> getAllUsers() {
-        return userRepository.findAll();
+        return shardRouter.fanOut(userRepository::findAll, User::getId);
+    }
+    
+    public List<UserSummary> getUserSummaries() {
+        return shardRouter.fanOutSorted(userRepository::findAllSummaries, UserSummary::id,
+                Comparator.comparing(UserSummary::id));
+    }
+    
+    public MultiGetResult<Long, User> getUsersByIds(List<Long> ids) {
+        return batchFetcher.multiGet(ids,
+                batch -> shardRouter.forUsers(batch, userRepository::findAllById), User::getId);
+    }
+    
+    public MultiGetResult<String, User> getUsersByUsernames(List<String> usernames) {
+        return batchFetcher.multiGet(usernames, batch -> {
+            // Usernames the key index rules out are reported missing without being queried
+            List<String> candidates = batch.stream().filter(userKeyIndex::mightHaveUsername).toList();
+            return candidates.isEmpty() ? List.of()
+                    : shardRouter.fanOut(() -> userRepository.findByUsernameIn(candidates), User::getId);
+        }, User::getUsername);
     }
     
     public Optional<User> getUserById(Long id) {
-        return userRepository.findById(id);
+        return singleFlight.execute("user.id", id, () -> shardRouter.readForUser(id, () -> userRepository.findById(id)),
+                UserService::copyOf);
     }
     
     public Optional<User> getUserByUsername(String username) {
-        return userRepository.findByUsername(username);
+        if (!userKeyIndex.mightHaveUsername(username)) {
+            return Optional.empty();
+        }
+        return singleFlight.execute("user.username", username, () -> shardRouter.fanOut(() -> userRepository.findByUsername(username).stream().toList(), User::getId)
+                        .stream().findFirst(), UserService::copyOf);
     }
     
     public List<User> getUsersByCountry(String country) {
-        return userRepository.findByCountry(country);
+        return shardRouter.fanOut(() -> userRepository.findByCountry(country), User::getId);
     }
     
     public List<User> getUsersByCity(String city) {
-        return userRepository.findByCity(city);
+        return shardRouter.fanOut(() -> userRepository.findByCity(city), User::getId);
     }
     
     public List<User> getUsersByStatus(String status) {
-        return userRepository.findByStatus(status);
+        return shardRouter.fanOut(() -> userRepository.findByStatus(status), User::getId);
     }
     
     public List<User> searchUsersByName(String name) {
-        return userRepository.findByFullNameContainingIgnoreCase(name);
+        return shardRouter.fanOut(() -> userRepository.findByFullNameContainingIgnoreCase(name), User::getId);
+    }
+    
+    public List<Suggestion> suggestUsers(String prefix, int limit) {
+        suggestionIndex.checkRequest(prefix, limit);
+        if (suggestionIndex.isReady()) {
+            return suggestionIndex.suggestUsers(prefix, limit);
+        }
+        // Without the index: substring match on the full name, unranked
+        return searchUsersByName(prefix.trim()).stream()
+                .limit(limit)
+                .map(u -> new Suggestion(u.getId(), u.getFullName(), u.getUsername(), 0))
+                .toList();
     }
     
     public List<String> getAllCountries() {
-        return userRepository.findAllCountries();
+        return shardRouter.fanOutDistinct(userRepository::findAllCountries);
     }
     
     public List<String> getAllCities() {
-        return userRepository.findAllCities();
+        return shardRouter.fanOutDistinct(userRepository::findAllCities);
     }
     
     public List<User> getFilteredUsers(String country, String city, String status) {
-        List<User> users = userRepository.findAll();
+        List<User> users;
+        if (bitmapIndex.isReady() && (hasText(country) || hasText(city) || hasText(status))) {
+            long[] ids = bitmapIndex.findIds("User", userCriteria(listOf(country), listOf(city), listOf(status)));
+            users = bitmapIndex.loadAll(ids, userRepository::findAllById, User::getId);
+        } else {
+            users = shardRouter.fanOut(userRepository::findAll, User::getId);
+        }
+        
+        // All filters are fused into one predicate so the list is scanned once
+        Predicate<User> filter = u -> true;
         
         if (country != null && !country.isEmpty()) {
-            users = users.stream()
-                    .filter(u -> u.getCountry() != null && u.getCountry().equalsIgnoreCase(country))
-                    .collect(java.util.stream.Collectors.toList());
+            filter = filter.and(u -> u.getCountry() != null && u.getCountry().equalsIgnoreCase(country));
         }
         
         if (city != null && !city.isEmpty()) {
-            users = users.stream()
-                    .filter(u -> u.getCity() != null && u.getCity().equalsIgnoreCase(city))
-                    .collect(java.util.stream.Collectors.toList());
+            filter = filter.and(u -> u.getCity() != null && u.getCity().equalsIgnoreCase(city));
         }
         
         if (status != null && !status.isEmpty()) {
-            users = users.stream()
-                    .filter(u -> u.getStatus() != null && u.getStatus().equalsIgnoreCase(status))
-                    .collect(java.util.stream.Collectors.toList());
+            filter = filter.and(u -> u.getStatus() != null && u.getStatus().equalsIgnoreCase(status));
         }
         
-        return users;
+        return parallelScan.filter(users, filter);
+    }
+    
+    // Within an attribute any listed value matches, across attributes all must match
+    public long countUsers(List<String> countries, List<String> cities, List<String> statuses) {
+        if (bitmapIndex.isReady()) {
+            return bitmapIndex.count("User", userCriteria(countries, cities, statuses));
+        }
+        return parallelScan.count(shardRouter.fanOut(userRepository::findAll, User::getId),
+                u -> matchesAny(u.getCountry(), countries) && matchesAny(u.getCity(), cities)
+                        && matchesAny(u.getStatus(), statuses));
     }
     
+    public DeltaPage<User> getUserChanges(String since, int limit) {
+        return deltaSyncService.changesSince("User", since, limit,
+                (after, afterId, until, page) -> shardRouter.fanOut(
+                        () -> userRepository.findChangesAfter(after, afterId, until, page), User::getId),
+                ids -> shardRouter.forUsers(ids, userRepository::findAllById),
+                User::getUpdatedAt, User::getId);
+    }
+    
+    @Transactional
     public User createUser(User user) {
-        user.setId(null); // Ensure new user
-        return userRepository.save(user);
+        // The id decides the shard, so it is allocated up front instead of on insert
+        user.setId(shardRouter.isEnabled() ? idAllocator.next("users") : null);
+        return shardRouter.writeForUser(user.getId(), () -> {
+            userKeyRegistry.claim(List.of(user));
+            User created = userRepository.save(user);
+            outboxService.record("User", created.getId(), OutboxService.CREATED, created);
+            return created;
+        });
     }
     
+    @Transactional
     public Optional<User> updateUser(Long id, User updatedUser) {
-        return userRepository.findById(id)
+        return shardRouter.writeForUser(id, () -> userRepository.findById(id)
                 .map(existingUser -> {
+                    UserKeys previous = new UserKeys(id, existingUser.getUsername(), existingUser.getEmail());
                     existingUser.setUsername(updatedUser.getUsername());
                     existingUser.setEmail(updatedUser.getEmail());
                     existingUser.setFullName(updatedUser.getFullName());
@@ -99,23 +235,199 @@ public class UserService {
                     existingUser.setCity(updatedUser.getCity());
                     existingUser.setCountry(updatedUser.getCountry());
                     existingUser.setStatus(updatedUser.getStatus());
-                    return userRepository.save(existingUser);
-                });
+                    userKeyRegistry.rename(List.of(existingUser), Map.of(id, previous));
+                    User saved = userRepository.save(existingUser);
+                    outboxService.record("User", saved.getId(), OutboxService.UPDATED, saved);
+                    return saved;
+                }));
     }
     
+    @Transactional
     public boolean deleteUser(Long id) {
-        if (userRepository.existsById(id)) {
-            userRepository.deleteById(id);
-            return true;
+        return shardRouter.writeForUser(id, () -> {
+            // One statement instead of exists + load + delete; JDBC because a JPQL bulk delete drops the whole cache region
+            if (jdbcTemplate.update("DELETE FROM users WHERE id = ?", id) > 0) {
+                secondLevelCacheService.evict(User.class, List.of(id));
+                userKeyRegistry.releaseAfterCommit(List.of(id));
+                outboxService.record("User", id, OutboxService.DELETED, null);
+                return true;
+            }
+            return false;
+        });
+    }
+    
+    /**
+     * Inserts or updates the users by username. The usernames must be distinct. Each shard's part
+     * is written in its own transaction as JDBC batches; new users get their id up front, as in
+     * createUser, which also spares Hibernate a SELECT per row to tell them from detached ones.
+     */
+    @Transactional
+    public UpsertResult upsertUsers(List<User> users) {
+        // Matched ignoring case, as MySQL compares usernames
+        Map<String, UserKeys> existing = new HashMap<>();
+        batchFetcher.fetch(users.stream().map(User::getUsername).toList(),
+                        batch -> shardRouter.fanOut(() -> userRepository.findKeysByUsernameIn(batch), UserKeys::id))
+                .forEach(keys -> existing.put(keys.username().toLowerCase(Locale.ROOT), keys));
+        
+        Map<Integer, List<User>> inserts = new LinkedHashMap<>();
+        Map<Integer, List<User>> updates = new LinkedHashMap<>();
+        Map<Long, UserKeys> previous = new HashMap<>();
+        for (User user : users) {
+            UserKeys keys = existing.get(user.getUsername().toLowerCase(Locale.ROOT));
+            user.setId(keys != null ? keys.id() : idAllocator.next("users"));
+            shardRouter.checkWritable(user.getId());
+            if (keys != null) {
+                previous.put(keys.id(), keys);
+            }
+            (keys != null ? updates : inserts).computeIfAbsent(shardRouter.shardOf(user.getId()), shard -> new ArrayList<>()).add(user);
         }
-        return false;
+        
+        Set<Integer> shards = new LinkedHashSet<>(inserts.keySet());
+        shards.addAll(updates.keySet());
+        for (Integer shard : shards) {
+            shardRouter.onShard(shard, false, () -> {
+                List<Long> ids = new ArrayList<>();
+                inserts.getOrDefault(shard, List.of()).forEach(user -> ids.add(user.getId()));
+                updates.getOrDefault(shard, List.of()).forEach(user -> ids.add(user.getId()));
+                shardRouter.checkWritable(ids);
+                // Keys are claimed per shard, so a shard that fails gives back only its own
+                userKeyRegistry.claim(inserts.getOrDefault(shard, List.of()));
+                userKeyRegistry.rename(updates.getOrDefault(shard, List.of()), previous);
+                return writeUsers(inserts.getOrDefault(shard, List.of()), updates.getOrDefault(shard, List.of()));
+            });
+        }
+        int updated = updates.values().stream().mapToInt(List::size).sum();
+        return new UpsertResult(users.size() - updated, updated);
     }
     
+    // Runs in the shard's transaction; returns the number of users written
+    private int writeUsers(List<User> inserts, List<User> updates) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        if (!updates.isEmpty()) {
+            // An import without a status column leaves it alone rather than clearing it
+            jdbcTemplate.batchUpdate("UPDATE users SET username = ?, email = ?, full_name = ?, phone = ?, address = ?, city = ?, country = ?, status = COALESCE(?, status), updated_at = ? WHERE id = ?",
+                    updates, importBatchSize, (ps, user) -> {
+                        ps.setString(1, user.getUsername());
+                        ps.setString(2, user.getEmail());
+                        ps.setString(3, user.getFullName());
+                        ps.setString(4, user.getPhone());
+                        ps.setString(5, user.getAddress());
+                        ps.setString(6, user.getCity());
+                        ps.setString(7, user.getCountry());
+                        ps.setString(8, user.getStatus());
+                        ps.setTimestamp(9, now);
+                        ps.setLong(10, user.getId());
+                    });
+            // The UPDATE bypassed Hibernate, so cached copies would otherwise be re-read below and served stale
+            secondLevelCacheService.evict(User.class, updates.stream().map(User::getId).toList());
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO users (id, username, email, full_name, phone, address, city, country, status, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    inserts, importBatchSize, (ps, user) -> {
+                        ps.setLong(1, user.getId());
+                        ps.setString(2, user.getUsername());
+                        ps.setString(3, user.getEmail());
+                        ps.setString(4, user.getFullName());
+                        ps.setString(5, user.getPhone());
+                        ps.setString(6, user.getAddress());
+                        ps.setString(7, user.getCity());
+                        ps.setString(8, user.getCountry());
+                        ps.setString(9, user.getStatus() != null ? user.getStatus() : "ACTIVE");
+                        ps.setTimestamp(10, now);
+                        ps.setTimestamp(11, now);
+                    });
+            // No cached entity to drop, but cached query results (by country, status) now miss the new rows
+            secondLevelCacheService.evict(User.class, List.of());
+        }
+        
+        Set<Long> updatedIds = updates.stream().map(User::getId).collect(Collectors.toSet());
+        List<Long> ids = new ArrayList<>(updatedIds);
+        inserts.forEach(user -> ids.add(user.getId()));
+        userRepository.findAllById(ids)
+                .forEach(user -> outboxService.record("User", user.getId(),
+                        updatedIds.contains(user.getId()) ? OutboxService.UPDATED : OutboxService.CREATED, user));
+        return ids.size();
+    }
+    
+    // Sharded, the global key registry answers with one query instead of asking every shard
     public boolean existsByUsername(String username) {
-        return userRepository.existsByUsername(username);
+        if (!userKeyIndex.mightHaveUsername(username)) {
+            return false;
+        }
+        return shardRouter.isEnabled() ? userKeyRegistry.hasUsername(username) : userRepository.existsByUsername(username);
     }
     
     public boolean existsByEmail(String email) {
-        return userRepository.existsByEmail(email);
+        if (!userKeyIndex.mightHaveEmail(email)) {
+            return false;
+        }
+        return shardRouter.isEnabled() ? userKeyRegistry.hasEmail(email) : userRepository.existsByEmail(email);
+    }
+    
+    /**
+     * Reports for each username and email whether it is still free. Keys the key index rules
+     * out are free without a query; the rest are confirmed with one IN query per kind.
+     */
+    public UserAvailability checkAvailability(List<String> usernames, List<String> emails) {
+        List<String> requestedUsernames = usernames != null ? usernames : List.of();
+        List<String> requestedEmails = emails != null ? emails : List.of();
+        if (requestedUsernames.isEmpty() && requestedEmails.isEmpty()) {
+            throw new IllegalArgumentException("At least one username or email is required");
+        }
+        if (requestedUsernames.stream().anyMatch(key -> !hasText(key)) || requestedEmails.stream().anyMatch(key -> !hasText(key))) {
+            throw new IllegalArgumentException("Usernames and emails must not be blank");
+        }
+        batchFetcher.checkRequestSize(requestedUsernames.size() + requestedEmails.size());
+        
+        return new UserAvailability(
+                availability(requestedUsernames, userKeyIndex::mightHaveUsername,
+                        batch -> shardRouter.fanOut(() -> userRepository.findByUsernameIn(batch), User::getId), User::getUsername),
+                availability(requestedEmails, userKeyIndex::mightHaveEmail,
+                        batch -> shardRouter.fanOut(() -> userRepository.findByEmailIn(batch), User::getId), User::getEmail));
+    }
+    
+    private Map<String, Boolean> availability(List<String> keys, Predicate<String> mightBeTaken,
+                                              Function<List<String>, List<User>> query, Function<User, String> keyFn) {
+        List<String> candidates = keys.stream().filter(mightBeTaken).distinct().toList();
+        // Compared normalized, as the database matches case- and accent-insensitively
+        Set<String> taken = candidates.isEmpty() ? Set.of() : batchFetcher.fetch(candidates, query).stream()
+                .map(keyFn)
+                .map(KeyMembershipFilter::normalize)
+                .collect(Collectors.toSet());
+        Map<String, Boolean> available = new LinkedHashMap<>();
+        for (String key : keys) {
+            available.put(key, !taken.contains(KeyMembershipFilter.normalize(key)));
+        }
+        return available;
+    }
+    
+    private Map<String, List<String>> userCriteria(List<String> countries, List<String> cities, List<String> statuses) {
+        Map<String, List<String>> criteria = new HashMap<>();
+        criteria.put("country", countries);
+        criteria.put("city", cities);
+        criteria.put("status", statuses);
+        return criteria;
+    }
+    
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
+    }
+    
+    private static List<String> listOf(String value) {
+        return hasText(value) ? List.of(value) : null;
+    }
+    
+    private static boolean matchesAny(String value, List<String> candidates) {
+        return candidates == null || candidates.isEmpty()
+                || (value != null && candidates.stream().anyMatch(value::equalsIgnoreCase));
+    }
+    
+    // Users have no lazy associations; a shallow copy detaches it from the loading session
+    private static Optional<User> copyOf(Optional<User> user) {
+        return user.map(source -> {
+            User copy = new User();
+            BeanUtils.copyProperties(source, copy);
+            return copy;
+        });
     }
 }
@@ -0,0 +1,433 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.WriteBehindCheckpoint;
+import com.example.wso2demo.repository.OrderRepository;
+import com.example.wso2demo.repository.ProductRepository;
+import com.example.wso2demo.repository.WriteBehindCheckpointRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Opt-in write-behind for stock adjustments. Updates are appended to a local journal, coalesced in
+ * memory (stock deltas are summed) and flushed as UPDATEs on a timer or once the buffer reaches the
+ * size threshold. Order status changes are no longer buffered here, as they have to pass the
+ * transitions in OrderPipelineService; status records in journals written before that are still
+ * replayed and applied (the last status wins).
+ * <p>
+ * Each flush rotates the journal segment and records the closed segment number in
+ * write_behind_checkpoints in the same transaction as the UPDATEs, so after a crash only
+ * segments that were never committed are replayed.
+ * <p>
+ * Stock goes through ProductService's guarded updates, so it never drops below zero and
+ * updated_at never moves back. An update the database refuses for its data (not enough stock, a
+ * value out of range) is moved to write_behind_dead_letters in the flush's transaction instead of
+ * failing the flush; only transient failures keep the whole flush buffered for the next attempt.
+ */
+@Service
+public class WriteBehindService {
+    
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindService.class);
+    
+    private static final String STOCK = "S";
+    
+    private static final String STATUS = "O";
+    
+    // orders.status is VARCHAR(30)
+    private static final int MAX_STATUS_LENGTH = 30;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    // ProductService queues through this service, so it is looked up when a flush needs it
+    @Autowired
+    private ObjectProvider<ProductService> productService;
+    
+    @Autowired
+    private OrderRepository orderRepository;
+    
+    @Autowired
+    private OutboxService outboxService;
+    
+    @Autowired
+    private WriteBehindCheckpointRepository checkpointRepository;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Value("${app.write-behind.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.write-behind.flush-threshold:500}")
+    private int flushThreshold;
+    
+    @Value("${app.write-behind.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${app.write-behind.journal-dir:./write-behind-journal}")
+    private String journalDir;
+    
+    @Value("${app.write-behind.fsync:true}")
+    private boolean fsync;
+    
+    @Value("${app.write-behind.node-id:${HOSTNAME:local}}")
+    private String nodeId;
+    
+    private final ConcurrentHashMap<Long, Long> stockDeltas = new ConcurrentHashMap<>();
+    
+    private final ConcurrentHashMap<Long, String> orderStatuses = new ConcurrentHashMap<>();
+    
+    // Guards the journal together with the buffers so a record and its buffered value always rotate together
+    private final ReentrantLock journalLock = new ReentrantLock();
+    
+    private final ReentrantLock flushLock = new ReentrantLock();
+    
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    
+    private ExecutorService flushExecutor;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    private FileChannel journal;
+    
+    private long currentSegment;
+    
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Files.createDirectories(Paths.get(journalDir));
+        recover();
+        openSegment();
+        if (getPendingCount() > 0) {
+            log.info("Replayed {} pending write-behind updates from the journal", getPendingCount());
+            flush();
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public int getPendingCount() {
+        return stockDeltas.size() + orderStatuses.size();
+    }
+    
+    // Deltas are summed until the flush, so the sum has to stay within the INT stock column too
+    public void adjustStock(Long productId, int delta) {
+        append(STOCK + " " + productId + " " + delta, () -> {
+            long pending = stockDeltas.getOrDefault(productId, 0L) + delta;
+            if (pending < Integer.MIN_VALUE || pending > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Stock adjustments pending for product " + productId + " would exceed the stock range");
+            }
+        }, () -> stockDeltas.merge(productId, (long) delta, Long::sum));
+    }
+    
+    @Scheduled(fixedDelayString = "${app.write-behind.flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        if (enabled) {
+            flush();
+        }
+    }
+    
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<Long, Long> stock;
+            Map<Long, String> statuses;
+            long closedSegment;
+            
+            journalLock.lock();
+            try {
+                if (stockDeltas.isEmpty() && orderStatuses.isEmpty()) {
+                    return;
+                }
+                closedSegment = currentSegment;
+                journal.close();
+                currentSegment++;
+                openSegment();
+                stock = new HashMap<>(stockDeltas);
+                statuses = new HashMap<>(orderStatuses);
+                stockDeltas.clear();
+                orderStatuses.clear();
+            } finally {
+                journalLock.unlock();
+            }
+            
+            try {
+                transactionTemplate.executeWithoutResult(status -> apply(stock, statuses, closedSegment));
+                deleteSegmentsUpTo(closedSegment);
+                log.debug("Flushed {} stock deltas and {} order statuses", stock.size(), statuses.size());
+            } catch (RuntimeException e) {
+                log.error("Write-behind flush failed, keeping {} updates buffered for the next flush: {}",
+                        stock.size() + statuses.size(), e.getMessage());
+                journalLock.lock();
+                try {
+                    stock.forEach((id, delta) -> stockDeltas.merge(id, delta, Long::sum));
+                    statuses.forEach(orderStatuses::putIfAbsent);
+                } finally {
+                    journalLock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not rotate write-behind journal", e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        flush();
+        flushExecutor.shutdown();
+        journal.close();
+    }
+    
+    // check runs under the journal lock before anything is written, so a refused update leaves no record
+    private void append(String record, Runnable check, Runnable buffer) {
+        if (!enabled) {
+            throw new IllegalStateException("Write-behind is disabled");
+        }
+        journalLock.lock();
+        try {
+            check.run();
+            journal.write(ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8)));
+            if (fsync) {
+                journal.force(false);
+            }
+            buffer.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not journal write-behind update", e);
+        } finally {
+            journalLock.unlock();
+        }
+        
+        if (getPendingCount() >= flushThreshold && flushRequested.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+    }
+    
+    private void apply(Map<Long, Long> stock, Map<Long, String> statuses, long closedSegment) {
+        LocalDateTime now = LocalDateTime.now();
+        if (!stock.isEmpty()) {
+            ProductService products = productService.getObject();
+            List<Long> adjusted = new ArrayList<>();
+            stock.forEach((id, delta) -> {
+                // Checked when queued, but a replayed journal may still hold one
+                if (delta < Integer.MIN_VALUE || delta > Integer.MAX_VALUE) {
+                    deadLetter(STOCK, id, String.valueOf(delta), "Adjustment exceeds the stock range", now);
+                    return;
+                }
+                String refused = orSetAside(() -> {
+                    // A negative sum only takes stock that is there, like an order reservation
+                    boolean applied = delta < 0 ? products.reserveStock(id, (int) -delta, now)
+                            : products.addStock(id, delta.intValue(), now);
+                    return applied ? null : delta < 0 ? "Not enough stock" : "Product not found";
+                });
+                if (refused == null) {
+                    adjusted.add(id);
+                } else if (!"Product not found".equals(refused)) {
+                    deadLetter(STOCK, id, String.valueOf(delta), refused, now);
+                }
+            });
+            productRepository.findAllById(adjusted)
+                    .forEach(product -> outboxService.record("Product", product.getId(), OutboxService.UPDATED, product));
+        }
+        // Replayed journals may still hold one; the batch itself is kept intact in case this flush
+        // fails and is buffered again
+        Map<Long, String> applicable = new HashMap<>(statuses);
+        applicable.entrySet().removeIf(entry -> {
+            if (entry.getValue().length() <= MAX_STATUS_LENGTH) {
+                return false;
+            }
+            deadLetter(STATUS, entry.getKey(), entry.getValue().substring(0, MAX_STATUS_LENGTH),
+                    "Status is longer than " + MAX_STATUS_LENGTH + " characters", now);
+            return true;
+        });
+        if (!applicable.isEmpty()) {
+            Timestamp at = Timestamp.valueOf(now);
+            String sql = "UPDATE orders SET status = ?, updated_at = ? WHERE id = ?";
+            String failed = orSetAside(() -> {
+                jdbcTemplate.batchUpdate(sql, applicable.entrySet(), batchSize, (ps, entry) -> {
+                    ps.setString(1, entry.getValue());
+                    ps.setTimestamp(2, at);
+                    ps.setLong(3, entry.getKey());
+                });
+                return null;
+            });
+            if (failed != null) {
+                // One bad row fails the whole batch; row by row, only that row is set aside
+                applicable.forEach((id, status) -> {
+                    String refused = orSetAside(() -> {
+                        jdbcTemplate.update(sql, status, at, id);
+                        return null;
+                    });
+                    if (refused != null) {
+                        deadLetter(STATUS, id, status, refused, now);
+                    }
+                });
+            }
+            orderRepository.findAllById(applicable.keySet())
+                    .forEach(order -> outboxService.record("Order", order.getId(), OutboxService.UPDATED, order));
+        }
+        checkpointRepository.save(new WriteBehindCheckpoint(nodeId, closedSegment));
+    }
+    
+    /**
+     * Runs the update under a savepoint and returns null, or the reason it was refused. A refusal
+     * for the data rolls back to the savepoint; a transient failure (lock timeout, lost connection)
+     * is rethrown, so the flush fails as a whole and is retried with every update kept. The
+     * savepoint is set on the flush's JDBC connection, as the JPA transaction manager offers none.
+     */
+    private String orSetAside(Supplier<String> update) {
+        Savepoint savepoint = jdbcTemplate.execute((ConnectionCallback<Savepoint>) Connection::setSavepoint);
+        try {
+            String refused = update.get();
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                connection.releaseSavepoint(savepoint);
+                return null;
+            });
+            return refused;
+        } catch (TransientDataAccessException | RecoverableDataAccessException e) {
+            throw e;
+        } catch (DataAccessException e) {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                connection.rollback(savepoint);
+                return null;
+            });
+            return NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+        }
+    }
+    
+    private void deadLetter(String kind, Long id, String value, String reason, LocalDateTime now) {
+        log.warn("Write-behind {} update for {} ({}) refused, moved to write_behind_dead_letters: {}",
+                STOCK.equals(kind) ? "stock" : "status", id, value, reason);
+        jdbcTemplate.update("INSERT INTO write_behind_dead_letters (node_id, kind, target_id, update_value, reason, failed_at) VALUES (?, ?, ?, ?, ?, ?)",
+                nodeId, STOCK.equals(kind) ? "STOCK" : "STATUS", id, value,
+                reason.length() > 500 ? reason.substring(0, 500) : reason, Timestamp.valueOf(now));
+    }
+    
+    private void recover() throws IOException {
+        long checkpoint = checkpointRepository.findById(nodeId).map(WriteBehindCheckpoint::getLastSegment).orElse(0L);
+        currentSegment = checkpoint + 1;
+        for (Path segment : listSegments()) {
+            long number = segmentNumber(segment);
+            if (number <= checkpoint) {
+                Files.delete(segment);
+                continue;
+            }
+            for (String line : Files.readAllLines(segment, StandardCharsets.UTF_8)) {
+                replay(line);
+            }
+            currentSegment = Math.max(currentSegment, number + 1);
+        }
+    }
+    
+    // A torn last line from a crash mid-append is skipped; its request was never acknowledged
+    private void replay(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length != 3) {
+            return;
+        }
+        try {
+            long id = Long.parseLong(parts[1]);
+            if (STOCK.equals(parts[0])) {
+                stockDeltas.merge(id, Long.parseLong(parts[2]), Long::sum);
+            } else if (STATUS.equals(parts[0])) {
+                orderStatuses.put(id, parts[2]);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Skipping malformed write-behind journal record: {}", line);
+        }
+    }
+    
+    private void openSegment() throws IOException {
+        journal = FileChannel.open(segmentPath(currentSegment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    
+    private void deleteSegmentsUpTo(long segmentNumber) {
+        try {
+            for (Path segment : listSegments()) {
+                if (segmentNumber(segment) <= segmentNumber) {
+                    Files.deleteIfExists(segment);
+                }
+            }
+        } catch (IOException e) {
+            // Harmless: the checkpoint already marks these segments as applied
+            log.warn("Could not delete flushed write-behind segments: {}", e.getMessage());
+        }
+    }
+    
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(journalDir))) {
+            return files.filter(path -> path.getFileName().toString().matches("segment-\\d+\\.log"))
+                    .sorted()
+                    .toList();
+        }
+    }
+    
+    private Path segmentPath(long number) {
+        return Paths.get(journalDir, String.format("segment-%012d.log", number));
+    }
+    
+    private long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length()));
+    }
+}
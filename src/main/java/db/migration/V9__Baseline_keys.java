@@ -0,0 +1,85 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * V1 creates its tables IF NOT EXISTS, so on a database first created by ddl-auto it skipped
+ * their inline unique constraints and indexes. Adds each one the table has no equivalent for
+ * yet, whatever that is named; on databases created by V1 this does nothing. Java because
+ * neither MySQL nor H2 can make an ALTER TABLE conditional in plain SQL both understand.
+ */
+public class V9__Baseline_keys extends BaseJavaMigration {
+    
+    private static final List<Key> KEYS = List.of(
+            new Key("products", "uk_products_sku", true, "sku"),
+            new Key("products", "idx_products_updated_at_id", false, "updated_at", "id"),
+            new Key("users", "uk_users_username", true, "username"),
+            new Key("users", "uk_users_email", true, "email"),
+            new Key("users", "idx_users_updated_at_id", false, "updated_at", "id"),
+            new Key("orders", "uk_orders_order_number", true, "order_number"),
+            new Key("orders", "idx_orders_updated_at_id", false, "updated_at", "id"),
+            new Key("idempotency_records", "idx_idempotency_expires_at", false, "expires_at"),
+            new Key("outbox_events", "idx_outbox_sequence", true, "sequence"),
+            new Key("outbox_events", "idx_outbox_created_at", false, "created_at"),
+            new Key("tombstones", "idx_tombstones_type_deleted_at_id", false, "entity_type", "deleted_at", "entity_id")
+    );
+    
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            for (Key key : KEYS) {
+                if (!covered(connection, key)) {
+                    statement.execute(key.unique()
+                            ? "ALTER TABLE " + key.table() + " ADD CONSTRAINT " + key.name() + " UNIQUE (" + String.join(", ", key.columns()) + ")"
+                            : "CREATE INDEX " + key.name() + " ON " + key.table() + " (" + String.join(", ", key.columns()) + ")");
+                }
+            }
+        }
+    }
+    
+    // A unique key needs a unique index on exactly its columns; any index starting with them serves a plain one
+    private static boolean covered(Connection connection, Key key) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        Map<String, List<String>> columns = new LinkedHashMap<>();
+        Map<String, Boolean> unique = new LinkedHashMap<>();
+        try (ResultSet indexes = metaData.getIndexInfo(connection.getCatalog(), connection.getSchema(), key.table(), false, false)) {
+            while (indexes.next()) {
+                String name = indexes.getString("INDEX_NAME");
+                String column = indexes.getString("COLUMN_NAME");
+                if (name == null || column == null) {
+                    continue;
+                }
+                // Rows come ordered by index name and column position
+                columns.computeIfAbsent(name, n -> new ArrayList<>()).add(column.toLowerCase());
+                unique.put(name, !indexes.getBoolean("NON_UNIQUE"));
+            }
+        }
+        for (Map.Entry<String, List<String>> index : columns.entrySet()) {
+            List<String> indexed = index.getValue();
+            if (key.unique() ? unique.get(index.getKey()) && indexed.equals(key.columns())
+                    : indexed.size() >= key.columns().size() && indexed.subList(0, key.columns().size()).equals(key.columns())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private record Key(String table, String name, boolean unique, List<String> columns) {
+        
+        Key(String table, String name, boolean unique, String... columns) {
+            this(table, name, unique, List.of(columns));
+        }
+    }
+}
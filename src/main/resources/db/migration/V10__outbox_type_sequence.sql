@@ -0,0 +1,5 @@
+-- Delta sync pages through one entity type's outbox events by sequence
+CREATE INDEX idx_outbox_type_sequence ON outbox_events (aggregate_type, sequence);
+
+-- tombstones is no longer written, deletes are read from the outbox. It stays until instances
+-- of the previous release, which still insert into it, are gone; a later migration can drop it.
@@ -0,0 +1,32 @@
+-- Indexes for the repository finder methods. Unique keys (sku, username, email, order_number,
+-- outbox sequence) and the keyset/delta-sync indexes already come with V1.
+-- Substring searches (findByNameContainingIgnoreCase, findByFullNameContainingIgnoreCase)
+-- cannot use a B-tree index and are left out on purpose.
+
+-- findByCategory, findByCategoryAndBrand, findByCategoryAndPriceRange, findAllCategories
+CREATE INDEX idx_products_category_price ON products (category, price);
+-- findByBrand, findAllBrands
+CREATE INDEX idx_products_brand ON products (brand);
+-- findByPriceBetween
+CREATE INDEX idx_products_price ON products (price);
+-- findByStockLessThan
+CREATE INDEX idx_products_stock ON products (stock);
+
+-- findByStatus
+CREATE INDEX idx_users_status ON users (status);
+-- findByCountry, findAllCountries
+CREATE INDEX idx_users_country ON users (country);
+-- findByCity, findAllCities
+CREATE INDEX idx_users_city ON users (city);
+
+-- findByUserId, findByUserIdIn, findByUserIdAndStatus
+CREATE INDEX idx_orders_user_id_status ON orders (user_id, status);
+-- findByStatus, findAllStatuses
+CREATE INDEX idx_orders_status ON orders (status);
+-- findByPaymentMethod
+CREATE INDEX idx_orders_payment_method ON orders (payment_method);
+
+-- findByOrderId, findByOrderIdIn and loading Order.items
+CREATE INDEX idx_order_items_order_id ON order_items (order_id);
+-- findByProductId
+CREATE INDEX idx_order_items_product_id ON order_items (product_id);
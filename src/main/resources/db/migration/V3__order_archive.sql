@@ -0,0 +1,25 @@
+-- Cold store for closed orders moved out of orders/order_items by OrderArchiveService.
+-- One row per order with its items embedded as JSON, keeping the original order id.
+
+CREATE TABLE IF NOT EXISTS orders_archive (
+    id BIGINT NOT NULL,
+    order_number VARCHAR(50) NOT NULL,
+    user_id BIGINT NOT NULL,
+    total_amount DOUBLE NOT NULL,
+    status VARCHAR(30),
+    payment_method VARCHAR(50),
+    shipping_address VARCHAR(255),
+    order_date DATETIME(6),
+    updated_at DATETIME(6),
+    archived_at DATETIME(6) NOT NULL,
+    items TEXT,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_orders_archive_order_number UNIQUE (order_number),
+    INDEX idx_orders_archive_user_id (user_id),
+    INDEX idx_orders_archive_status (status),
+    INDEX idx_orders_archive_order_date (order_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- findArchivableIds (status IN closed statuses AND order_date < cutoff) also serves findByStatus
+DROP INDEX idx_orders_status ON orders;
+CREATE INDEX idx_orders_status_order_date ON orders (status, order_date);
@@ -0,0 +1,27 @@
+-- Globally unique ids for users, orders and order items, handed out in blocks by IdAllocator
+-- from the global database, so rows keep their id when spread over or moved between shards.
+-- Seeded past the existing ids; IdAllocator also never hands out an id at or below MAX(id).
+
+CREATE TABLE IF NOT EXISTS id_allocations (
+    name VARCHAR(50) NOT NULL,
+    next_value BIGINT NOT NULL,
+    PRIMARY KEY (name)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+INSERT INTO id_allocations (name, next_value)
+SELECT 'users', COALESCE(MAX(id), 0) + 1 FROM users;
+
+INSERT INTO id_allocations (name, next_value)
+SELECT 'orders', COALESCE(MAX(id), 0) + 1 FROM (SELECT id FROM orders UNION ALL SELECT id FROM orders_archive) ids;
+
+INSERT INTO id_allocations (name, next_value)
+SELECT 'order_items', COALESCE(MAX(id), 0) + 1 FROM order_items;
+
+-- Virtual bucket -> shard map (bucket = hash(user id) mod bucket count), filled by ShardRouter on
+-- first start with sharding enabled and changed by ReshardingService when a bucket moves
+CREATE TABLE IF NOT EXISTS shard_buckets (
+    bucket INT NOT NULL,
+    shard INT NOT NULL,
+    moving BOOLEAN NOT NULL DEFAULT FALSE,
+    PRIMARY KEY (bucket)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
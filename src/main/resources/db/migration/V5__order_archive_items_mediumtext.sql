@@ -0,0 +1,2 @@
+-- TEXT holds at most 64 KB, which a large order's embedded item JSON can exceed; MEDIUMTEXT allows 16 MB
+ALTER TABLE orders_archive MODIFY items MEDIUMTEXT;
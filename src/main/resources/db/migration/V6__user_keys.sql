@@ -0,0 +1,11 @@
+-- Registry of every user's username and email on the global database: with sharding, users'
+-- own unique constraints only cover one shard, so UserKeyRegistry claims the keys here first.
+-- Filled from the shards by UserKeyRegistry on startup; unused while sharding is disabled.
+CREATE TABLE IF NOT EXISTS user_keys (
+    user_id BIGINT NOT NULL,
+    username VARCHAR(50) NOT NULL,
+    email VARCHAR(100) NOT NULL,
+    PRIMARY KEY (user_id),
+    CONSTRAINT uk_user_keys_username UNIQUE (username),
+    CONSTRAINT uk_user_keys_email UNIQUE (email)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
@@ -0,0 +1,12 @@
+-- Bucket moves are fenced instead of timed. shard_buckets (global) gains an epoch that changes each
+-- time a bucket is moved; every shard keeps its own bucket_fences row per bucket saying whether it
+-- owns the bucket and at which epoch. Writers share-lock the fence row of their user's bucket on the
+-- shard they write to and check it; a move takes that row exclusively on the source before copying.
+ALTER TABLE shard_buckets ADD COLUMN epoch BIGINT NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS bucket_fences (
+    bucket INT NOT NULL,
+    epoch BIGINT NOT NULL,
+    owned BOOLEAN NOT NULL,
+    PRIMARY KEY (bucket)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
@@ -0,0 +1,13 @@
+-- Write-behind updates the database refused (e.g. a stock delta that would take stock below zero
+-- or past the INT range), set aside with the reason so the rest of their flush can commit
+CREATE TABLE IF NOT EXISTS write_behind_dead_letters (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    node_id VARCHAR(100) NOT NULL,
+    kind VARCHAR(10) NOT NULL,
+    target_id BIGINT NOT NULL,
+    update_value VARCHAR(50) NOT NULL,
+    reason VARCHAR(500) NOT NULL,
+    failed_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id),
+    INDEX idx_write_behind_dead_letters_failed_at (failed_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
@@ -0,0 +1,35 @@
+-- Development sample data, only on the dev profile's flyway locations.
+-- INSERT IGNORE against the unique keys keeps the script safe to re-run when it changes.
+
+INSERT IGNORE INTO products (name, description, price, category, stock, sku, brand, created_at, updated_at) VALUES
+('Laptop', 'High-performance laptop', 1299.99, 'Electronics', 15, 'ELEC-LAP-001', 'Dell', NOW(6), NOW(6)),
+('Smartphone', 'Latest model smartphone', 899.99, 'Electronics', 30, 'ELEC-PHN-001', 'Samsung', NOW(6), NOW(6)),
+('Desk Chair', 'Ergonomic office chair', 249.99, 'Furniture', 20, 'FURN-CHR-001', 'Herman Miller', NOW(6), NOW(6)),
+('Coffee Maker', 'Automatic coffee maker', 79.99, 'Appliances', 45, 'APPL-COF-001', 'Philips', NOW(6), NOW(6)),
+('Book - Java Programming', 'Comprehensive Java guide', 49.99, 'Books', 100, 'BOOK-JAV-001', 'OReilly', NOW(6), NOW(6));
+
+INSERT IGNORE INTO users (username, email, full_name, phone, address, city, country, status, created_at, updated_at) VALUES
+('john.doe', 'john@example.com', 'John Doe', '+1234567890', '1 Main St', 'New York', 'USA', 'ACTIVE', NOW(6), NOW(6)),
+('jane.smith', 'jane@example.com', 'Jane Smith', '+1234567891', '22 High St', 'London', 'UK', 'ACTIVE', NOW(6), NOW(6)),
+('bob.wilson', 'bob@example.com', 'Bob Wilson', '+1234567892', '5 Queen St', 'Sydney', 'Australia', 'INACTIVE', NOW(6), NOW(6));
+
+INSERT IGNORE INTO orders (order_number, user_id, total_amount, status, payment_method, shipping_address, order_date, updated_at)
+SELECT 'ORD-SAMPLE-0001', u.id, 1349.98, 'DELIVERED', 'CREDIT_CARD', '1 Main St, New York', NOW(6), NOW(6)
+FROM users u WHERE u.username = 'john.doe';
+
+INSERT IGNORE INTO orders (order_number, user_id, total_amount, status, payment_method, shipping_address, order_date, updated_at)
+SELECT 'ORD-SAMPLE-0002', u.id, 899.99, 'PENDING', 'PAYPAL', '22 High St, London', NOW(6), NOW(6)
+FROM users u WHERE u.username = 'jane.smith';
+
+-- Items are only added together with their order, so re-runs do not duplicate them
+INSERT INTO order_items (order_id, product_id, quantity, unit_price, subtotal)
+SELECT o.id, p.id, 1, p.price, p.price
+FROM orders o JOIN products p ON p.sku IN ('ELEC-LAP-001', 'BOOK-JAV-001')
+WHERE o.order_number = 'ORD-SAMPLE-0001'
+  AND NOT EXISTS (SELECT 1 FROM order_items i WHERE i.order_id = o.id);
+
+INSERT INTO order_items (order_id, product_id, quantity, unit_price, subtotal)
+SELECT o.id, p.id, 1, p.price, p.price
+FROM orders o JOIN products p ON p.sku = 'ELEC-PHN-001'
+WHERE o.order_number = 'ORD-SAMPLE-0002'
+  AND NOT EXISTS (SELECT 1 FROM order_items i WHERE i.order_id = o.id);
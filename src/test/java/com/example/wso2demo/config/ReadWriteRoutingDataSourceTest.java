@@ -0,0 +1,132 @@
+package com.example.wso2demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Routing against two embedded H2 databases standing in for a primary and a replica; each holds
+ * a single row naming itself, so a query shows where it was sent.
+ */
+class ReadWriteRoutingDataSourceTest {
+    
+    private HikariDataSource primary;
+    
+    private HikariDataSource replica;
+    
+    private ReadWriteRoutingDataSource routing;
+    
+    private JdbcTemplate jdbcTemplate;
+    
+    private TransactionTemplate writeTransaction;
+    
+    private TransactionTemplate readTransaction;
+    
+    @BeforeEach
+    void setUp() {
+        primary = database("primary");
+        replica = database("replica");
+        Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-1", replica);
+        routing = new ReadWriteRoutingDataSource(primary, replicas);
+        routing.afterPropertiesSet();
+        
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        writeTransaction = new TransactionTemplate(transactionManager);
+        readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        routing.destroy();
+        primary.close();
+    }
+    
+    @Test
+    void readOnlyTransactionsGoToTheReplicaAndWritesToThePrimary() {
+        assertThat(read()).isEqualTo("replica");
+        assertThat(write()).isEqualTo("primary");
+    }
+    
+    @Test
+    void unhealthyReplicaFallsBackToThePrimary() {
+        routing.setReplicaHealthy("replica-1", false);
+        assertThat(read()).isEqualTo("primary");
+        
+        routing.setReplicaHealthy("replica-1", true);
+        assertThat(read()).isEqualTo("replica");
+    }
+    
+    @Test
+    void readsAfterAWriteStayOnThePrimaryForTheRestOfTheRequest() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        assertThat(read()).isEqualTo("replica");
+        
+        write();
+        assertThat(read()).isEqualTo("primary");
+        
+        // A new request starts without the mark
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        assertThat(read()).isEqualTo("replica");
+    }
+    
+    @Test
+    void threadsOutsideARequestAreNotKeptOnThePrimaryAfterTheirWriteCompletes() {
+        write();
+        assertThat(read()).isEqualTo("replica");
+    }
+    
+    @Test
+    void stickinessIsClearedAfterARollbackToo() {
+        try {
+            writeTransaction.execute(status -> {
+                node();
+                throw new IllegalStateException("rolled back");
+            });
+        } catch (IllegalStateException expected) {
+            // the rollback is what is being tested
+        }
+        assertThat(read()).isEqualTo("replica");
+    }
+    
+    private String read() {
+        return readTransaction.execute(status -> node());
+    }
+    
+    private String write() {
+        return writeTransaction.execute(status -> node());
+    }
+    
+    private String node() {
+        return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+    
+    private static HikariDataSource database(String name) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName(name);
+        dataSource.setJdbcUrl("jdbc:h2:mem:routing_" + name + ";DB_CLOSE_DELAY=-1");
+        dataSource.setMaximumPoolSize(2);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE IF NOT EXISTS node (name VARCHAR(20))");
+        jdbc.execute("DELETE FROM node");
+        jdbc.update("INSERT INTO node (name) VALUES (?)", name);
+        return dataSource;
+    }
+}
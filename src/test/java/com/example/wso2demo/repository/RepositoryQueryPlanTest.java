@@ -0,0 +1,164 @@
+package com.example.wso2demo.repository;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs each indexed repository lookup against the migrated H2 schema, captures the SQL Hibernate
+ * actually sends and checks its EXPLAIN plan, so an index dropped from the migrations or a finder
+ * rewritten past its index fails here. Substring searches (findByNameContainingIgnoreCase,
+ * findByFullNameContainingIgnoreCase) always scan and are not checked.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:queryplans;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.show-sql=false",
+        "app.query-plan-check.enabled=false",
+        "app.rate-limit.enabled=false"
+})
+@Transactional
+class RepositoryQueryPlanTest {
+    
+    private static final ThreadLocal<List<String>> CAPTURED = new ThreadLocal<>();
+    
+    private static final LocalDateTime SINCE = LocalDateTime.of(2000, 1, 1, 0, 0);
+    
+    private static final LocalDateTime UNTIL = SINCE.plusDays(1);
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private OrderRepository orderRepository;
+    
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+    
+    @Autowired
+    private ArchivedOrderRepository archivedOrderRepository;
+    
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void productLookupsUseAnIndex() {
+        assertIndexed(() -> productRepository.findByCategory("x"));
+        assertIndexed(() -> productRepository.findByBrand("x"));
+        assertIndexed(() -> productRepository.findByCategoryAndBrand("x", "y"));
+        assertIndexed(() -> productRepository.findByCategoryAndPriceRange("x", 1.0, 2.0));
+        assertIndexed(() -> productRepository.findByPriceBetween(1.0, 2.0));
+        assertIndexed(() -> productRepository.findByStockLessThan(1));
+        assertIndexed(() -> productRepository.findBySkuIn(List.of("x", "y")));
+        assertIndexed(() -> productRepository.findChangesAfter(SINCE, 0L, UNTIL, PageRequest.of(0, 10)));
+    }
+    
+    @Test
+    void userLookupsUseAnIndex() {
+        assertIndexed(() -> userRepository.findByUsernameIn(List.of("x", "y")));
+        assertIndexed(() -> userRepository.findByEmail("x"));
+        assertIndexed(() -> userRepository.findByStatus("x"));
+        assertIndexed(() -> userRepository.findByCountry("x"));
+        assertIndexed(() -> userRepository.findByCity("x"));
+        assertIndexed(() -> userRepository.findChangesAfter(SINCE, 0L, UNTIL, PageRequest.of(0, 10)));
+    }
+    
+    @Test
+    void orderLookupsUseAnIndex() {
+        assertIndexed(() -> orderRepository.findByOrderNumberIn(List.of("x", "y")));
+        assertIndexed(() -> orderRepository.findByUserIdIn(List.of(1L, 2L)));
+        assertIndexed(() -> orderRepository.findByUserIdAndStatus(1L, "x"));
+        assertIndexed(() -> orderRepository.findByStatus("x"));
+        assertIndexed(() -> orderRepository.findByPaymentMethod("x"));
+        assertIndexed(() -> orderRepository.lockDeletableIds(List.of("x", "y"), SINCE, PageRequest.of(0, 10)));
+        assertIndexed(() -> orderRepository.findChangesAfter(SINCE, 0L, UNTIL, PageRequest.of(0, 10)));
+        assertIndexed(() -> orderItemRepository.findByOrderIdIn(List.of(1L, 2L)));
+        assertIndexed(() -> orderItemRepository.findByProductId(1L));
+        assertIndexed(() -> archivedOrderRepository.findByUserId(1L));
+        assertIndexed(() -> archivedOrderRepository.findByStatus("x"));
+    }
+    
+    @Test
+    void housekeepingQueriesUseAnIndex() {
+        assertIndexed(() -> outboxEventRepository.findBySequenceGreaterThanOrderBySequenceAsc(0L, PageRequest.of(0, 10)));
+        assertIndexed(() -> outboxEventRepository.findByAggregateTypeAndSequenceGreaterThanOrderBySequenceAsc("x", 0L, PageRequest.of(0, 10)));
+        assertIndexed(() -> outboxEventRepository.findMinSequence());
+        assertIndexed(() -> outboxEventRepository.deletePublishedBefore(SINCE));
+        assertIndexed(() -> idempotencyRecordRepository.deleteExpired(SINCE));
+    }
+    
+    private void assertIndexed(Runnable finder) {
+        List<String> statements = new ArrayList<>();
+        CAPTURED.set(statements);
+        try {
+            finder.run();
+        } finally {
+            CAPTURED.remove();
+        }
+        
+        assertThat(statements).isNotEmpty();
+        for (String sql : statements) {
+            assertThat(plan(sql)).as(sql).doesNotContain(".tableScan");
+        }
+    }
+    
+    // H2 names the access path in a comment, e.g. /* public.orders.tableScan */ or /* public.idx_orders_status */
+    private String plan(String sql) {
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+                for (int i = 1; i <= explain.getParameterMetaData().getParameterCount(); i++) {
+                    explain.setObject(i, null);
+                }
+                try (ResultSet plan = explain.executeQuery()) {
+                    plan.next();
+                    return plan.getString(1);
+                }
+            }
+        });
+    }
+    
+    @TestConfiguration
+    static class CaptureStatements {
+        
+        @Bean
+        HibernatePropertiesCustomizer statementInspector() {
+            return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, (StatementInspector) sql -> {
+                List<String> statements = CAPTURED.get();
+                if (statements != null) {
+                    statements.add(sql);
+                }
+                return sql;
+            });
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.wso2demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimitTest {
+    
+    @Test
+    void smallLimitFallsWhenLatencyClimbs() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 4);
+        run(limit, 10, 100);
+        assertThat(limit.getLimit()).isEqualTo(4);
+        
+        run(limit, 100, 50);
+        assertThat(limit.getLimit()).isLessThan(4);
+    }
+    
+    @Test
+    void largeLimitFallsWhenLatencyClimbs() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(40, 1, 40);
+        run(limit, 10, 100);
+        
+        run(limit, 100, 50);
+        assertThat(limit.getLimit()).isLessThan(20);
+    }
+    
+    @Test
+    void busyLimitGrowsWhileLatencyHoldsSteady() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 100);
+        run(limit, 10, 200);
+        assertThat(limit.getLimit()).isGreaterThan(10);
+    }
+    
+    @Test
+    void limitRecoversOnceLatencyDropsBack() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 10);
+        run(limit, 10, 100);
+        run(limit, 100, 50);
+        int reduced = limit.getLimit();
+        
+        run(limit, 10, 500);
+        assertThat(limit.getLimit()).isGreaterThan(reduced);
+    }
+    
+    // Every slot is kept busy, as in a saturated bulkhead, and each completion reports the given latency
+    private static void run(AdaptiveConcurrencyLimit limit, long rttMillis, int requests) {
+        for (int i = 0; i < requests; i++) {
+            while (limit.getInFlight() < limit.getLimit()) {
+                limit.tryAcquire(0, TimeUnit.MILLISECONDS);
+            }
+            limit.release(TimeUnit.MILLISECONDS.toNanos(rttMillis));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Where a split starts to pay off in {@link ParallelScan}: the same scan run sequentially and split
+ * across the pool, over product lists of growing size, with the predicates ProductService uses.
+ * Not part of the test run; start it with
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.wso2demo.service.ParallelScanBenchmark \
+ *     -Dexec.args="-p parallelism=4"
+ * </pre>
+ * on hardware like production's. The threshold is the smallest size at which split beats sequential.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelScanBenchmark {
+    
+    private static final String[] CATEGORIES = {"Electronics", "Books", "Clothing", "Home", "Sports", "Toys", "Garden", "Food"};
+    
+    @Param({"1000", "5000", "10000", "50000", "200000"})
+    private int size;
+    
+    // A single worker never splits (see ParallelScan)
+    @Param({"2", "4", "8"})
+    private int parallelism;
+    
+    // category: equalsIgnoreCase plus a price range, as GET /products filters; search: the name substring match
+    @Param({"category", "search"})
+    private String predicate;
+    
+    private List<Product> products;
+    
+    private Predicate<Product> filter;
+    
+    private ParallelScan sequential;
+    
+    private ParallelScan split;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Product product = new Product();
+            product.setId((long) i);
+            product.setName("Product " + i + " " + Long.toHexString(random.nextLong()));
+            product.setCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            product.setBrand("Brand" + random.nextInt(50));
+            product.setPrice(1 + random.nextDouble() * 999);
+            product.setStock(random.nextInt(500));
+            products.add(product);
+        }
+        filter = predicate.equals("category")
+                ? p -> p.getCategory() != null && p.getCategory().equalsIgnoreCase("books") && p.getPrice() >= 100 && p.getPrice() <= 500
+                : p -> p.getName().toLowerCase().contains("a7");
+        
+        sequential = scan(Integer.MAX_VALUE);
+        // Split exactly at this size, as if it were the threshold
+        split = scan(size);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sequential.shutdown();
+        split.shutdown();
+    }
+    
+    @Benchmark
+    public long countSequential() {
+        return sequential.count(products, filter);
+    }
+    
+    @Benchmark
+    public long countSplit() {
+        return split.count(products, filter);
+    }
+    
+    @Benchmark
+    public List<Product> filterSequential() {
+        return sequential.filter(products, filter);
+    }
+    
+    @Benchmark
+    public List<Product> filterSplit() {
+        return split.filter(products, filter);
+    }
+    
+    private ParallelScan scan(int threshold) {
+        ParallelScan scan = new ParallelScan();
+        ReflectionTestUtils.setField(scan, "parallelism", parallelism);
+        ReflectionTestUtils.setField(scan, "threshold", threshold);
+        scan.init();
+        return scan;
+    }
+    
+    // Takes the usual JMH options, e.g. -p parallelism=8 -p size=20000,40000
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+                .include(ParallelScanBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.wso2demo.service;
+
+import com.example.wso2demo.config.ShardRoutingDataSource;
+import com.example.wso2demo.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Users spread over two embedded H2 shards: each lands on the shard its bucket maps to, fan-out
+ * reads merge both shards, a moved bucket is read from its new shard exactly once without losing
+ * a write running during the move, and usernames stay unique across shards.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:resharding0;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.show-sql=false",
+        "app.query-plan-check.min-rows=0",
+        "app.rate-limit.enabled=false",
+        "app.sharding.enabled=true",
+        "app.sharding.shards.urls=jdbc:h2:mem:resharding1;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "app.sharding.buckets=8",
+        "app.sharding.source-grace-ms=200"
+})
+class ReshardingServiceTest {
+    
+    private static final AtomicInteger USER_COUNT = new AtomicInteger();
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private ReshardingService reshardingService;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private ShardRoutingDataSource shardRoutingDataSource;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void usersAreStoredOnlyOnTheShardTheirBucketMapsTo() {
+        for (User user : createUsers(10)) {
+            int shard = shardRouter.shardOf(user.getId());
+            assertThat(rowsOn(shard, user.getId())).isEqualTo(1);
+            assertThat(rowsOn(1 - shard, user.getId())).isZero();
+        }
+    }
+    
+    @Test
+    void fanOutReadsMergeEveryShard() {
+        List<Long> ids = createUsers(10).stream().map(User::getId).toList();
+        
+        assertThat(ids.stream().map(shardRouter::shardOf).distinct()).containsExactlyInAnyOrder(0, 1);
+        assertThat(userService.getAllUsers().stream().map(User::getId).toList()).containsAll(ids);
+    }
+    
+    @Test
+    void aMovedBucketIsReadFromItsNewShardExactlyOnce() {
+        User user = createUsers(1).get(0);
+        int bucket = shardRouter.bucketOf(user.getId());
+        int source = shardRouter.shardOf(user.getId());
+        int target = 1 - source;
+        
+        Map<String, Integer> moved = reshardingService.moveBucket(bucket, target);
+        
+        assertThat(moved.get("users")).isPositive();
+        assertThat(shardRouter.shardOfBucket(bucket)).isEqualTo(target);
+        assertThat(shardRouter.getMovingBuckets()).doesNotContain(bucket);
+        assertThat(rowsOn(target, user.getId())).isEqualTo(1);
+        assertThat(rowsOn(source, user.getId())).isZero();
+        assertThat(userService.getUserById(user.getId())).map(User::getUsername).contains(user.getUsername());
+        assertThat(userService.getAllUsers().stream().filter(found -> found.getId().equals(user.getId()))).hasSize(1);
+    }
+    
+    @Test
+    void aWriteRunningOnTheSourceFinishesBeforeTheBucketIsCopied() throws Exception {
+        User user = createUsers(1).get(0);
+        int bucket = shardRouter.bucketOf(user.getId());
+        int source = shardRouter.shardOf(user.getId());
+        int target = 1 - source;
+        
+        CountDownLatch fenced = new CountDownLatch(1);
+        CompletableFuture<Void> write = CompletableFuture.runAsync(() -> shardRouter.onShard(source, false, () -> {
+            shardRouter.checkWritable(user.getId());
+            fenced.countDown();
+            pause(300);
+            return jdbcTemplate.update("UPDATE users SET full_name = 'written during the move' WHERE id = ?", user.getId());
+        }));
+        assertThat(fenced.await(5, TimeUnit.SECONDS)).isTrue();
+        
+        reshardingService.moveBucket(bucket, target);
+        write.get(5, TimeUnit.SECONDS);
+        
+        assertThat(new JdbcTemplate(shardRoutingDataSource.getShard(target))
+                .queryForObject("SELECT full_name FROM users WHERE id = ?", String.class, user.getId()))
+                .isEqualTo("written during the move");
+        assertThat(fenceOn(source, bucket)).containsEntry("owned", false);
+        assertThat(fenceOn(target, bucket)).containsEntry("owned", true).containsEntry("epoch", shardRouter.epochOfBucket(bucket));
+        // A writer still routing the bucket to the old shard is refused there
+        assertThatThrownBy(() -> shardRouter.onShard(source, false, () -> {
+            shardRouter.checkWritable(user.getId());
+            return null;
+        })).isInstanceOf(ResponseStatusException.class);
+    }
+    
+    @Test
+    void aUsernameIsUniqueAcrossShards() {
+        User first = createUsers(1).get(0);
+        int firstShard = shardRouter.shardOf(first.getId());
+        
+        // Each attempt is given a new id, so retry until one of them lands on the other shard
+        Set<Integer> triedShards = new HashSet<>();
+        for (int attempt = 0; attempt < 20 && !triedShards.contains(1 - firstShard); attempt++) {
+            User duplicate = new User();
+            duplicate.setUsername(first.getUsername());
+            duplicate.setEmail("duplicate_" + attempt + "_" + first.getEmail());
+            assertThatThrownBy(() -> userService.createUser(duplicate)).isInstanceOf(DataIntegrityViolationException.class);
+            triedShards.add(shardRouter.shardOf(duplicate.getId()));
+        }
+        
+        assertThat(triedShards).contains(1 - firstShard);
+        assertThat(usernameRowsOn(0, first.getUsername()) + usernameRowsOn(1, first.getUsername())).isEqualTo(1);
+        assertThat(userService.existsByUsername(first.getUsername())).isTrue();
+    }
+    
+    @Test
+    void deletingAUserFreesItsUsername() {
+        User first = createUsers(1).get(0);
+        
+        assertThat(userService.deleteUser(first.getId())).isTrue();
+        
+        User again = new User();
+        again.setUsername(first.getUsername());
+        again.setEmail(first.getEmail());
+        assertThat(userService.createUser(again).getId()).isNotEqualTo(first.getId());
+    }
+    
+    private List<User> createUsers(int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int n = USER_COUNT.incrementAndGet();
+            User user = new User();
+            user.setUsername("shard_user_" + n);
+            user.setEmail("shard_user_" + n + "@example.com");
+            user.setCountry("USA");
+            users.add(userService.createUser(user));
+        }
+        return users;
+    }
+    
+    private Map<String, Object> fenceOn(int shard, int bucket) {
+        return new JdbcTemplate(shardRoutingDataSource.getShard(shard))
+                .queryForMap("SELECT owned, epoch FROM bucket_fences WHERE bucket = ?", bucket);
+    }
+    
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private int usernameRowsOn(int shard, String username) {
+        return new JdbcTemplate(shardRoutingDataSource.getShard(shard))
+                .queryForObject("SELECT COUNT(*) FROM users WHERE username = ?", Integer.class, username);
+    }
+    
+    private int rowsOn(int shard, Long userId) {
+        return new JdbcTemplate(shardRoutingDataSource.getShard(shard))
+                .queryForObject("SELECT COUNT(*) FROM users WHERE id = ?", Integer.class, userId);
+    }
+}
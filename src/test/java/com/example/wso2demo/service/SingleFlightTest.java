@@ -0,0 +1,102 @@
+package com.example.wso2demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+    
+    // Not the common pool, which has a single worker on a single-CPU machine
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    void followerSharesTheLeadersFetch() throws Exception {
+        SingleFlight singleFlight = singleFlight(5000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(
+                () -> singleFlight.execute("test", 1, () -> await(started, release, "leader"), UnaryOperator.identity()), executor);
+        started.await();
+        
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(
+                () -> singleFlight.execute("test", 1, () -> "follower", UnaryOperator.identity()), executor);
+        Thread.sleep(100);
+        release.countDown();
+        
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("leader");
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("leader");
+    }
+    
+    @Test
+    void followerRunsItsOwnFetchWhenTheLeaderIsStuck() throws Exception {
+        SingleFlight singleFlight = singleFlight(100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(
+                () -> singleFlight.execute("test", 1, () -> await(started, release, "leader"), UnaryOperator.identity()), executor);
+        started.await();
+        
+        try {
+            assertThat(singleFlight.execute("test", 1, () -> "follower", UnaryOperator.identity())).isEqualTo("follower");
+        } finally {
+            release.countDown();
+        }
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("leader");
+    }
+    
+    @Test
+    void callerReadingFromThePrimaryDoesNotShareAReplicaFetch() throws Exception {
+        SingleFlight singleFlight = singleFlight(10000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> replicaRead = CompletableFuture.supplyAsync(
+                () -> singleFlight.execute("test", 1, () -> await(started, release, "replica"), UnaryOperator.identity()), executor);
+        started.await();
+        
+        // As inside a write transaction, whose reads go to the primary
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        long start = System.nanoTime();
+        try {
+            assertThat(singleFlight.execute("test", 1, () -> "primary", UnaryOperator.identity())).isEqualTo("primary");
+            // Not after waiting out the join timeout
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5000);
+        } finally {
+            TransactionSynchronizationManager.clear();
+            release.countDown();
+        }
+        assertThat(replicaRead.get(5, TimeUnit.SECONDS)).isEqualTo("replica");
+    }
+    
+    private static SingleFlight singleFlight(long joinTimeoutMs) {
+        SingleFlight singleFlight = new SingleFlight();
+        ReflectionTestUtils.setField(singleFlight, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(singleFlight, "joinTimeoutMs", joinTimeoutMs);
+        return singleFlight;
+    }
+    
+    private static String await(CountDownLatch started, CountDownLatch release, String result) {
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+}